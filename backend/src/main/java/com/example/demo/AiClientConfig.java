@@ -0,0 +1,30 @@
+package com.example.demo;
+
+import com.example.demo.service.AiRoutingProperties;
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+
+import java.time.Duration;
+
+@Configuration
+@EnableConfigurationProperties(AiRoutingProperties.class)
+public class AiClientConfig {
+
+    // WebClient for the AI provider with connect and response timeouts, so a stuck upstream can't hang callers
+    @Bean
+    public WebClient aiWebClient(@Value("${ai.http.connect-timeout-ms:5000}") int connectTimeoutMs,
+                                 @Value("${ai.http.response-timeout-ms:60000}") long responseTimeoutMs) {
+        HttpClient httpClient = HttpClient.create()
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs)
+                .responseTimeout(Duration.ofMillis(responseTimeoutMs));
+        return WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .build();
+    }
+}
@@ -47,7 +47,9 @@ public class AuthController {
             newUser.setName(token.getPrincipal().getAttribute("name"));
             newUser.setVerified(true);
             newUser.setRole(Role.DOCTOR); // Default role or logic
-            return userRepository.save(newUser);
+            User saved = userRepository.save(newUser);
+            userDetailsService.evict(email);
+            return saved;
         });
 
         String jwt = jwtUtil.generateToken(new CustomUserDetails(user));
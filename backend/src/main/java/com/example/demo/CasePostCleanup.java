@@ -1,6 +1,10 @@
 package com.example.demo;
 
-import com.example.demo.repository.CasePostRepo;
+import com.example.demo.service.CaseFeedCache;
+import com.example.demo.service.CasePurgeService;
+import com.example.demo.service.CaseSearchService;
+import com.example.demo.service.LikeService;
+import com.example.demo.service.SimilarCaseService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
@@ -10,12 +14,33 @@ import java.time.LocalDateTime;
 @Component
 public class CasePostCleanup {
     @Autowired
-    private CasePostRepo casePostRepo;
+    private CasePurgeService casePurgeService;
+
+    @Autowired
+    private CaseFeedCache caseFeedCache;
+
+    @Autowired
+    private CaseSearchService caseSearchService;
+
+    @Autowired
+    private SimilarCaseService similarCaseService;
+
+    @Autowired
+    private LikeService likeService;
 
     // Run once a day at 2 AM
     @Scheduled(cron = "0 0 2 * * ?")
     public void deleteOldCasePosts() {
         LocalDateTime cutoff = LocalDateTime.now().minusDays(2);
-        casePostRepo.deleteOldPosts(cutoff);
+        CasePurgeService.Report report = casePurgeService.purgeBefore(cutoff, ids -> {
+            caseSearchService.postsDeleted(ids);
+            similarCaseService.postsDeleted(ids);
+            likeService.postsDeleted(ids);
+        });
+        if (report.posts() > 0) caseFeedCache.invalidate();
+        System.out.println("Case post cleanup: " + report.posts() + " posts, " + report.comments() + " comments, "
+                + report.likers() + " likes, " + report.files() + " files (" + report.bytes() + " bytes) in "
+                + report.chunks() + " chunks, " + report.elapsedMs() + " ms"
+                + (report.complete() ? "" : "; time budget used up, the rest goes next run"));
     }
 }
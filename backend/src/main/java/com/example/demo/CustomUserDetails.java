@@ -11,9 +11,15 @@ import java.util.List;
 
 public class CustomUserDetails implements UserDetails {
     private final User user;
+    private final boolean fromClaims;
 
     public CustomUserDetails(User user) {
+        this(user, false);
+    }
+
+    public CustomUserDetails(User user, boolean fromClaims) {
         this.user = user;
+        this.fromClaims = fromClaims;
     }
 
     @Override public Collection<? extends GrantedAuthority> getAuthorities() {
@@ -33,4 +39,7 @@ public class CustomUserDetails implements UserDetails {
     @Override public boolean isEnabled() { return user.isVerified(); }
 
     public User getUser() { return user; }
+
+    // Built from token claims only: id, email and role are set, everything else is empty
+    public boolean isFromClaims() { return fromClaims; }
 }
@@ -1,8 +1,11 @@
 package com.example.demo;
 
+import com.example.demo.cache.ExpiringLruCache;
+import com.example.demo.model.Role;
 import com.example.demo.model.User;
 import com.example.demo.repository.UserRepo;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
@@ -14,11 +17,52 @@ public class CustomUserDetailsService implements UserDetailsService {
     @Autowired
     private UserRepo userRepository;
 
+    private final ExpiringLruCache<String, CustomUserDetails> cache;
+
+    public CustomUserDetailsService(@Value("${auth.user-cache.max-size:10000}") int maxSize,
+                                    @Value("${auth.user-cache.ttl-seconds:300}") long ttlSeconds) {
+        this.cache = new ExpiringLruCache<>(maxSize, ttlSeconds * 1000);
+    }
+
+    // Always hits the DB: used by the AuthenticationManager, which needs the current password hash
     @Override
     public UserDetails loadUserByUsername(String email) throws UsernameNotFoundException {
         User user = userRepository.findByEmail(email)
                 .orElseThrow(() -> new UsernameNotFoundException("User not found"));
         return new CustomUserDetails(user);
     }
-}
 
+    /**
+     * Same as loadUserByUsername but served from a bounded TTL cache. Used on the
+     * per-request JWT path; call evict() whenever a user row changes.
+     */
+    public CustomUserDetails loadCachedUser(String email) throws UsernameNotFoundException {
+        CustomUserDetails cached = cache.get(email);
+        if (cached != null) {
+            return cached;
+        }
+        CustomUserDetails details = (CustomUserDetails) loadUserByUsername(email);
+        cache.put(email, details);
+        return details;
+    }
+
+    /** Builds a principal straight from verified token claims, without any lookup. */
+    public CustomUserDetails fromToken(VerifiedToken token) {
+        User user = new User();
+        user.setId(token.getUserId());
+        user.setEmail(token.getSubject());
+        user.setRole(Role.valueOf(token.getRole()));
+        user.setVerified(true);
+        return new CustomUserDetails(user, true);
+    }
+
+    public void evict(String email) {
+        if (email != null) {
+            cache.invalidate(email);
+        }
+    }
+
+    public void evictAll() {
+        cache.clear();
+    }
+}
@@ -5,6 +5,7 @@ import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -23,6 +24,10 @@ public class JwtFilter extends OncePerRequestFilter {
     @Autowired
     private CustomUserDetailsService userDetailsService;
 
+    // "claims": trust id/role from the signed token, "cache": look the user up through the TTL cache
+    @Value("${auth.principal-source:cache}")
+    private String principalSource;
+
     @Override
     protected void doFilterInternal(HttpServletRequest request,
                                     HttpServletResponse response,
@@ -43,12 +48,16 @@ public class JwtFilter extends OncePerRequestFilter {
         if (authHeader != null && authHeader.startsWith("Bearer ")) {
             String jwt = authHeader.substring(7);
             try {
-                String email = jwtUtil.extractUsername(jwt); // Or extractUsername() if not renamed
+                // Signature and expiry are checked once here; the result is reused below
+                VerifiedToken token = jwtUtil.verify(jwt);
+                String email = token.getSubject();
 
                 if (email != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-                    UserDetails userDetails = userDetailsService.loadUserByUsername(email);
+                    UserDetails userDetails = "claims".equalsIgnoreCase(principalSource) && token.hasPrincipalClaims()
+                            ? userDetailsService.fromToken(token)
+                            : userDetailsService.loadCachedUser(email);
 
-                    if (jwtUtil.validateToken(jwt, userDetails)) {
+                    if (jwtUtil.validateToken(token, userDetails)) {
                         UsernamePasswordAuthenticationToken authToken =
                                 new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
                         authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
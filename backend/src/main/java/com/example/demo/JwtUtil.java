@@ -1,48 +1,103 @@
 package com.example.demo;
 
+import com.example.demo.cache.ExpiringLruCache;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtBuilder;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
-import lombok.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Date;
+import java.util.HexFormat;
 
 @Component
 public class JwtUtil {
     private final String jwtSecret = "KX74#k39!dQ92$zvL0bnf9%kPqL5@rMqVx6*WnZtYzA7$wQhJp";
+    private static final long EXPIRATION_MS = 1000 * 60 * 60 * 10;
+
+    // Verified tokens are reused for at most this long, and never past their own exp claim
+    private static final int VERIFIED_CACHE_SIZE = 10_000;
+    private static final long VERIFIED_CACHE_TTL_MS = 5 * 60 * 1000;
+
+    // Key and parser are immutable and thread-safe, so build them once
+    private final SecretKey signingKey = Keys.hmacShaKeyFor(jwtSecret.getBytes());
+    private final JwtParser parser = Jwts.parserBuilder().setSigningKey(signingKey).build();
+
+    private final ExpiringLruCache<String, VerifiedToken> verifiedTokens =
+            new ExpiringLruCache<>(VERIFIED_CACHE_SIZE, VERIFIED_CACHE_TTL_MS);
+
+    public static final String CLAIM_USER_ID = "uid";
+    public static final String CLAIM_ROLE = "role";
 
     public String generateToken(UserDetails userDetails) {
-        return Jwts.builder()
+        JwtBuilder builder = Jwts.builder();
+        // id + role let JwtFilter build the principal without touching the users table
+        if (userDetails instanceof CustomUserDetails custom
+                && custom.getUser().getId() != null && custom.getUser().getRole() != null) {
+            builder.claim(CLAIM_USER_ID, custom.getUser().getId())
+                    .claim(CLAIM_ROLE, custom.getUser().getRole().name());
+        }
+        return builder
                 .setSubject(userDetails.getUsername())
                 .setIssuedAt(new Date())
-                .setExpiration(new Date(System.currentTimeMillis() + 1000 * 60 * 60 * 10))
-                .signWith(Keys.hmacShaKeyFor(jwtSecret.getBytes()), SignatureAlgorithm.HS256)
+                .setExpiration(new Date(System.currentTimeMillis() + EXPIRATION_MS))
+                .signWith(signingKey, SignatureAlgorithm.HS256)
                 .compact();
     }
 
+    /**
+     * Verifies the signature and expiry of the token exactly once and returns its claims.
+     * Tokens that were verified recently are served from a cache keyed by the token's SHA-256.
+     * Throws the usual jjwt exceptions for invalid or expired tokens.
+     */
+    public VerifiedToken verify(String token) {
+        String key = hash(token);
+        VerifiedToken cached = verifiedTokens.get(key);
+        if (cached != null && !cached.isExpired()) {
+            return cached;
+        }
+
+        Claims claims = parser.parseClaimsJws(token).getBody();
+        VerifiedToken verified = new VerifiedToken(
+                claims.getSubject(),
+                claims.get(CLAIM_USER_ID, Long.class),
+                claims.get(CLAIM_ROLE, String.class),
+                claims.getIssuedAt() != null ? claims.getIssuedAt().toInstant() : null,
+                claims.getExpiration() != null ? claims.getExpiration().toInstant() : null);
+
+        long expiresAt = System.currentTimeMillis() + VERIFIED_CACHE_TTL_MS;
+        if (verified.getExpiration() != null) {
+            expiresAt = Math.min(expiresAt, verified.getExpiration().toEpochMilli());
+        }
+        verifiedTokens.put(key, verified, expiresAt);
+        return verified;
+    }
+
     public String extractUsername(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(jwtSecret.getBytes())
-                .build()
-                .parseClaimsJws(token)
-                .getBody()
-                .getSubject();
+        return verify(token).getSubject();
     }
 
     public boolean validateToken(String token, UserDetails userDetails) {
-        return extractUsername(token).equals(userDetails.getUsername()) &&
-                !isTokenExpired(token);
+        return validateToken(verify(token), userDetails);
+    }
+
+    public boolean validateToken(VerifiedToken token, UserDetails userDetails) {
+        return token.getSubject().equals(userDetails.getUsername()) && !token.isExpired();
     }
 
-    private boolean isTokenExpired(String token) {
-        Date expiration = Jwts.parserBuilder()
-                .setSigningKey(jwtSecret.getBytes())
-                .build()
-                .parseClaimsJws(token)
-                .getBody()
-                .getExpiration();
-        return expiration.before(new Date());
+    private static String hash(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
     }
 }
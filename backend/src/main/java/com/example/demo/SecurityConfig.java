@@ -1,6 +1,8 @@
 package com.example.demo;
 
+import jakarta.servlet.DispatcherType;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -23,6 +25,9 @@ public class SecurityConfig {
     @Autowired
     private CustomUserDetailsService userDetailsService;
 
+    @Value("${auth.bcrypt.strength:10}")
+    private int bcryptStrength;
+
     // ✅ Define the AuthenticationManager bean
     @Bean
     public AuthenticationManager authenticationManager(HttpSecurity http) throws Exception {
@@ -36,7 +41,7 @@ public class SecurityConfig {
     // ✅ Password encoder bean
     @Bean
     public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+        return new BCryptPasswordEncoder(bcryptStrength);
     }
 
     // ✅ Configure security filter chain
@@ -46,6 +51,8 @@ public class SecurityConfig {
                 .cors().and()
                 .csrf().disable()
                 .authorizeHttpRequests(auth -> auth
+                        // Async results (Mono/CompletableFuture) are re-dispatched after the original request was already authorized
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC, DispatcherType.ERROR).permitAll()
                         .requestMatchers(
                                 "/auth/**",
                                 "/oauth2/**",
@@ -0,0 +1,27 @@
+package com.example.demo;
+
+import lombok.Value;
+
+import java.time.Instant;
+
+/**
+ * Result of a single signature check + parse of a JWT. Immutable so it can be
+ * shared from the verification cache across request threads.
+ */
+@Value
+public class VerifiedToken {
+    String subject;
+    Long userId;
+    String role;
+    Instant issuedAt;
+    Instant expiration;
+
+    /** True when the token carries enough claims to build a principal without a DB lookup. */
+    public boolean hasPrincipalClaims() {
+        return userId != null && role != null;
+    }
+
+    public boolean isExpired() {
+        return expiration != null && expiration.isBefore(Instant.now());
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.demo.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiPredicate;
+
+/**
+ * Small size-bounded LRU cache where every entry carries its own expiry time.
+ * Expired entries are dropped lazily on read; when full the least recently used entry goes.
+ */
+public class ExpiringLruCache<K, V> {
+
+    private final int maxSize;
+    private final long defaultTtlMillis;
+    private final LinkedHashMap<K, Entry<V>> map;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public ExpiringLruCache(int maxSize, long defaultTtlMillis) {
+        this.maxSize = maxSize;
+        this.defaultTtlMillis = defaultTtlMillis;
+        this.map = new LinkedHashMap<>(Math.min(maxSize, 1024), 0.75f, true);
+    }
+
+    public V get(K key) {
+        long now = System.currentTimeMillis();
+        synchronized (map) {
+            Entry<V> entry = map.get(key);
+            if (entry == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+            if (entry.expiresAt <= now) {
+                map.remove(key);
+                misses.incrementAndGet();
+                return null;
+            }
+            hits.incrementAndGet();
+            return entry.value;
+        }
+    }
+
+    public void put(K key, V value) {
+        put(key, value, System.currentTimeMillis() + defaultTtlMillis);
+    }
+
+    public void put(K key, V value, long expiresAtMillis) {
+        long now = System.currentTimeMillis();
+        if (expiresAtMillis <= now) {
+            return;
+        }
+        synchronized (map) {
+            map.put(key, new Entry<>(value, expiresAtMillis));
+            if (map.size() > maxSize) {
+                evictEldest();
+            }
+        }
+    }
+
+    public void invalidate(K key) {
+        synchronized (map) {
+            map.remove(key);
+        }
+    }
+
+    public void invalidateIf(BiPredicate<K, V> predicate) {
+        synchronized (map) {
+            map.entrySet().removeIf(e -> predicate.test(e.getKey(), e.getValue().value));
+        }
+    }
+
+    public void clear() {
+        synchronized (map) {
+            map.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (map) {
+            return map.size();
+        }
+    }
+
+    public long getHits() { return hits.get(); }
+
+    public long getMisses() { return misses.get(); }
+
+    public long getEvictions() { return evictions.get(); }
+
+    public double getHitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    // Called with the lock held. Iteration order is access order, so the head is the LRU entry.
+    private void evictEldest() {
+        Iterator<Map.Entry<K, Entry<V>>> it = map.entrySet().iterator();
+        while (map.size() > maxSize && it.hasNext()) {
+            it.next();
+            it.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private record Entry<V>(V value, long expiresAt) {
+    }
+}
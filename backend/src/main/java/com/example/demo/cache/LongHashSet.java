@@ -0,0 +1,134 @@
+package com.example.demo.cache;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Set of primitive longs: open addressing with linear probing over a single long[], so a set of
+ * n ids costs about 8-16 bytes per id instead of a boxed Long plus a HashMap node each.
+ * 0 is the empty-slot marker and is tracked separately. Not thread-safe.
+ */
+public class LongHashSet {
+
+    private static final int MIN_CAPACITY = 4;
+
+    private long[] slots;
+    private int size;
+    private boolean hasZero;
+
+    public LongHashSet() {
+        this.slots = new long[MIN_CAPACITY];
+    }
+
+    public boolean contains(long value) {
+        if (value == 0) return hasZero;
+        int mask = slots.length - 1;
+        for (int i = index(value, mask); ; i = (i + 1) & mask) {
+            long slot = slots[i];
+            if (slot == value) return true;
+            if (slot == 0) return false;
+        }
+    }
+
+    /** Returns false if the value was already present. */
+    public boolean add(long value) {
+        if (value == 0) {
+            if (hasZero) return false;
+            hasZero = true;
+            size++;
+            return true;
+        }
+        if ((size + 1) * 4 > slots.length * 3) {
+            rehash(slots.length * 2);
+        }
+        int mask = slots.length - 1;
+        for (int i = index(value, mask); ; i = (i + 1) & mask) {
+            long slot = slots[i];
+            if (slot == value) return false;
+            if (slot == 0) {
+                slots[i] = value;
+                size++;
+                return true;
+            }
+        }
+    }
+
+    /** Returns false if the value was not present. */
+    public boolean remove(long value) {
+        if (value == 0) {
+            if (!hasZero) return false;
+            hasZero = false;
+            size--;
+            return true;
+        }
+        int mask = slots.length - 1;
+        int i = index(value, mask);
+        while (slots[i] != value) {
+            if (slots[i] == 0) return false;
+            i = (i + 1) & mask;
+        }
+        // backward-shift the rest of the probe run so lookups never stop at the hole
+        int hole = i;
+        for (int j = (hole + 1) & mask; slots[j] != 0; j = (j + 1) & mask) {
+            int home = index(slots[j], mask);
+            boolean movable = hole <= j ? (home <= hole || home > j) : (home <= hole && home > j);
+            if (movable) {
+                slots[hole] = slots[j];
+                hole = j;
+            }
+        }
+        slots[hole] = 0;
+        size--;
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        slots = new long[MIN_CAPACITY];
+        size = 0;
+        hasZero = false;
+    }
+
+    public void forEach(LongConsumer action) {
+        if (hasZero) action.accept(0);
+        for (long slot : slots) {
+            if (slot != 0) action.accept(slot);
+        }
+    }
+
+    public long[] toArray() {
+        long[] out = new long[size];
+        int[] n = {0};
+        forEach(v -> out[n[0]++] = v);
+        return out;
+    }
+
+    private void rehash(int capacity) {
+        long[] old = slots;
+        slots = new long[capacity];
+        int mask = capacity - 1;
+        for (long value : old) {
+            if (value == 0) continue;
+            int i = index(value, mask);
+            while (slots[i] != 0) i = (i + 1) & mask;
+            slots[i] = value;
+        }
+    }
+
+    private static int index(long value, int mask) {
+        long h = value * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.demo.cache;
+
+/**
+ * Map from primitive long to int, laid out like LongHashSet: open addressing with linear probing
+ * over parallel key/value arrays, 0 as the empty-key marker tracked separately. About 12-24 bytes
+ * per entry instead of two boxes and a HashMap node. Not thread-safe.
+ */
+public class LongIntHashMap {
+
+    private static final int MIN_CAPACITY = 4;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private boolean hasZero;
+    private int zeroValue;
+
+    public LongIntHashMap() {
+        this(MIN_CAPACITY);
+    }
+
+    public LongIntHashMap(int expected) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * 3 < expected * 4) capacity <<= 1;
+        this.keys = new long[capacity];
+        this.values = new int[capacity];
+    }
+
+    /** The value for key, or missing if there is none. */
+    public int get(long key, int missing) {
+        if (key == 0) return hasZero ? zeroValue : missing;
+        int mask = keys.length - 1;
+        for (int i = index(key, mask); ; i = (i + 1) & mask) {
+            long slot = keys[i];
+            if (slot == key) return values[i];
+            if (slot == 0) return missing;
+        }
+    }
+
+    public boolean containsKey(long key) {
+        if (key == 0) return hasZero;
+        int mask = keys.length - 1;
+        for (int i = index(key, mask); ; i = (i + 1) & mask) {
+            long slot = keys[i];
+            if (slot == key) return true;
+            if (slot == 0) return false;
+        }
+    }
+
+    public void put(long key, int value) {
+        if (key == 0) {
+            if (!hasZero) size++;
+            hasZero = true;
+            zeroValue = value;
+            return;
+        }
+        if ((size + 1) * 4 > keys.length * 3) {
+            rehash(keys.length * 2);
+        }
+        int mask = keys.length - 1;
+        for (int i = index(key, mask); ; i = (i + 1) & mask) {
+            long slot = keys[i];
+            if (slot == key) {
+                values[i] = value;
+                return;
+            }
+            if (slot == 0) {
+                keys[i] = key;
+                values[i] = value;
+                size++;
+                return;
+            }
+        }
+    }
+
+    /** Removes key and returns its value, or missing if it was not there. */
+    public int remove(long key, int missing) {
+        if (key == 0) {
+            if (!hasZero) return missing;
+            hasZero = false;
+            size--;
+            return zeroValue;
+        }
+        int mask = keys.length - 1;
+        int i = index(key, mask);
+        while (keys[i] != key) {
+            if (keys[i] == 0) return missing;
+            i = (i + 1) & mask;
+        }
+        int removed = values[i];
+        // same backward shift as LongHashSet.remove
+        int hole = i;
+        for (int j = (hole + 1) & mask; keys[j] != 0; j = (j + 1) & mask) {
+            int home = index(keys[j], mask);
+            boolean movable = hole <= j ? (home <= hole || home > j) : (home <= hole && home > j);
+            if (movable) {
+                keys[hole] = keys[j];
+                values[hole] = values[j];
+                hole = j;
+            }
+        }
+        keys[hole] = 0;
+        values[hole] = 0;
+        size--;
+        return removed;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[capacity];
+        values = new int[capacity];
+        int mask = capacity - 1;
+        for (int k = 0; k < oldKeys.length; k++) {
+            long key = oldKeys[k];
+            if (key == 0) continue;
+            int i = index(key, mask);
+            while (keys[i] != 0) i = (i + 1) & mask;
+            keys[i] = key;
+            values[i] = oldValues[k];
+        }
+    }
+
+    private static int index(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.demo.cache;
+
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Collapses concurrent calls with the same key into one upstream subscription. Every caller that
+ * arrives while a call is in flight gets the same result or error. The upstream call is cancelled
+ * only when all callers have cancelled. Completed calls are forgotten right away; this is not a cache.
+ */
+public class SingleFlight<T> {
+
+    private final ConcurrentHashMap<String, Mono<T>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong leaders = new AtomicLong();
+    private final AtomicLong collapsed = new AtomicLong();
+
+    public Mono<T> execute(String key, Supplier<Mono<T>> call) {
+        return Mono.defer(() -> {
+            Mono<T> existing = inFlight.get(key);
+            if (existing != null) {
+                collapsed.incrementAndGet();
+                return existing;
+            }
+
+            @SuppressWarnings("unchecked")
+            Mono<T>[] self = new Mono[1];
+            // share() multicasts the result and cancels upstream once every subscriber has cancelled
+            Mono<T> shared = call.get()
+                    .doFinally(signal -> inFlight.remove(key, self[0]))
+                    .share();
+            self[0] = shared;
+
+            Mono<T> winner = inFlight.putIfAbsent(key, shared);
+            if (winner != null) {
+                collapsed.incrementAndGet();
+                return winner;
+            }
+            leaders.incrementAndGet();
+            return shared;
+        });
+    }
+
+    public int inFlightCount() { return inFlight.size(); }
+
+    public long getLeaders() { return leaders.get(); }
+
+    public long getCollapsed() { return collapsed.get(); }
+}
@@ -4,21 +4,37 @@ import com.example.demo.model.AIDiagnosis;
 import com.example.demo.model.DiagnosisRequest;
 import com.example.demo.service.AiService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 @RestController
-@CrossOrigin
+@CrossOrigin(exposedHeaders = AiService.SOURCE_HEADER)
 public class AiDiagCtrl {
     @Autowired
     private AiService aiService;
 
     @PostMapping("/aiDiag") // 🔸 matches the frontend call
-    public ResponseEntity<AIDiagnosis> getAIDiagnosis(@RequestBody DiagnosisRequest request) {
+    public Mono<ResponseEntity<AIDiagnosis>> getAIDiagnosis(@RequestBody DiagnosisRequest request) {
         return aiService.diagnose(request.getSymptoms());
 
     }
+
+    // Local triage only: answers instantly, meant to be shown while /aiDiag is still pending
+    @PostMapping("/aiDiag/triage")
+    public ResponseEntity<AIDiagnosis> triage(@RequestBody DiagnosisRequest request) {
+        return ResponseEntity.ok(aiService.triage(request.getSymptoms()));
+    }
+
+    // Same diagnosis streamed over SSE: preliminary, token, condition, then a final diagnosis (or error) event
+    @PostMapping(value = "/aiDiag/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> streamAIDiagnosis(@RequestBody DiagnosisRequest request) {
+        return aiService.streamDiagnosis(request.getSymptoms());
+    }
 }
@@ -1,112 +1,263 @@
 package com.example.demo.controller;
 
+import com.example.demo.CustomUserDetails;
 import com.example.demo.model.CasePost;
+import com.example.demo.model.CaseSearchHit;
+import com.example.demo.model.SimilarCase;
+import com.example.demo.model.UploadSession;
 import com.example.demo.model.Comment;
+import com.example.demo.model.CommentPage;
+import com.example.demo.model.CommentView;
 import com.example.demo.repository.CasePostRepo;
-import com.example.demo.repository.CommentRepo;
+import com.example.demo.service.CaseFeedCache;
+import com.example.demo.service.CaseFeedService;
+import com.example.demo.service.CaseSearchService;
+import com.example.demo.service.CommentService;
+import com.example.demo.service.ImageDerivativeService;
+import com.example.demo.service.LikeService;
+import com.example.demo.service.ResumableUploadService;
+import com.example.demo.service.SimilarCaseService;
+import com.example.demo.storage.FileResponder;
+import com.example.demo.storage.UploadStore;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.util.UriUtils;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
-import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
 
 @RestController
 @CrossOrigin
 @RequestMapping("/case-posts")
 public class CasesCtrl {
-    private static final String UPLOAD_DIR = "uploads";
+    @Value("${cases.uploads.dir:uploads}")
+    private String uploadDir;
+
     @Autowired
     private CasePostRepo postRepo;
 
     @Autowired
-    private CommentRepo commentRepo;
+    private CommentService commentService;
+
+    @Autowired
+    private CaseFeedService caseFeedService;
+
+    @Autowired
+    private CaseFeedCache caseFeedCache;
+
+    @Autowired
+    private LikeService likeService;
+
+    @Autowired
+    private CaseSearchService caseSearchService;
+
+    @Autowired
+    private SimilarCaseService similarCaseService;
 
+    @Autowired
+    private UploadStore uploadStore;
+
+    @Autowired
+    private FileResponder fileResponder;
+
+    @Autowired
+    private ImageDerivativeService imageDerivativeService;
+
+    @Autowired
+    private ResumableUploadService resumableUploadService;
+
+    // Newest posts first, one page at a time; pass the returned nextCursor to get the following page.
+    // The first page comes from memory with an ETag, and polls sending it back get a 304.
     @GetMapping
-    public List<CasePost> getAll() {
-        return postRepo.findAll();
+    public ResponseEntity<?> getFeed(@RequestParam(required = false) String cursor,
+                                     @RequestParam(defaultValue = "20") int size,
+                                     @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        if ((cursor == null || cursor.isBlank()) && caseFeedCache.covers(size)) {
+            CaseFeedCache.Snapshot first = caseFeedCache.firstPage();
+            if (caseFeedCache.notModified(first, ifNoneMatch)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                        .eTag(first.etag())
+                        .cacheControl(CacheControl.noCache())
+                        .build();
+            }
+            return ResponseEntity.ok()
+                    .eTag(first.etag())
+                    .cacheControl(CacheControl.noCache())
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(first.json());
+        }
+        return ResponseEntity.ok(caseFeedService.page(cursor, size));
+    }
+
+    // Ranked full-text search over title, description, symptoms and specialization
+    @GetMapping("/search")
+    public List<CaseSearchHit> search(@RequestParam String q,
+                                      @RequestParam(required = false) List<String> specialization,
+                                      @RequestParam(defaultValue = "20") int limit) {
+        return caseSearchService.search(q, specialization, limit);
     }
+
+    // Past cases with the most similar symptoms and description
+    @GetMapping("/{postId}/similar")
+    public List<SimilarCase> similar(@PathVariable Long postId, @RequestParam(defaultValue = "5") int k) {
+        return similarCaseService.similarTo(postId, k);
+    }
+
+    // Comments are not part of the feed; clients page through them when a post is opened, oldest first
+    @GetMapping("/{postId}/comments")
+    public CommentPage getComments(@PathVariable Long postId,
+                                   @RequestParam(required = false) String cursor,
+                                   @RequestParam(defaultValue = "20") int size) {
+        return commentService.page(postId, cursor, size);
+    }
+
+    // The attachment is either a small multipart file or uploadId, a committed resumable upload
     @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public ResponseEntity<CasePost> createPost(
             @RequestPart("post") CasePost post,
-            @RequestPart(value = "file", required = false) MultipartFile file
+            @RequestPart(value = "file", required = false) MultipartFile file,
+            @RequestParam(required = false) String uploadId,
+            @AuthenticationPrincipal CustomUserDetails principal
     ) throws IOException {
+        boolean hasFile = file != null && !file.isEmpty();
+        if (hasFile && uploadId != null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Send either file or uploadId");
+        }
 
-        if (file != null && !file.isEmpty()) {
+        // the attachment and its URLs are only ever set from an upload, never by the client: a
+        // client-chosen URL would be fetched with the viewer's token
+        post.setFileHash(null);
+        post.setFileName(null);
+        post.setFileUrl(null);
+        post.setThumbnailUrl(null);
+        post.setPreviewUrl(null);
+        UploadStore.Blob blob = null;
+        if (hasFile) {
             String originalFileName = StringUtils.cleanPath(file.getOriginalFilename());
-            String uniqueName = UUID.randomUUID() + "_" + originalFileName;
-
-            Path uploadPath = Paths.get(UPLOAD_DIR);
-            Files.createDirectories(uploadPath);
-
-            Path filePath = uploadPath.resolve(uniqueName);
-            Files.copy(file.getInputStream(), filePath, StandardCopyOption.REPLACE_EXISTING);
-
+            try (InputStream in = file.getInputStream()) {
+                blob = uploadStore.store(in);
+            }
             post.setFileName(originalFileName);
-            post.setFileUrl("/case-posts/file/" + uniqueName);
+            post.setFileHash(blob.hash());
+            post.setFileUrl(fileUrl(blob.hash(), originalFileName));
+        } else if (uploadId != null) {
+            UploadSession upload = resumableUploadService.attach(uploadId, principal.getUser().getId());
+            post.setFileName(upload.getFileName());
+            post.setFileHash(upload.getFileHash());
+            post.setFileUrl(fileUrl(upload.getFileHash(), upload.getFileName()));
         }
 
         post.setCreatedAt(java.time.LocalDateTime.now());
-        return ResponseEntity.ok(postRepo.save(post));
+        CasePost saved;
+        try {
+            saved = postRepo.save(post);
+        } catch (RuntimeException e) {
+            if (blob != null) uploadStore.release(blob.hash());
+            else if (uploadId != null) resumableUploadService.detach(uploadId);
+            throw e;
+        }
+        caseFeedCache.postCreated(saved);
+        caseSearchService.postCreated(saved);
+        similarCaseService.postCreated(saved);
+        imageDerivativeService.postCreated(saved);
+        return ResponseEntity.ok(saved);
     }
 
-    @GetMapping("/file/{fileName:.+}")
-    public ResponseEntity<Resource> downloadFile(@PathVariable String fileName) throws IOException {
-        Path filePath = Paths.get(UPLOAD_DIR).resolve(fileName).normalize();
-        Resource resource = new UrlResource(filePath.toUri());
+    // Attachments are addressed by content hash; the name is only what the download is saved as
+    public static String fileUrl(String hash, String fileName) {
+        String name = fileName == null || fileName.isBlank() ? "file" : fileName;
+        return "/case-posts/file/" + hash + "/" + UriUtils.encodePathSegment(name, StandardCharsets.UTF_8);
+    }
 
-        if (!resource.exists()) {
-            return ResponseEntity.notFound().build();
+    // The hash is the strong ETag and the content behind the URL never changes; ?size=thumb|preview
+    // serves a downscaled copy of an image once ImageDerivativeService has made it
+    @GetMapping("/file/{hash:[0-9a-f]{64}}/{fileName:.+}")
+    public void downloadBlob(@PathVariable String hash, @PathVariable String fileName,
+                             @RequestParam(required = false) String size,
+                             HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (size != null) {
+            ImageDerivativeService.Size variant = ImageDerivativeService.Size.of(size)
+                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown size " + size));
+            Path path = imageDerivativeService.locate(hash, variant)
+                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "File not found"));
+            fileResponder.serve(path, "\"" + hash + "-" + size + "\"",
+                    ImageDerivativeService.derivativeName(fileName, path), true, request, response);
+            return;
         }
+        Path path = uploadStore.locate(hash)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "File not found"));
+        fileResponder.serve(path, "\"" + hash + "\"", fileName, true, request, response);
+    }
 
-        String contentDisposition = "attachment; filename=\"" + resource.getFilename() + "\"";
-        return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_DISPOSITION, contentDisposition)
-                .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                .body(resource);
+    // Files uploaded before the content-addressed store, until UploadMigration has moved them
+    @GetMapping("/file/{fileName:.+}")
+    public void downloadFile(@PathVariable String fileName,
+                             HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Path root = Paths.get(uploadDir).toAbsolutePath().normalize();
+        Path filePath = root.resolve(fileName).normalize();
+        if (!root.equals(filePath.getParent()) || !Files.isRegularFile(filePath)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "File not found");
+        }
+        fileResponder.serve(filePath, null, fileName, false, request, response);
     }
+
+    // Legacy toggle. userId is still accepted from older clients, but the liker is the signed-in user
     @PostMapping("/{postId}/like")
-    public ResponseEntity<?> likePost(@PathVariable Long postId, @RequestParam Long userId) {
-        CasePost post = postRepo.findById(postId)
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Post not found"));
-
-        if (post.getLikedUserIds().contains(userId)) {
-            post.setLikes(post.getLikes()-1);
-            CasePost updatedPost = postRepo.save(post);
-            return ResponseEntity.ok(updatedPost);
-        }
+    public ResponseEntity<?> likePost(@PathVariable Long postId,
+                                      @RequestParam(required = false) Long userId,
+                                      @AuthenticationPrincipal CustomUserDetails principal) {
+        return ResponseEntity.ok(likeView(postId, likeService.toggle(postId, principal.getUser().getId())));
+    }
 
-        post.getLikedUserIds().add(userId);
-        post.setLikes(post.getLikes() + 1);
-        CasePost updatedPost = postRepo.save(post);
+    // Idempotent like/unlike: repeating either leaves the count unchanged
+    @PutMapping("/{postId}/like")
+    public ResponseEntity<?> like(@PathVariable Long postId, @AuthenticationPrincipal CustomUserDetails principal) {
+        return ResponseEntity.ok(likeView(postId, likeService.like(postId, principal.getUser().getId())));
+    }
 
-        return ResponseEntity.ok(updatedPost);
+    @DeleteMapping("/{postId}/like")
+    public ResponseEntity<?> unlike(@PathVariable Long postId, @AuthenticationPrincipal CustomUserDetails principal) {
+        return ResponseEntity.ok(likeView(postId, likeService.unlike(postId, principal.getUser().getId())));
     }
 
+    private Map<String, Object> likeView(Long postId, LikeService.Result result) {
+        if (result.change() != LikeService.Change.UNCHANGED) {
+            caseFeedCache.likesChanged(postId, result.likes());
+        }
+        Map<String, Object> view = new LinkedHashMap<>();
+        view.put("postId", postId);
+        view.put("likes", result.likes());
+        view.put("liked", result.liked());
+        return view;
+    }
 
+    // Answers with just the new comment; the post and its other comments are not touched
     @PostMapping("/{postId}/comments")
-    public ResponseEntity<CasePost> addComment(
+    public ResponseEntity<CommentView> addComment(
             @PathVariable Long postId,
             @RequestBody Comment comment
     ) {
-        CasePost post = postRepo.findById(postId).orElseThrow();
-        comment.setCreatedAt(LocalDateTime.now());
-        commentRepo.save(comment);
-        post.getComments().add(comment);
-        return ResponseEntity.ok(postRepo.save(post));
+        CommentView added = commentService.add(postId, comment);
+        caseFeedCache.commentAdded(postId);
+        return ResponseEntity.ok(added);
     }
 }
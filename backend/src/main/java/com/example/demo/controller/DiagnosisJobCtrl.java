@@ -0,0 +1,68 @@
+package com.example.demo.controller;
+
+import com.example.demo.CustomUserDetails;
+import com.example.demo.model.DiagnosisJob;
+import com.example.demo.model.DiagnosisJobRequest;
+import com.example.demo.service.DiagnosisJobService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+@RestController
+@CrossOrigin
+public class DiagnosisJobCtrl {
+
+    @Autowired
+    private DiagnosisJobService jobService;
+
+    // Queues a batch of symptom sets; answers right away with the job id to poll or stream
+    @PostMapping("/aiDiag/jobs")
+    public ResponseEntity<?> submit(@RequestBody DiagnosisJobRequest request,
+                                    @AuthenticationPrincipal CustomUserDetails principal) {
+        DiagnosisJob job;
+        try {
+            job = jobService.submit(principal.getUser().getId(), request.getSymptoms());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+        return ResponseEntity.accepted()
+                .location(URI.create("/aiDiag/jobs/" + job.getId()))
+                .body(DiagnosisJobService.view(job));
+    }
+
+    @GetMapping("/aiDiag/jobs/{id}")
+    public ResponseEntity<?> status(@PathVariable Long id, @AuthenticationPrincipal CustomUserDetails principal) {
+        Optional<DiagnosisJob> job = jobService.find(id, principal.getUser().getId());
+        if (job.isEmpty()) return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Job not found");
+        return ResponseEntity.ok(DiagnosisJobService.view(job.get()));
+    }
+
+    @GetMapping("/aiDiag/jobs/{id}/results")
+    public ResponseEntity<?> results(@PathVariable Long id, @AuthenticationPrincipal CustomUserDetails principal) {
+        if (jobService.find(id, principal.getUser().getId()).isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Job not found");
+        }
+        List<Map<String, Object>> items = jobService.items(id).stream().map(DiagnosisJobService::view).toList();
+        return ResponseEntity.ok(items);
+    }
+
+    // result events as items finish, progress events, then a final completed event
+    @GetMapping(value = "/aiDiag/jobs/{id}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> stream(@PathVariable Long id, @AuthenticationPrincipal CustomUserDetails principal) {
+        if (jobService.find(id, principal.getUser().getId()).isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Job not found");
+        }
+        return jobService.stream(id);
+    }
+}
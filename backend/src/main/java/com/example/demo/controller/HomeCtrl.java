@@ -1,26 +1,26 @@
 package com.example.demo.controller;
 
-import com.example.demo.service.AiService;
+import com.example.demo.service.HealthFactsService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
 
 @RestController
 @CrossOrigin
 public class HomeCtrl {
     @Autowired
-    private AiService aiService;
+    private HealthFactsService healthFactsService;
 
     @GetMapping("/facts")
-    public ResponseEntity<String> getHealthFacts() {
+    public Mono<ResponseEntity<String>> getHealthFacts() {
         System.out.println("home controller");
-        String factsJson = aiService.getFacts();
-        return ResponseEntity.ok()
+        return healthFactsService.nextFacts().map(factsJson -> ResponseEntity.ok()
                 .header("Content-Type", "application/json")
-                .body(factsJson);
+                .body(factsJson));
 
     }
 }
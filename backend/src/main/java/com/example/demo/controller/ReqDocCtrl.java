@@ -1,20 +1,28 @@
 package com.example.demo.controller;
 
+import com.example.demo.CustomUserDetails;
 import com.example.demo.model.ConsultReq;
 import com.example.demo.model.Role;
+import com.example.demo.model.UploadSession;
 import com.example.demo.model.User;
 import com.example.demo.repository.ConsultReqRepo;
 import com.example.demo.repository.UserRepo;
-import jakarta.transaction.Transactional;
+import com.example.demo.service.ResumableUploadService;
+import com.example.demo.storage.FileResponder;
+import com.example.demo.storage.UploadStore;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -29,19 +37,31 @@ public class ReqDocCtrl {
     private UserRepo userRepo;
     @Autowired
     private ConsultReqRepo consultationRepo;
+    @Autowired
+    private ResumableUploadService resumableUploadService;
+    @Autowired
+    private UploadStore uploadStore;
+    @Autowired
+    private FileResponder fileResponder;
 
     @GetMapping("/consultations/doctors")
     public List<User> getAllDoctors() {
         return userRepo.findByRole(Role.DOCTOR);
     }
 
+    // The document is either a multipart file or uploadId, a committed resumable upload for large scans
     @PostMapping("/consultations/request")
     public ResponseEntity<?> sendConsultationRequest(
-            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "file", required = false) MultipartFile file,
+            @RequestParam(required = false) String uploadId,
             @RequestParam String message,
             @RequestParam Long doctorId,
-            @RequestParam Long patientId
+            @RequestParam Long patientId,
+            @AuthenticationPrincipal CustomUserDetails principal
     ) throws IOException {
+        if ((file == null || file.isEmpty()) == (uploadId == null)) {
+            return ResponseEntity.badRequest().body("Send either file or uploadId.");
+        }
         Optional<User> doctorOpt = userRepo.findById(doctorId);
         Optional<User> patientOpt = userRepo.findById(patientId);
 
@@ -57,11 +77,24 @@ public class ReqDocCtrl {
         req.setDoctor(doctorOpt.get());
         req.setPatient(patientOpt.get());
         req.setMessage(message);
-        req.setDocument(file.getBytes());
-        req.setFileName(file.getOriginalFilename());
-        req.setFileType(file.getContentType());
+        if (uploadId == null) {
+            req.setDocument(file.getBytes());
+            req.setFileName(file.getOriginalFilename());
+            req.setFileType(file.getContentType());
+            consultationRepo.save(req);
+            return ResponseEntity.ok("Request sent");
+        }
 
-        consultationRepo.save(req);
+        UploadSession upload = resumableUploadService.attach(uploadId, principal.getUser().getId());
+        req.setFileHash(upload.getFileHash());
+        req.setFileName(upload.getFileName());
+        req.setFileType(upload.getContentType());
+        try {
+            consultationRepo.save(req);
+        } catch (RuntimeException e) {
+            resumableUploadService.detach(uploadId);
+            throw e;
+        }
         return ResponseEntity.ok("Request sent");
     }
 
@@ -85,10 +118,19 @@ public class ReqDocCtrl {
         return consultationRepo.findByDoctorIdAndStatusNot(doctorId, "approved");
     }
 
-    @Transactional
+    // Resumable uploads are streamed from the UploadStore with ranges; older requests carry their bytes.
+    // No transaction around this: findById loads the request (bytea included) in its own short one,
+    // so a slow download never holds a pooled connection.
     @GetMapping("/consultations/download/{requestId}")
-    public ResponseEntity<byte[]> downloadFile(@PathVariable Long requestId) {
+    public ResponseEntity<byte[]> downloadFile(@PathVariable Long requestId,
+                                               HttpServletRequest request, HttpServletResponse response) throws IOException {
         ConsultReq req = consultationRepo.findById(requestId).orElseThrow();
+        if (req.getFileHash() != null) {
+            Path path = uploadStore.locate(req.getFileHash()).orElse(null);
+            if (path == null) return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+            fileResponder.serve(path, "\"" + req.getFileHash() + "\"", req.getFileName(), true, request, response);
+            return null;
+        }
         return ResponseEntity.ok()
                 .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + req.getFileName())
                 .contentType(MediaType.parseMediaType(req.getFileType()))
@@ -0,0 +1,60 @@
+package com.example.demo.controller;
+
+import com.example.demo.CustomUserDetails;
+import com.example.demo.model.UploadRequest;
+import com.example.demo.model.UploadSession;
+import com.example.demo.service.ResumableUploadService;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Map;
+
+// Resumable uploads: open a session, PUT its chunks as raw bytes, check what arrived, commit.
+// The committed id is then passed as uploadId when creating a case post or consult request.
+@RestController
+@CrossOrigin
+@RequestMapping("/uploads")
+public class UploadCtrl {
+
+    @Autowired
+    private ResumableUploadService uploadService;
+
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> initiate(@RequestBody UploadRequest request,
+                                                        @AuthenticationPrincipal CustomUserDetails principal) {
+        UploadSession session = uploadService.initiate(principal.getUser().getId(), request.getFileName(),
+                request.getContentType(), request.getSize(), request.getChunkSize());
+        return ResponseEntity.created(URI.create("/uploads/" + session.getId())).body(uploadService.view(session));
+    }
+
+    // X-Chunk-SHA256 is optional; with it a chunk corrupted on the way is refused rather than stored
+    @PutMapping("/{id}/chunks/{index}")
+    public ResponseEntity<Void> putChunk(@PathVariable String id, @PathVariable int index,
+                                         @RequestHeader(value = "X-Chunk-SHA256", required = false) String chunkSha256,
+                                         HttpServletRequest request,
+                                         @AuthenticationPrincipal CustomUserDetails principal) throws IOException {
+        try (InputStream body = request.getInputStream()) {
+            uploadService.writeChunk(id, principal.getUser().getId(), index, body, request.getContentLengthLong(),
+                    chunkSha256);
+        }
+        return ResponseEntity.noContent().build();
+    }
+
+    // receivedChunks lists index ranges like "0-4", so a client resuming sends only the gaps
+    @GetMapping("/{id}")
+    public Map<String, Object> status(@PathVariable String id, @AuthenticationPrincipal CustomUserDetails principal) {
+        return uploadService.view(uploadService.find(id, principal.getUser().getId()));
+    }
+
+    @PostMapping("/{id}/commit")
+    public Map<String, Object> commit(@PathVariable String id, @RequestParam(required = false) String sha256,
+                                      @AuthenticationPrincipal CustomUserDetails principal) throws IOException {
+        return uploadService.view(uploadService.commit(id, principal.getUser().getId(), sha256));
+    }
+}
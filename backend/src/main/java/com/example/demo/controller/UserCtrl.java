@@ -1,17 +1,23 @@
 package com.example.demo.controller;
 
 import com.example.demo.CustomUserDetails;
+import com.example.demo.CustomUserDetailsService;
 import com.example.demo.JwtUtil;
 import com.example.demo.model.*;
 import com.example.demo.repository.UserRepo;
+import com.example.demo.service.PasswordHashingService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @CrossOrigin
@@ -21,7 +27,7 @@ public class UserCtrl {
     @Autowired
     private JwtUtil jwtUtil;
     @Autowired
-    private PasswordEncoder passwordEncoder;
+    private PasswordHashingService passwordHashing;
 
 
         @PostMapping("/verify-nmc")
@@ -35,83 +41,116 @@ public class UserCtrl {
         }
 
     @PostMapping("/register")
-    public ResponseEntity<?> register(@RequestBody RegisterRequest req) {
+    public CompletableFuture<ResponseEntity<?>> register(@RequestBody RegisterRequest req) {
         if (userRepo.existsByEmail(req.getEmail())) {
-            return ResponseEntity.status(HttpStatus.CONFLICT).body("Email already in use");
+            return CompletableFuture.completedFuture(
+                    ResponseEntity.status(HttpStatus.CONFLICT).body("Email already in use"));
         }
 
-        User user = new User();
-        user.setName(req.getName());
-        user.setEmail(req.getEmail());
-        user.setPassword(passwordEncoder.encode(req.getPassword()));
-        user.setRole(Role.valueOf(req.getRole().toUpperCase()));
-        user.setNmcNumber(req.getNmcNumber());
-        user.setSpecialization(req.getSpecialization());
-        user.setLocation(req.getLocation());
-        user.setVerified(req.isVerified());
+        CompletableFuture<String> hash;
+        try {
+            hash = passwordHashing.encode(req.getPassword());
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(busy());
+        }
 
+        return hash.thenApply(encoded -> {
+            User user = new User();
+            user.setName(req.getName());
+            user.setEmail(req.getEmail());
+            user.setPassword(encoded);
+            user.setRole(Role.valueOf(req.getRole().toUpperCase()));
+            user.setNmcNumber(req.getNmcNumber());
+            user.setSpecialization(req.getSpecialization());
+            user.setLocation(req.getLocation());
+            user.setVerified(req.isVerified());
 
-        userRepo.save(user);
-        CustomUserDetails userDetails = new CustomUserDetails(user);
 
-        String token = jwtUtil.generateToken(userDetails);
+            userRepo.save(user);
+            userDetailsService.evict(user.getEmail());
+            CustomUserDetails userDetails = new CustomUserDetails(user);
 
-        return ResponseEntity.ok(new AuthResponse(
-                user.getId(), user.getName(), user.getEmail(), user.getRole(), user.isVerified(), token
-        ));
+            String token = jwtUtil.generateToken(userDetails);
+
+            return ResponseEntity.ok(new AuthResponse(
+                    user.getId(), user.getName(), user.getEmail(), user.getRole(), user.isVerified(), token
+            ));
+        });
     }
 
     @PostMapping("/login")
-    public ResponseEntity<?> login(@RequestBody AuthRequest req) {
+    public CompletableFuture<ResponseEntity<?>> login(@RequestBody AuthRequest req) {
         Optional<User> userOpt = userRepo.findByEmail(req.getEmail());
-        if (userOpt.isEmpty()) return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("User not found");
+        if (userOpt.isEmpty()) {
+            return CompletableFuture.completedFuture(
+                    ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("User not found"));
+        }
 
         User user = userOpt.get();
 //        if(user.getRole()!=req.getRole()){
 //            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("User not found");
 //        }
-        if (!passwordEncoder.matches(req.getPassword(), user.getPassword())) {
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid credentials");
-        }
-
-
-        if (!user.getRole().name().equalsIgnoreCase(req.getRole())) {
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Role mismatch");
+        CompletableFuture<Boolean> matches;
+        try {
+            matches = passwordHashing.matches(req.getPassword(), user.getPassword());
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(busy());
         }
-        CustomUserDetails userDetails = new CustomUserDetails(user);
-        String token = jwtUtil.generateToken(userDetails);
 
-        return ResponseEntity.ok(new AuthResponse(
-                user.getId(), user.getName(), user.getEmail(), user.getRole(), user.isVerified(), token
-        ));
+        return matches.thenApply(ok -> {
+            if (!ok) {
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid credentials");
+            }
+
+            if (!user.getRole().name().equalsIgnoreCase(req.getRole())) {
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Role mismatch");
+            }
+
+            // Stored hash is weaker than the configured BCrypt cost, upgrade it now that we have the raw password
+            if (passwordHashing.needsRehash(user.getPassword())) {
+                passwordHashing.rehashLater(req.getPassword(), encoded -> {
+                    user.setPassword(encoded);
+                    userRepo.save(user);
+                    userDetailsService.evict(user.getEmail());
+                });
+            }
+
+            CustomUserDetails userDetails = new CustomUserDetails(user);
+            String token = jwtUtil.generateToken(userDetails);
+
+            return ResponseEntity.ok(new AuthResponse(
+                    user.getId(), user.getName(), user.getEmail(), user.getRole(), user.isVerified(), token
+            ));
+        });
+    }
 
+    private ResponseEntity<?> busy() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body("Too many sign-in requests, please retry");
     }
 
 
-        @Autowired
-        private JwtUtil jwtService;
+    @Autowired
+    private CustomUserDetailsService userDetailsService;
 
+    // JwtFilter has already verified the token and resolved the principal, so reuse it here
     @GetMapping("/me")
-    public ResponseEntity<?> getCurrentUser(@RequestHeader("Authorization") String authHeader) {
-        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+    public ResponseEntity<?> getCurrentUser(@AuthenticationPrincipal CustomUserDetails principal) {
+        if (principal == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Missing or invalid token");
         }
 
-        String token = authHeader.substring(7);
-        String email;
-
-        try {
-            email = jwtService.extractUsername(token);
-        } catch (Exception e) {
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid token");
+        if (!principal.isFromClaims()) {
+            return ResponseEntity.ok(principal.getUser());
         }
 
-        Optional<User> user = userRepo.findByEmail(email);
-        if (user == null) {
+        // Claims-only principals don't carry the profile fields, fetch them through the cache
+        try {
+            return ResponseEntity.ok(userDetailsService.loadCachedUser(principal.getUsername()).getUser());
+        } catch (UsernameNotFoundException e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body("User not found");
         }
-
-        return ResponseEntity.ok(user);
     }
 
 
@@ -0,0 +1,12 @@
+package com.example.demo.model;
+
+import lombok.Value;
+
+import java.util.List;
+
+// One page of the case feed; nextCursor is null on the last page
+@Value
+public class CaseFeedPage {
+    List<CasePostSummary> items;
+    String nextCursor;
+}
@@ -1,7 +1,10 @@
 package com.example.demo.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.Data;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
@@ -11,6 +14,7 @@ import java.util.Set;
 
 @Entity
 @Data
+@Table(indexes = @Index(columnList = "createdAt, id"))
 public class CasePost {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -31,8 +35,18 @@ public class CasePost {
 
     private String fileName;
     private String fileUrl;
-
-    @OneToMany(cascade = CascadeType.ALL, orphanRemoval = true)
+    // SHA-256 of the attachment in the UploadStore; null for posts without one or not migrated yet
+    @Column(length = 64)
+    private String fileHash;
+    // downscaled copies of an image attachment, set by ImageDerivativeService once they exist
+    private String thumbnailUrl;
+    private String previewUrl;
+
+    // Read-only view of comment.post_id: comments are inserted on their own and never through the post
+    @OneToMany
+    @JoinColumn(name = "post_id", insertable = false, updatable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    @JsonIgnore
     private List<Comment> comments = new ArrayList<Comment>();
     @ElementCollection
     private Set<Long> likedUserIds = new HashSet<>();
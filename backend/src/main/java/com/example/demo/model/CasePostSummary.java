@@ -0,0 +1,40 @@
+package com.example.demo.model;
+
+import lombok.Value;
+import lombok.With;
+
+import java.time.LocalDateTime;
+
+/**
+ * Feed row for a case post: the post's own columns plus its comment count, read in one query
+ * without loading the comments or liked-user collections.
+ */
+@Value
+public class CasePostSummary {
+    Long id;
+    String title;
+    String description;
+    int patientAge;
+    String patientGender;
+    String symptoms;
+    String doctorId;
+    String doctorName;
+    String specialization;
+    LocalDateTime createdAt;
+    @With
+    int likes;
+    String fileName;
+    String fileUrl;
+    String thumbnailUrl;
+    String previewUrl;
+    @With
+    int commentCount;
+
+    // a post just created, before anyone has liked or commented on it
+    public static CasePostSummary of(CasePost post) {
+        return new CasePostSummary(post.getId(), post.getTitle(), post.getDescription(), post.getPatientAge(),
+                post.getPatientGender(), post.getSymptoms(), post.getDoctorId(), post.getDoctorName(),
+                post.getSpecialization(), post.getCreatedAt(), post.getLikes(), post.getFileName(),
+                post.getFileUrl(), post.getThumbnailUrl(), post.getPreviewUrl(), 0);
+    }
+}
@@ -0,0 +1,10 @@
+package com.example.demo.model;
+
+import lombok.Value;
+
+// A search result: the post as the feed shows it, with its BM25 score
+@Value
+public class CaseSearchHit {
+    CasePostSummary post;
+    double score;
+}
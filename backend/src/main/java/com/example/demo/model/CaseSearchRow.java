@@ -0,0 +1,13 @@
+package com.example.demo.model;
+
+import lombok.Value;
+
+// The columns of a case post that the search index reads
+@Value
+public class CaseSearchRow {
+    Long id;
+    String title;
+    String description;
+    String symptoms;
+    String specialization;
+}
@@ -1,20 +1,28 @@
 package com.example.demo.model;
 
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
 import lombok.Data;
 
 import java.time.LocalDateTime;
 
 @Entity
 @Data
+@Table(indexes = @Index(columnList = "post_id, id"))
 public class Comment {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    // owning post; the foreign key is declared by CasePost.comments
+    @Column(name = "post_id")
+    private Long postId;
+
     private String doctorId;
     private String doctorName;
     private String content;
@@ -0,0 +1,12 @@
+package com.example.demo.model;
+
+import lombok.Value;
+
+import java.util.List;
+
+// One page of a post's comments, oldest first; nextCursor is null on the last page
+@Value
+public class CommentPage {
+    List<CommentView> items;
+    String nextCursor;
+}
@@ -0,0 +1,21 @@
+package com.example.demo.model;
+
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+// A comment as clients see it, read straight from the comment row
+@Value
+public class CommentView {
+    Long id;
+    Long postId;
+    String doctorId;
+    String doctorName;
+    String content;
+    LocalDateTime createdAt;
+
+    public static CommentView of(Comment comment) {
+        return new CommentView(comment.getId(), comment.getPostId(), comment.getDoctorId(),
+                comment.getDoctorName(), comment.getContent(), comment.getCreatedAt());
+    }
+}
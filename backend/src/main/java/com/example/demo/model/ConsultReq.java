@@ -31,6 +31,10 @@ public class ConsultReq {
     private String fileName;
     private String fileType;
 
+    // set instead of document when the file came as a resumable upload; it lives in the UploadStore
+    @Column(length = 64)
+    private String fileHash;
+
     @Column(length = 1000)
     private String doctorMessage;
 
@@ -0,0 +1,27 @@
+package com.example.demo.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+// A batch of symptom sets submitted together; its items are diagnosed in the background
+@Entity
+@Data
+@Table(indexes = @Index(columnList = "ownerId"))
+public class DiagnosisJob {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private Long ownerId;
+
+    private String status = "queued"; // queued, running, completed
+
+    private int total;
+    private int completed;
+    private int failed;
+
+    private LocalDateTime createdAt = LocalDateTime.now();
+    private LocalDateTime finishedAt;
+}
@@ -0,0 +1,36 @@
+package com.example.demo.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Data
+@Table(indexes = {
+        @Index(columnList = "jobId, position"),
+        @Index(columnList = "status, id")
+})
+public class DiagnosisJobItem {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    private Long jobId;
+    private int position;
+
+    @Column(length = 2000)
+    private String symptoms;
+
+    private String status = "queued"; // queued, running, done, failed
+
+    // AIDiagnosis as JSON, and where it came from (ai, cache or triage)
+    @Column(columnDefinition = "text")
+    private String result;
+    private String source;
+
+    @Column(length = 1000)
+    private String error;
+
+    private LocalDateTime finishedAt;
+}
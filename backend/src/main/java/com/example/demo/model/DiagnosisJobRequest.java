@@ -0,0 +1,10 @@
+package com.example.demo.model;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class DiagnosisJobRequest {
+    private List<String> symptoms;
+}
@@ -0,0 +1,11 @@
+package com.example.demo.model;
+
+import lombok.Value;
+
+// A similar past case: the post as the feed shows it, with the exact Jaccard similarity of the two
+// posts' symptom and description words (MinHash only picks the candidates)
+@Value
+public class SimilarCase {
+    CasePostSummary post;
+    double similarity;
+}
@@ -0,0 +1,20 @@
+package com.example.demo.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+// A stored upload, keyed by the SHA-256 of its content; refCount is how many posts point at it
+@Entity
+@Data
+public class UploadBlob {
+    @Id
+    @Column(length = 64)
+    private String hash;
+
+    private long size;
+    private int refCount;
+
+    private LocalDateTime createdAt = LocalDateTime.now();
+}
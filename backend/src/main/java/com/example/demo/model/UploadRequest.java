@@ -0,0 +1,11 @@
+package com.example.demo.model;
+
+import lombok.Data;
+
+@Data
+public class UploadRequest {
+    private String fileName;
+    private String contentType;
+    private Long size;
+    private Integer chunkSize; // optional; the server default otherwise
+}
@@ -0,0 +1,41 @@
+package com.example.demo.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.Set;
+
+// A resumable upload: chunks land in a part file until it is committed into the UploadStore
+@Entity
+@Data
+@Table(indexes = @Index(columnList = "updatedAt"))
+public class UploadSession {
+    @Id
+    @Column(length = 32)
+    private String id;
+
+    private Long ownerId;
+
+    private String fileName;
+    private String contentType;
+    private long size;
+    private int chunkSize;
+    private int chunkCount;
+
+    private String status = "open"; // open, committing, committed, attached
+
+    // chunk indexes written and flushed to the part file; maintained with plain SQL
+    @ElementCollection
+    @CollectionTable(name = "upload_session_chunk", joinColumns = @JoinColumn(name = "session_id"))
+    @Column(name = "chunk_index")
+    private Set<Integer> receivedChunks = new HashSet<>();
+
+    // set on commit; the session holds one reference to the blob until it is attached
+    @Column(length = 64)
+    private String fileHash;
+
+    private LocalDateTime createdAt = LocalDateTime.now();
+    private LocalDateTime updatedAt = LocalDateTime.now();
+}
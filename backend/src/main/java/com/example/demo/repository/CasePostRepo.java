@@ -1,18 +1,41 @@
 package com.example.demo.repository;
 
 import com.example.demo.model.CasePost;
+import com.example.demo.model.CasePostSummary;
+import com.example.demo.model.CaseSearchRow;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 public interface CasePostRepo extends JpaRepository<CasePost,Long> {
-    @Modifying
-    @Transactional
-    @Query("DELETE FROM CasePost p WHERE p.createdAt < :cutoff")
-    void deleteOldPosts(LocalDateTime cutoff);
+    String SUMMARY = "SELECT new com.example.demo.model.CasePostSummary(p.id, p.title, p.description, " +
+            "p.patientAge, p.patientGender, p.symptoms, p.doctorId, p.doctorName, p.specialization, " +
+            "p.createdAt, p.likes, p.fileName, p.fileUrl, p.thumbnailUrl, p.previewUrl, SIZE(p.comments)) FROM CasePost p ";
+
+    // Newest first; keyset on (createdAt, id) so a page costs the same however deep it is
+    @Query(SUMMARY + "ORDER BY p.createdAt DESC, p.id DESC")
+    List<CasePostSummary> findFeed(Pageable page);
+
+    @Query(SUMMARY + "WHERE p.createdAt < :createdAt OR (p.createdAt = :createdAt AND p.id < :id) " +
+            "ORDER BY p.createdAt DESC, p.id DESC")
+    List<CasePostSummary> findFeedAfter(LocalDateTime createdAt, Long id, Pageable page);
+
+    @Query(SUMMARY + "WHERE p.id IN :ids")
+    List<CasePostSummary> findSummaries(Collection<Long> ids);
+
+    // Streamed in fetch-size batches for building the search index; needs an open transaction
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("SELECT new com.example.demo.model.CaseSearchRow(p.id, p.title, p.description, p.symptoms, " +
+            "p.specialization) FROM CasePost p ORDER BY p.id")
+    Stream<CaseSearchRow> streamSearchRows();
 }
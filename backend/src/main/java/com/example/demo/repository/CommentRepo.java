@@ -1,9 +1,20 @@
 package com.example.demo.repository;
 
 import com.example.demo.model.Comment;
+import com.example.demo.model.CommentView;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+
 @Repository
 public interface CommentRepo extends JpaRepository<Comment,Long> {
+    String VIEW = "SELECT new com.example.demo.model.CommentView(c.id, c.postId, c.doctorId, c.doctorName, " +
+            "c.content, c.createdAt) FROM Comment c ";
+
+    // Oldest first, keyset on id, served by the (postId, id) index
+    @Query(VIEW + "WHERE c.postId = :postId AND c.id > :afterId ORDER BY c.id")
+    List<CommentView> findPage(Long postId, Long afterId, Pageable page);
 }
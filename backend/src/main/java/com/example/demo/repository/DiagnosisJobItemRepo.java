@@ -0,0 +1,30 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.DiagnosisJobItem;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Repository
+public interface DiagnosisJobItemRepo extends JpaRepository<DiagnosisJobItem, Long> {
+    List<DiagnosisJobItem> findByJobIdOrderByPosition(Long jobId);
+
+    List<DiagnosisJobItem> findByStatusOrderById(String status, Pageable page);
+
+    // Claims an item for a worker; 0 means another dispatch got there first
+    @Modifying
+    @Transactional
+    @Query("UPDATE DiagnosisJobItem i SET i.status = 'running' WHERE i.id = :id AND i.status = 'queued'")
+    int claim(Long id);
+
+    // Items left running by a previous process go back to the queue
+    @Modifying
+    @Transactional
+    @Query("UPDATE DiagnosisJobItem i SET i.status = 'queued' WHERE i.status = 'running'")
+    int requeueRunning();
+}
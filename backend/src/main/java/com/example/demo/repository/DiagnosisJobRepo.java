@@ -0,0 +1,33 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.DiagnosisJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface DiagnosisJobRepo extends JpaRepository<DiagnosisJob, Long> {
+    Optional<DiagnosisJob> findByIdAndOwnerId(Long id, Long ownerId);
+
+    // Counters are bumped in SQL so parallel workers don't overwrite each other
+    @Modifying
+    @Transactional
+    @Query("UPDATE DiagnosisJob j SET j.completed = j.completed + 1, j.status = 'running' WHERE j.id = :id")
+    void incrementCompleted(Long id);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE DiagnosisJob j SET j.failed = j.failed + 1, j.status = 'running' WHERE j.id = :id")
+    void incrementFailed(Long id);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE DiagnosisJob j SET j.status = 'completed', j.finishedAt = :now " +
+            "WHERE j.id = :id AND j.completed + j.failed >= j.total")
+    int completeIfFinished(Long id, LocalDateTime now);
+}
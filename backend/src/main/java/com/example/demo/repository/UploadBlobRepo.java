@@ -0,0 +1,23 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.UploadBlob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface UploadBlobRepo extends JpaRepository<UploadBlob, String> {
+    // Reference counts change in SQL, never read-modify-write
+    @Modifying
+    @Query("UPDATE UploadBlob b SET b.refCount = b.refCount + 1 WHERE b.hash = :hash")
+    int retain(String hash);
+
+    @Modifying
+    @Query("UPDATE UploadBlob b SET b.refCount = b.refCount - 1 WHERE b.hash = :hash AND b.refCount > 0")
+    int release(String hash);
+
+    @Modifying
+    @Query("DELETE FROM UploadBlob b WHERE b.hash = :hash AND b.refCount <= 0")
+    int deleteIfUnreferenced(String hash);
+}
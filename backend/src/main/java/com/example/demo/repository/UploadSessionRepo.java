@@ -0,0 +1,28 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.UploadSession;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface UploadSessionRepo extends JpaRepository<UploadSession, String> {
+    Optional<UploadSession> findByIdAndOwnerId(String id, Long ownerId);
+
+    List<UploadSession> findByUpdatedAtBefore(LocalDateTime cutoff);
+
+    // Only one caller can move a session from one status to the next
+    @Modifying
+    @Query("UPDATE UploadSession s SET s.status = :to, s.updatedAt = :now WHERE s.id = :id AND s.status = :from")
+    int transition(String id, String from, String to, LocalDateTime now);
+
+    @Modifying
+    @Query("UPDATE UploadSession s SET s.status = 'committed', s.fileHash = :hash, s.updatedAt = :now " +
+            "WHERE s.id = :id AND s.status = 'committing'")
+    int committed(String id, String hash, LocalDateTime now);
+}
@@ -0,0 +1,157 @@
+package com.example.demo.service;
+
+import com.example.demo.model.AIDiagnosis;
+import com.example.demo.model.Condition;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.json.JsonReadFeature;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JSON handling for the chat-completions API, shared and thread-safe.
+ * Requests are written with a streaming generator (so prompts are always escaped correctly),
+ * replies are read token by token up to choices[0] without building a tree, and model output is
+ * decoded tolerantly: surrounding fences or chatter are skipped, and common syntax slips
+ * (trailing commas, single quotes, unquoted names) are accepted.
+ */
+public final class AiJsonCodec {
+
+    private static final JsonMapper MAPPER = JsonMapper.builder()
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .build();
+
+    private static final JsonMapper LENIENT_MAPPER = JsonMapper.builder()
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .enable(JsonReadFeature.ALLOW_TRAILING_COMMA,
+                    JsonReadFeature.ALLOW_SINGLE_QUOTES,
+                    JsonReadFeature.ALLOW_UNQUOTED_FIELD_NAMES,
+                    JsonReadFeature.ALLOW_UNESCAPED_CONTROL_CHARS,
+                    JsonReadFeature.ALLOW_NON_NUMERIC_NUMBERS)
+            .build();
+
+    private static final JsonFactory FACTORY = MAPPER.getFactory();
+    private static final ObjectReader DIAGNOSIS_READER = MAPPER.readerFor(AIDiagnosis.class);
+    private static final ObjectReader LENIENT_DIAGNOSIS_READER = LENIENT_MAPPER.readerFor(AIDiagnosis.class);
+    private static final ObjectReader CONDITION_READER = LENIENT_MAPPER.readerFor(Condition.class);
+
+    private AiJsonCodec() {
+    }
+
+    /** UTF-8 body for a single-message chat completion request. */
+    public static byte[] chatRequest(String model, String prompt, boolean stream) {
+        try (ByteArrayBuilder out = new ByteArrayBuilder(256 + prompt.length());
+             JsonGenerator gen = FACTORY.createGenerator(out)) {
+            gen.writeStartObject();
+            gen.writeStringField("model", model);
+            gen.writeBooleanField("stream", stream);
+            gen.writeArrayFieldStart("messages");
+            gen.writeStartObject();
+            gen.writeStringField("role", "user");
+            gen.writeStringField("content", prompt);
+            gen.writeEndObject();
+            gen.writeEndArray();
+            gen.writeEndObject();
+            gen.flush();
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** choices[0].message.content of a completion, or null if absent. */
+    public static String messageContent(String json) {
+        return choiceText(json, "message");
+    }
+
+    /** choices[0].delta.content of a streamed chunk, or null if absent. */
+    public static String deltaContent(String json) {
+        return choiceText(json, "delta");
+    }
+
+    private static String choiceText(String json, String container) {
+        try (JsonParser p = FACTORY.createParser(json)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) return null;
+            if (!seekField(p, "choices") || p.nextToken() != JsonToken.START_ARRAY) return null;
+            if (p.nextToken() != JsonToken.START_OBJECT) return null;
+            if (!seekField(p, container) || p.nextToken() != JsonToken.START_OBJECT) return null;
+            if (!seekField(p, "content")) return null;
+            JsonToken value = p.nextToken();
+            return value == JsonToken.VALUE_STRING ? p.getText() : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // Advances within the current object to the named field, skipping other values whole
+    private static boolean seekField(JsonParser p, String name) throws IOException {
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            if (name.equals(p.currentName())) {
+                return true;
+            }
+            p.nextToken();
+            p.skipChildren();
+        }
+        return false;
+    }
+
+    /**
+     * Decodes model output into an AIDiagnosis: the outermost {...} is parsed strictly first, then
+     * leniently. Returns null if neither works.
+     */
+    public static AIDiagnosis decodeDiagnosis(String text) {
+        if (text == null) return null;
+        int start = text.indexOf('{');
+        int end = text.lastIndexOf('}');
+        if (start < 0 || end <= start) return null;
+
+        String json = text.substring(start, end + 1);
+        try {
+            return DIAGNOSIS_READER.readValue(json);
+        } catch (IOException ignored) {
+        }
+        try {
+            return LENIENT_DIAGNOSIS_READER.readValue(json);
+        } catch (IOException ignored) {
+        }
+        return null;
+    }
+
+    /**
+     * Last resort for truncated or broken output: keeps the possibleConditions entries that did
+     * close. Returns null if there are none.
+     */
+    public static AIDiagnosis salvageDiagnosis(String text) {
+        if (text == null) return null;
+        List<Condition> conditions = new DiagnosisStreamParser().feed(text);
+        if (conditions.isEmpty()) return null;
+        AIDiagnosis partial = new AIDiagnosis();
+        partial.setPossibleConditions(conditions);
+        partial.setRecommendedTests(new ArrayList<>());
+        return partial;
+    }
+
+    static Condition decodeCondition(String json) throws IOException {
+        return CONDITION_READER.readValue(json);
+    }
+
+    /** The outermost JSON array or object in the text, without markdown fences or other wrapping. */
+    public static String unwrap(String text) {
+        if (text == null) return "";
+        int obj = text.indexOf('{');
+        int arr = text.indexOf('[');
+        int start = arr >= 0 && (obj < 0 || arr < obj) ? arr : obj;
+        if (start < 0) return text.trim();
+        int end = text.lastIndexOf(text.charAt(start) == '[' ? ']' : '}');
+        return end > start ? text.substring(start, end + 1) : text.substring(start).trim();
+    }
+}
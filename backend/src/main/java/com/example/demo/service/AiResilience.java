@@ -0,0 +1,319 @@
+package com.example.demo.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.publisher.Sinks;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Failure isolation for calls to the AI provider:
+ * - bulkhead: at most maxConcurrent calls in flight, up to maxQueued more wait for a slot, the rest fail fast
+ * - timeout per attempt, and jittered exponential retry on 429/5xx/timeouts/connect errors
+ * - optional hedging: a second attempt is raced against the first once it runs past the observed p95,
+ *   if a bulkhead slot is free for it; when both fail, the first attempt's error is what's reported
+ * - circuit breaker: after failureThreshold consecutive failures, calls fail fast for openMillis,
+ *   then a single trial call decides whether to close again
+ */
+@Component
+public class AiResilience {
+
+    private enum BreakerState { CLOSED, OPEN, HALF_OPEN }
+
+    private enum Admission { REJECTED, ALLOWED, TRIAL }
+
+    private final int maxConcurrent;
+    private final int maxQueued;
+    private final Duration attemptTimeout;
+    private final int maxRetries;
+    private final Duration retryBackoff;
+    private final boolean hedgeEnabled;
+    private final int failureThreshold;
+    private final long openMillis;
+
+    // bulkhead
+    private final Object lock = new Object();
+    private int active;
+    private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+
+    // circuit breaker
+    private BreakerState state = BreakerState.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    // latency window for the hedge threshold
+    private final long[] latencies = new long[256];
+    private final AtomicInteger latencyCount = new AtomicInteger();
+
+    public AiResilience(MeterRegistry registry,
+                        @Value("${ai.resilience.max-concurrent:8}") int maxConcurrent,
+                        @Value("${ai.resilience.max-queued:32}") int maxQueued,
+                        @Value("${ai.resilience.attempt-timeout-ms:60000}") long attemptTimeoutMs,
+                        @Value("${ai.resilience.max-retries:2}") int maxRetries,
+                        @Value("${ai.resilience.retry-backoff-ms:500}") long retryBackoffMs,
+                        @Value("${ai.resilience.hedge-enabled:false}") boolean hedgeEnabled,
+                        @Value("${ai.resilience.breaker-failure-threshold:5}") int failureThreshold,
+                        @Value("${ai.resilience.breaker-open-ms:30000}") long openMillis) {
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = maxQueued;
+        this.attemptTimeout = Duration.ofMillis(attemptTimeoutMs);
+        this.maxRetries = maxRetries;
+        this.retryBackoff = Duration.ofMillis(retryBackoffMs);
+        this.hedgeEnabled = hedgeEnabled;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+
+        Gauge.builder("ai.bulkhead.active", this, r -> r.snapshot()[0]).register(registry);
+        Gauge.builder("ai.bulkhead.queued", this, r -> r.snapshot()[1]).register(registry);
+        Gauge.builder("ai.breaker.open", this, r -> r.isOpen() ? 1 : 0).register(registry);
+    }
+
+    public <T> Mono<T> protect(Supplier<Mono<T>> call) {
+        return Mono.defer(() -> {
+            Admission admission = admit();
+            if (admission == Admission.REJECTED) {
+                return Mono.error(new AiUnavailableException("AI provider is unavailable (circuit open), try again later"));
+            }
+            boolean trial = admission == Admission.TRIAL;
+            long start = System.nanoTime();
+            return acquire()
+                    .flatMap(permit -> withRetries(call)
+                            .doFinally(signal -> permit.release()))
+                    .doOnSuccess(v -> {
+                        recordLatency(System.nanoTime() - start);
+                        onSuccess();
+                    })
+                    .doOnError(e -> {
+                        if (!(e instanceof AiUnavailableException)) {
+                            onFailure();
+                        } else if (trial) {
+                            clearTrial(); // rejected by the bulkhead, says nothing about the provider
+                        }
+                    })
+                    .doOnCancel(() -> {
+                        if (trial) clearTrial();
+                    });
+        });
+    }
+
+    private <T> Mono<T> withRetries(Supplier<Mono<T>> call) {
+        return Mono.defer(() -> attempt(call))
+                .retryWhen(Retry.backoff(maxRetries, retryBackoff)
+                        .jitter(0.5)
+                        .filter(AiResilience::isRetryable)
+                        .onRetryExhaustedThrow((spec, signal) -> signal.failure()));
+    }
+
+    private <T> Mono<T> attempt(Supplier<Mono<T>> call) {
+        Mono<T> primary = call.get().timeout(attemptTimeout);
+        long p95 = hedgeEnabled ? p95Millis() : -1;
+        if (p95 <= 0) {
+            return primary;
+        }
+        // a primary that fails before the hedge is due fails the attempt without starting the hedge
+        Sinks.Empty<Void> primaryFailed = Sinks.empty();
+        Mono<T> hedge = Mono.delay(Duration.ofMillis(p95))
+                .takeUntilOther(primaryFailed.asMono())
+                .flatMap(tick -> hedgeAttempt(call));
+        return Mono.firstWithValue(primary.doOnError(e -> primaryFailed.tryEmitEmpty()), hedge)
+                .onErrorMap(NoSuchElementException.class, AiResilience::firstFailure);
+    }
+
+    // The hedge takes its own bulkhead slot, and is skipped when none is free rather than queued
+    private <T> Mono<T> hedgeAttempt(Supplier<Mono<T>> call) {
+        return Mono.defer(() -> {
+            Permit permit = tryAcquire();
+            if (permit == null) {
+                return Mono.empty();
+            }
+            return call.get().timeout(attemptTimeout).doFinally(signal -> permit.release());
+        });
+    }
+
+    // firstWithValue reports "no value" caused by a composite of each attempt's error, primary first
+    private static Throwable firstFailure(NoSuchElementException e) {
+        return e.getCause() == null ? e : Exceptions.unwrapMultiple(e.getCause()).get(0);
+    }
+
+    static boolean isRetryable(Throwable e) {
+        if (e instanceof WebClientResponseException w) {
+            int status = w.getStatusCode().value();
+            return status == 429 || status >= 500;
+        }
+        return e instanceof TimeoutException || e instanceof WebClientRequestException;
+    }
+
+    // ---- bulkhead ----
+
+    private Permit tryAcquire() {
+        synchronized (lock) {
+            if (active >= maxConcurrent) {
+                return null;
+            }
+            active++;
+        }
+        return new Permit();
+    }
+
+    private Mono<Permit> acquire() {
+        return Mono.create(sink -> {
+            Waiter waiter = null;
+            boolean granted = false;
+            synchronized (lock) {
+                if (active < maxConcurrent) {
+                    active++;
+                    granted = true;
+                } else if (waiters.size() < maxQueued) {
+                    waiter = new Waiter(sink);
+                    waiters.add(waiter);
+                }
+            }
+            if (granted) {
+                sink.success(new Permit());
+                return;
+            }
+            if (waiter == null) {
+                sink.error(new AiUnavailableException("AI provider is busy, try again shortly"));
+                return;
+            }
+            Waiter queued = waiter;
+            sink.onCancel(() -> {
+                if (queued.done.compareAndSet(false, true)) {
+                    synchronized (lock) {
+                        waiters.remove(queued);
+                    }
+                } else if (queued.permit != null) {
+                    // a permit was handed over while we were cancelling
+                    queued.permit.release();
+                }
+            });
+        });
+    }
+
+    private void releaseSlot() {
+        while (true) {
+            Waiter next;
+            synchronized (lock) {
+                next = waiters.poll();
+                if (next == null) {
+                    active--;
+                    return;
+                }
+            }
+            // hand the slot straight to the next waiter, unless it cancelled meanwhile
+            Permit permit = new Permit();
+            next.permit = permit;
+            if (next.done.compareAndSet(false, true)) {
+                next.sink.success(permit);
+                return;
+            }
+        }
+    }
+
+    private final class Permit {
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        void release() {
+            if (released.compareAndSet(false, true)) {
+                releaseSlot();
+            }
+        }
+    }
+
+    private static final class Waiter {
+        final MonoSink<Permit> sink;
+        final AtomicBoolean done = new AtomicBoolean();
+        volatile Permit permit;
+
+        Waiter(MonoSink<Permit> sink) {
+            this.sink = sink;
+        }
+    }
+
+    private int[] snapshot() {
+        synchronized (lock) {
+            return new int[]{active, waiters.size()};
+        }
+    }
+
+    // ---- circuit breaker ----
+
+    // Only the call admitted as the half-open trial may clear the trial flag when it gives up
+    private Admission admit() {
+        synchronized (lock) {
+            if (state == BreakerState.OPEN && System.currentTimeMillis() - openedAt >= openMillis) {
+                state = BreakerState.HALF_OPEN;
+            }
+            if (state == BreakerState.HALF_OPEN) {
+                if (trialInFlight) return Admission.REJECTED;
+                trialInFlight = true;
+                return Admission.TRIAL;
+            }
+            return state == BreakerState.CLOSED ? Admission.ALLOWED : Admission.REJECTED;
+        }
+    }
+
+    private void onSuccess() {
+        synchronized (lock) {
+            consecutiveFailures = 0;
+            state = BreakerState.CLOSED;
+            trialInFlight = false;
+        }
+    }
+
+    private void onFailure() {
+        synchronized (lock) {
+            consecutiveFailures++;
+            if (state == BreakerState.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+                state = BreakerState.OPEN;
+                openedAt = System.currentTimeMillis();
+            }
+            trialInFlight = false;
+        }
+    }
+
+    private void clearTrial() {
+        synchronized (lock) {
+            trialInFlight = false;
+        }
+    }
+
+    public boolean isOpen() {
+        synchronized (lock) {
+            return state == BreakerState.OPEN;
+        }
+    }
+
+    // ---- latency ----
+
+    private void recordLatency(long nanos) {
+        int i = latencyCount.getAndIncrement();
+        latencies[Math.floorMod(i, latencies.length)] = nanos / 1_000_000;
+    }
+
+    long p95Millis() {
+        int n = Math.min(latencyCount.get(), latencies.length);
+        if (n < 20) {
+            return -1; // not enough samples to hedge on
+        }
+        long[] copy = Arrays.copyOf(latencies, n);
+        Arrays.sort(copy);
+        return copy[(int) Math.ceil(n * 0.95) - 1];
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.demo.service;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Model endpoints the router can send AI requests to, and how it scores them.
+ * An endpoint without url or api-key uses openrouter.api.url / openrouter.api.key;
+ * with no endpoints configured, the single default model on OpenRouter is used.
+ */
+@Data
+@ConfigurationProperties(prefix = "ai.routing")
+public class AiRoutingProperties {
+
+    private List<Endpoint> endpoints = new ArrayList<>();
+
+    // weight of the newest sample in the rolling latency and error-rate averages
+    private double alpha = 0.2;
+
+    // share of requests sent to a random healthy endpoint, so stats for the others stay fresh
+    private double exploreRatio = 0.05;
+
+    // an endpoint whose rolling error rate goes above this is skipped for cooldownMs
+    private double maxErrorRate = 0.5;
+    private long cooldownMs = 30000;
+
+    // latency assumed for an endpoint before its first sample
+    private long initialLatencyMs = 2000;
+
+    // score penalty per call already in flight on an endpoint, spreads bursts across endpoints
+    private double loadPenalty = 0.1;
+
+    @Data
+    public static class Endpoint {
+        private String name;
+        private String url;
+        private String model;
+        private String apiKey;
+    }
+}
@@ -1,87 +1,228 @@
 package com.example.demo.service;
 
+import com.example.demo.cache.SingleFlight;
 import com.example.demo.model.AIDiagnosis;
 import com.example.demo.model.AiRequest;
 import com.example.demo.model.AiResponse;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.example.demo.model.Condition;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
 
 @Service
 public class AiService {
 
-    @Value("${openrouter.api.key}")
-    private String apiKey;
+    @Autowired
+    private DiagnosisCache diagnosisCache;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final SingleFlight<AiResponse> singleFlight = new SingleFlight<>();
 
 
-    private final String MODEL = "deepseek/deepseek-r1-0528-qwen3-8b:free";
-    private final String API_URL = "https://openrouter.ai/api/v1/chat/completions";
     private final String REFERER = "https://your-site-url.com"; // Change to your domain
     private final String TITLE = "DocNet";
 
-    private final WebClient webClient = WebClient.builder().build();
+    @Autowired
+    private WebClient webClient;
+
+    @Autowired
+    private AiResilience resilience;
+
+    @Autowired
+    private ModelRouter router;
+
+    @Autowired
+    private TriageEngine triageEngine;
+
+    // Past this, /aiDiag answers from the local triage table and lets the LLM call finish in the background
+    @Value("${ai.triage.latency-budget-ms:20000}")
+    private long latencyBudgetMs;
+
+    public static final String SOURCE_HEADER = "X-Diagnosis-Source";
 
+    private static final ParameterizedTypeReference<ServerSentEvent<String>> SSE_STRING =
+            new ParameterizedTypeReference<>() {};
 
-    public AiResponse getReply(AiRequest request) {
+
+    @PostConstruct
+    void registerMetrics() {
+        FunctionCounter.builder("ai.singleflight.leaders", singleFlight, SingleFlight::getLeaders).register(meterRegistry);
+        FunctionCounter.builder("ai.singleflight.collapsed", singleFlight, SingleFlight::getCollapsed).register(meterRegistry);
+        Gauge.builder("ai.singleflight.in-flight", singleFlight, SingleFlight::inFlightCount).register(meterRegistry);
+    }
+
+    // Non-blocking: the returned Mono completes on the WebClient event loop, no servlet thread waits on it.
+    // Identical prompts already in flight share one upstream request. Each attempt (including retries
+    // and hedges) is routed on its own, so a failing or slow model is left for the next best one.
+    public Mono<AiResponse> getReply(AiRequest request) {
         String prompt = request.getPrompt();
+        return singleFlight.execute(prompt,
+                () -> resilience.protect(() -> callUpstream(router.select(), prompt)));
+    }
 
-        String requestBody = """
-                {
-                  "model": "%s",
-                  "messages": [
-                    {
-                      "role": "user",
-                      "content": "%s"
-                    }
-                  ]
-                }
-                """.formatted(MODEL, prompt.replace("\"", "\\\""));
+    private Mono<AiResponse> callUpstream(ModelRouter.Route route, String prompt) {
+        byte[] requestBody = AiJsonCodec.chatRequest(route.model(), prompt, false);
 
-        return webClient.post()
-                .uri(API_URL)
+        return router.observe(route, webClient.post()
+                .uri(route.url())
                 .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
-                .header(HttpHeaders.AUTHORIZATION, "Bearer " + apiKey)
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + route.apiKey())
                 .header("HTTP-Referer", REFERER)
                 .header("X-Title", TITLE)
                 .bodyValue(requestBody)
                 .retrieve()
-                .bodyToMono(String.class)
+                .bodyToMono(String.class))
                 .map(json -> {
-                    String content = extractContentFromJson(json);
-                    return new AiResponse(content);
-                }).block();
+                    String content = AiJsonCodec.messageContent(json);
+                    return new AiResponse(content != null ? content : "No content found in the AI response.");
+                });
+    }
+
+    /**
+     * Streams the completion as it is generated. Emits the text deltas from the provider's
+     * SSE stream (choices[0].delta.content) and completes on [DONE].
+     */
+    public Flux<String> streamReply(String prompt) {
+        ModelRouter.Route route = router.select();
+        return router.observe(route, webClient.post()
+                .uri(route.url())
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .header(HttpHeaders.ACCEPT, MediaType.TEXT_EVENT_STREAM_VALUE)
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + route.apiKey())
+                .header("HTTP-Referer", REFERER)
+                .header("X-Title", TITLE)
+                .bodyValue(AiJsonCodec.chatRequest(route.model(), prompt, true))
+                .retrieve()
+                .bodyToFlux(SSE_STRING)
+                .mapNotNull(ServerSentEvent::data), data -> "[DONE]".equals(data.trim()))
+                .mapNotNull(AiJsonCodec::deltaContent)
+                .filter(delta -> !delta.isEmpty());
     }
 
-    private String extractContentFromJson(String json) {
-        try {
-            ObjectMapper mapper = new ObjectMapper();
-            JsonNode root = mapper.readTree(json);
-            JsonNode choices = root.get("choices");
+    public Mono<ResponseEntity<AIDiagnosis>> diagnose(String symptoms) {
+        return Mono.defer(() -> {
+            String cacheKey = DiagnosisCache.normalize(symptoms);
+            AIDiagnosis cached = diagnosisCache.get(cacheKey);
+            if (cached != null) {
+                return Mono.just(withSource(cached, "cache"));
+            }
+
+            AiRequest request = new AiRequest();
+            String prompt = diagnosisPrompt(symptoms);
 
-            if (choices != null && choices.isArray() && choices.size() > 0) {
-                JsonNode message = choices.get(0).get("message");
-                if (message != null && message.has("content")) {
-                    return message.get("content").asText();
+            request.setPrompt(prompt);
+            Mono<AIDiagnosis> fromAi = getReply(request).mapNotNull(response -> {
+                AIDiagnosis diagnosis = AiJsonCodec.decodeDiagnosis(response.getReply());
+                if (diagnosis != null) {
+                    diagnosisCache.put(cacheKey, diagnosis);
+                    return diagnosis;
                 }
-            }
-            return "No content found in the AI response.";
-        } catch (Exception e) {
-            return "Failed to parse AI response.";
+                // truncated or broken output: return the complete conditions, but don't cache them
+                return AiJsonCodec.salvageDiagnosis(response.getReply());
+            }).cache();
+            // keep the LLM call going past the latency budget, so its answer still lands in the cache
+            fromAi.subscribe(d -> {}, e -> {});
+
+            return fromAi.map(d -> withSource(d, "ai"))
+                    .timeout(Duration.ofMillis(latencyBudgetMs))
+                    .switchIfEmpty(Mono.defer(() -> fallback(symptoms, "unparseable", null)))
+                    .onErrorResume(e -> {
+                        if (e instanceof TimeoutException) {
+                            // nothing local to offer: keep waiting for the LLM after all
+                            return fallback(symptoms, "timeout", null)
+                                    .switchIfEmpty(fromAi.map(d -> withSource(d, "ai")))
+                                    .switchIfEmpty(Mono.defer(() -> fallback(symptoms, "unparseable", null)));
+                        }
+                        return fallback(symptoms, "error", e);
+                    });
+        });
+    }
+
+    // Local triage answer, or empty/the original error when the knowledge table has nothing for these symptoms
+    private Mono<ResponseEntity<AIDiagnosis>> fallback(String symptoms, String reason, Throwable error) {
+        AIDiagnosis local = triageEngine.triage(symptoms);
+        if (local.getPossibleConditions().isEmpty()) {
+            if (error != null) return Mono.error(error);
+            if (reason.equals("timeout")) return Mono.empty();
+            return Mono.just(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).<AIDiagnosis>body(null));
         }
+        meterRegistry.counter("ai.triage.fallbacks", "reason", reason).increment();
+        return Mono.just(withSource(local, "triage"));
     }
 
-    public ResponseEntity<AIDiagnosis> diagnose(String symptoms) {
-        AiRequest request = new AiRequest();
-        String prompt = """
+    private static ResponseEntity<AIDiagnosis> withSource(AIDiagnosis diagnosis, String source) {
+        return ResponseEntity.ok().header(SOURCE_HEADER, source).body(diagnosis);
+    }
+
+    /** Instant local answer from the triage table, without calling the LLM. */
+    public AIDiagnosis triage(String symptoms) {
+        return triageEngine.triage(symptoms);
+    }
+
+    /**
+     * Streaming variant of diagnose for SSE clients. Starts with a "preliminary" event holding the
+     * local triage answer (when it has one), then emits "token" events with the raw text as it
+     * arrives, a "condition" event as soon as each possibleConditions entry is complete, and a final
+     * "diagnosis" event with the full parsed result (or "error" if the output wasn't valid JSON).
+     */
+    public Flux<ServerSentEvent<Object>> streamDiagnosis(String symptoms) {
+        return Flux.defer(() -> {
+            DiagnosisStreamParser parser = new DiagnosisStreamParser();
+            Flux<ServerSentEvent<Object>> live = streamReply(diagnosisPrompt(symptoms))
+                    .concatMapIterable(token -> {
+                        List<ServerSentEvent<Object>> events = new ArrayList<>();
+                        events.add(event("token", token));
+                        for (Condition condition : parser.feed(token)) {
+                            events.add(event("condition", condition));
+                        }
+                        return events;
+                    });
+            Mono<ServerSentEvent<Object>> last = Mono.fromSupplier(() -> {
+                AIDiagnosis diagnosis = parser.finish();
+                return diagnosis != null
+                        ? event("diagnosis", diagnosis)
+                        : event("error", "Failed to parse AI response.");
+            });
+            AIDiagnosis preliminary = triageEngine.triage(symptoms);
+            Flux<ServerSentEvent<Object>> first = preliminary.getPossibleConditions().isEmpty()
+                    ? Flux.empty()
+                    : Flux.just(event("preliminary", preliminary));
+            return first.concatWith(live).concatWith(last)
+                    .onErrorResume(e -> {
+                        // the detail can carry provider responses or URLs; the browser only gets a fixed message
+                        System.out.println("Diagnosis stream failed: " + e);
+                        return Flux.just(event("error", "AI provider error, please try again."));
+                    });
+        });
+    }
+
+    private static ServerSentEvent<Object> event(String name, Object data) {
+        return ServerSentEvent.builder(data).event(name).build();
+    }
+
+    private String diagnosisPrompt(String symptoms) {
+        return """
 You are a medical diagnostic assistant AI. Given a list of symptoms described by a user, respond **only** with a **raw JSON object** in the exact format shown below.
 
 Strictly follow these rules:
@@ -109,25 +250,9 @@ The user is experiencing: %s
 
 Repeat: Output only valid JSON. No text, no formatting, no explanations. Just the JSON.
 """.formatted(symptoms);
-
-        request.setPrompt(prompt);
-        AiResponse response = getReply(request);
-        String cleaned = response.getReply().replaceAll("(?s)```json|```", "").trim();
-
-        response.setReply(cleaned);
-        System.out.println(response.getReply());
-        try {
-            ObjectMapper mapper = new ObjectMapper();
-            AIDiagnosis diagnosis = mapper.readValue(response.getReply(), AIDiagnosis.class);
-            return ResponseEntity.ok(diagnosis);
-
-        } catch (JsonProcessingException e) {
-            // Return null or an empty AIDiagnosis object in case of error
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
-        }
     }
 
-    public String getFacts() {
+    public Mono<String> getFacts() {
         String prompt = """
 You are a healthcare assistant. Return a raw JSON array of exactly 5 health-related facts that would be useful for doctors, patients, or general medical knowledge.
 
@@ -155,12 +280,12 @@ Now generate 5 facts only in this format.
         AiRequest request = new AiRequest();
         request.setPrompt(prompt);
 
-        AiResponse response = getReply(request);
-
-        // Remove potential backticks if present
-        String cleaned = response.getReply().replaceAll("(?s)```json|```", "").trim();
-        System.out.println(cleaned);
-        return cleaned;
+        return getReply(request).map(response -> {
+            // Remove potential backticks or chatter around the array
+            String cleaned = AiJsonCodec.unwrap(response.getReply());
+            System.out.println(cleaned);
+            return cleaned;
+        });
     }
 
 }
@@ -0,0 +1,12 @@
+package com.example.demo.service;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/** The AI provider can't take the call right now: circuit open or bulkhead full. Maps to 503. */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class AiUnavailableException extends RuntimeException {
+    public AiUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,175 @@
+package com.example.demo.service;
+
+import com.example.demo.model.CaseFeedPage;
+import com.example.demo.model.CasePost;
+import com.example.demo.model.CasePostSummary;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * The first page of the case feed, held in memory with its JSON already serialized.
+ *
+ * Dashboards poll the first page far more often than it changes, so it is loaded once and then
+ * patched in place when a post is created, liked or commented on. Every change bumps a version
+ * that is served as a strong ETag; a poll carrying the current ETag is answered 304 from memory.
+ * Anything that cannot be patched (posts deleted by cleanup) drops the page and the next request
+ * reloads it. Patching is per process, which is fine while the API runs as a single instance.
+ */
+@Service
+public class CaseFeedCache {
+
+    public record Snapshot(long version, String etag, CaseFeedPage page, byte[] json) {
+    }
+
+    private final CaseFeedService feedService;
+    private final ObjectMapper mapper;
+    private final int pageSize;
+    // part of every ETag, so tags handed out before a restart never match a new version
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+
+    private volatile Snapshot snapshot;
+    private long version;
+    // bumped by every change, so a reload that raced with one is not kept
+    private long changes;
+
+    private final Counter hits;
+    private final Counter notModified;
+    private final Counter misses;
+    private final Counter updates;
+    private final Counter invalidations;
+
+    public CaseFeedCache(CaseFeedService feedService, ObjectMapper mapper, MeterRegistry registry,
+                         @Value("${cases.feed.cached-page-size:20}") int pageSize) {
+        this.feedService = feedService;
+        this.mapper = mapper;
+        this.pageSize = pageSize;
+
+        this.hits = Counter.builder("cases.feed.cache.requests").tag("result", "hit").register(registry);
+        this.notModified = Counter.builder("cases.feed.cache.not-modified").register(registry);
+        this.misses = Counter.builder("cases.feed.cache.requests").tag("result", "miss").register(registry);
+        this.updates = Counter.builder("cases.feed.cache.updates").register(registry);
+        this.invalidations = Counter.builder("cases.feed.cache.invalidations").register(registry);
+        Gauge.builder("cases.feed.cache.hit.ratio", this, CaseFeedCache::hitRatio).register(registry);
+        Gauge.builder("cases.feed.cache.version", this, c -> c.version).register(registry);
+    }
+
+    /** True if a request for this page size is served from the cached first page. */
+    public boolean covers(int size) {
+        return size == pageSize;
+    }
+
+    /** The current first page, loading it if nothing is cached. */
+    public Snapshot firstPage() {
+        Snapshot current = snapshot;
+        if (current != null) {
+            hits.increment();
+            return current;
+        }
+
+        misses.increment();
+        long seen;
+        synchronized (this) {
+            seen = changes;
+        }
+        CaseFeedPage page = feedService.page(null, pageSize);
+        synchronized (this) {
+            if (snapshot != null) return snapshot;
+            Snapshot loaded = build(page);
+            if (changes == seen) snapshot = loaded;
+            return loaded;
+        }
+    }
+
+    /** True if the client already holds this version (If-None-Match may list several tags, or be *). */
+    public boolean notModified(Snapshot first, String ifNoneMatch) {
+        if (ifNoneMatch == null) return false;
+        for (String tag : ifNoneMatch.split(",")) {
+            String t = tag.trim();
+            if (t.equals("*") || t.equals(first.etag)) {
+                notModified.increment();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void postCreated(CasePost post) {
+        patch(items -> {
+            List<CasePostSummary> next = new ArrayList<>(items.size() + 1);
+            next.add(CasePostSummary.of(post));
+            next.addAll(items);
+            return next;
+        });
+    }
+
+    public void likesChanged(Long postId, long likes) {
+        patch(items -> replace(items, postId, s -> s.withLikes((int) likes)));
+    }
+
+    public void commentAdded(Long postId) {
+        patch(items -> replace(items, postId, s -> s.withCommentCount(s.getCommentCount() + 1)));
+    }
+
+    public synchronized void invalidate() {
+        changes++;
+        if (snapshot != null) {
+            snapshot = null;
+            invalidations.increment();
+        }
+    }
+
+    // items in, items out; returning the same list means the page did not change
+    private synchronized void patch(UnaryOperator<List<CasePostSummary>> change) {
+        changes++;
+        Snapshot current = snapshot;
+        if (current == null) return;
+        List<CasePostSummary> items = change.apply(current.page.getItems());
+        if (items == current.page.getItems()) return;
+
+        String nextCursor = current.page.getNextCursor();
+        if (items.size() > pageSize) {
+            items = items.subList(0, pageSize);
+            CasePostSummary last = items.get(pageSize - 1);
+            nextCursor = CaseFeedService.encode(last.getCreatedAt(), last.getId());
+        }
+        snapshot = build(new CaseFeedPage(List.copyOf(items), nextCursor));
+        updates.increment();
+    }
+
+    private static List<CasePostSummary> replace(List<CasePostSummary> items, Long postId,
+                                                 UnaryOperator<CasePostSummary> change) {
+        for (int i = 0; i < items.size(); i++) {
+            CasePostSummary item = items.get(i);
+            if (!item.getId().equals(postId)) continue;
+            CasePostSummary changed = change.apply(item);
+            if (changed.equals(item)) return items;
+            List<CasePostSummary> next = new ArrayList<>(items);
+            next.set(i, changed);
+            return next;
+        }
+        return items;
+    }
+
+    private Snapshot build(CaseFeedPage page) {
+        try {
+            version++;
+            return new Snapshot(version, "\"feed-" + epoch + "-" + version + "\"", page, mapper.writeValueAsBytes(page));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize the case feed", e);
+        }
+    }
+
+    private double hitRatio() {
+        double total = hits.count() + misses.count();
+        return total == 0 ? 0 : hits.count() / total;
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.demo.service;
+
+import com.example.demo.model.CaseFeedPage;
+import com.example.demo.model.CasePostSummary;
+import com.example.demo.repository.CasePostRepo;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Cursor-paginated case feed, newest first. A cursor is the (createdAt, id) of the last post on
+ * the previous page, base64url-encoded so clients treat it as opaque.
+ */
+@Service
+public class CaseFeedService {
+
+    @Autowired
+    private CasePostRepo postRepo;
+
+    @Autowired
+    private LikeService likeService;
+
+    @Value("${cases.feed.max-page-size:50}")
+    private int maxPageSize;
+
+    public CaseFeedPage page(String cursor, int size) {
+        int limit = Math.max(1, Math.min(size, maxPageSize));
+        // one extra row tells whether there is a next page, without a count query
+        PageRequest window = PageRequest.of(0, limit + 1);
+
+        List<CasePostSummary> rows;
+        if (cursor == null || cursor.isBlank()) {
+            rows = postRepo.findFeed(window);
+        } else {
+            Position after = decode(cursor);
+            rows = postRepo.findFeedAfter(after.createdAt, after.id, window);
+        }
+
+        rows = rows.stream().map(this::withLiveLikes).toList();
+        if (rows.size() <= limit) {
+            return new CaseFeedPage(rows, null);
+        }
+        List<CasePostSummary> items = rows.subList(0, limit);
+        CasePostSummary last = items.get(limit - 1);
+        return new CaseFeedPage(List.copyOf(items), encode(last.getCreatedAt(), last.getId()));
+    }
+
+    // the likes column lags the like service by up to one flush interval
+    private CasePostSummary withLiveLikes(CasePostSummary summary) {
+        long likes = likeService.currentLikes(summary.getId(), summary.getLikes());
+        return likes == summary.getLikes() ? summary : summary.withLikes((int) likes);
+    }
+
+    static String encode(LocalDateTime createdAt, Long id) {
+        String raw = createdAt + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static Position decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int sep = raw.lastIndexOf('|');
+            return new Position(LocalDateTime.parse(raw.substring(0, sep)), Long.parseLong(raw.substring(sep + 1)));
+        } catch (IllegalArgumentException | DateTimeParseException | StringIndexOutOfBoundsException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+        }
+    }
+
+    record Position(LocalDateTime createdAt, Long id) {
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.demo.service;
+
+import com.example.demo.storage.UploadStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Deletes old case posts in small chunks instead of one bulk statement.
+ *
+ * Each chunk is the next batch-size posts older than the cutoff in (created_at, id) order, read
+ * through the feed index. One short transaction deletes their liker rows, comments and the posts
+ * themselves; the uploaded files go after it commits, so a rolled back chunk never loses a file
+ * its post still points to. An attachment in the UploadStore loses one reference and is only
+ * deleted when no other post shares it; files from before the store are deleted directly.
+ * Between chunks the run pauses, and it stops once the time budget is used up, leaving the rest
+ * for the next run. Every run reports what it reclaimed.
+ */
+@Service
+public class CasePurgeService {
+
+    public record Report(int chunks, long posts, long comments, long likers, long files, long bytes,
+                         long elapsedMs, boolean complete) {
+    }
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+    private final UploadStore uploadStore;
+    private final Path uploadDir;
+    private final int batchSize;
+    private final long timeBudgetMs;
+    private final long pauseMs;
+
+    private final Timer runTimer;
+    private final Counter postsDeleted;
+    private final Counter commentsDeleted;
+    private final Counter likersDeleted;
+    private final Counter filesDeleted;
+    private final Counter bytesReclaimed;
+
+    public CasePurgeService(JdbcTemplate jdbc, PlatformTransactionManager transactionManager, UploadStore uploadStore,
+                            MeterRegistry registry,
+                            @Value("${cases.uploads.dir:uploads}") String uploadDir,
+                            @Value("${cases.purge.batch-size:500}") int batchSize,
+                            @Value("${cases.purge.time-budget-ms:300000}") long timeBudgetMs,
+                            @Value("${cases.purge.pause-ms:100}") long pauseMs) {
+        this.jdbc = jdbc;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.uploadStore = uploadStore;
+        this.uploadDir = Paths.get(uploadDir).toAbsolutePath().normalize();
+        this.batchSize = batchSize;
+        this.timeBudgetMs = timeBudgetMs;
+        this.pauseMs = pauseMs;
+
+        this.runTimer = Timer.builder("cases.purge.run").register(registry);
+        this.postsDeleted = Counter.builder("cases.purge.rows").tag("table", "case_post").register(registry);
+        this.commentsDeleted = Counter.builder("cases.purge.rows").tag("table", "comment").register(registry);
+        this.likersDeleted = Counter.builder("cases.purge.rows").tag("table", "case_post_liked_user_ids").register(registry);
+        this.filesDeleted = Counter.builder("cases.purge.files").register(registry);
+        this.bytesReclaimed = Counter.builder("cases.purge.bytes").register(registry);
+    }
+
+    /**
+     * Purges posts created before the cutoff, chunk by chunk, until none are left or the time
+     * budget runs out. onChunk gets the ids of each committed chunk.
+     */
+    public Report purgeBefore(LocalDateTime cutoff, Consumer<List<Long>> onChunk) {
+        long start = System.currentTimeMillis();
+        int chunks = 0;
+        long posts = 0, comments = 0, likers = 0, files = 0, bytes = 0;
+        boolean complete = false;
+
+        while (true) {
+            Chunk chunk = tx.execute(status -> deleteChunk(cutoff));
+            if (chunk.ids.isEmpty()) {
+                complete = true;
+                break;
+            }
+            chunks++;
+            posts += chunk.ids.size();
+            comments += chunk.comments;
+            likers += chunk.likers;
+            for (String hash : chunk.fileHashes) {
+                long size = uploadStore.release(hash);
+                if (size > 0) {
+                    files++;
+                    bytes += size;
+                }
+            }
+            for (String fileUrl : chunk.legacyFileUrls) {
+                long size = deleteLegacyUpload(fileUrl);
+                if (size >= 0) {
+                    files++;
+                    bytes += size;
+                }
+            }
+            onChunk.accept(chunk.ids);
+
+            if (chunk.ids.size() < batchSize) {
+                complete = true;
+                break;
+            }
+            if (System.currentTimeMillis() - start >= timeBudgetMs) break;
+            if (!pause()) break;
+        }
+
+        long elapsed = System.currentTimeMillis() - start;
+        runTimer.record(Duration.ofMillis(elapsed));
+        postsDeleted.increment(posts);
+        commentsDeleted.increment(comments);
+        likersDeleted.increment(likers);
+        filesDeleted.increment(files);
+        bytesReclaimed.increment(bytes);
+        return new Report(chunks, posts, comments, likers, files, bytes, elapsed, complete);
+    }
+
+    private Chunk deleteChunk(LocalDateTime cutoff) {
+        List<Long> ids = new ArrayList<>();
+        List<String> fileHashes = new ArrayList<>();
+        List<String> legacyFileUrls = new ArrayList<>();
+        // deleted rows drop out of the index, so the oldest remaining ones are always the next chunk
+        jdbc.query("SELECT id, file_hash, file_url FROM case_post WHERE created_at < ? ORDER BY created_at, id LIMIT ?",
+                rs -> {
+                    ids.add(rs.getLong(1));
+                    String fileHash = rs.getString(2);
+                    String fileUrl = rs.getString(3);
+                    if (fileHash != null) fileHashes.add(fileHash);
+                    else if (fileUrl != null) legacyFileUrls.add(fileUrl);
+                }, cutoff, batchSize);
+        if (ids.isEmpty()) return new Chunk(List.of(), List.of(), List.of(), 0, 0);
+
+        String in = String.join(",", Collections.nCopies(ids.size(), "?"));
+        Object[] args = ids.toArray();
+        int likers = jdbc.update("DELETE FROM case_post_liked_user_ids WHERE case_post_id IN (" + in + ")", args);
+        int comments = jdbc.update("DELETE FROM comment WHERE post_id IN (" + in + ")", args);
+        jdbc.update("DELETE FROM case_post WHERE id IN (" + in + ")", args);
+        return new Chunk(ids, fileHashes, legacyFileUrls, comments, likers);
+    }
+
+    // size of the deleted file, or -1 if there was nothing to delete
+    private long deleteLegacyUpload(String fileUrl) {
+        String name = fileUrl.substring(fileUrl.lastIndexOf('/') + 1);
+        if (name.isEmpty()) return -1;
+        Path path = uploadDir.resolve(name).normalize();
+        if (!path.getParent().equals(uploadDir)) return -1;
+        try {
+            long size = Files.size(path);
+            return Files.deleteIfExists(path) ? size : -1;
+        } catch (IOException e) {
+            // already gone, or unreadable; the post is deleted either way
+            return -1;
+        }
+    }
+
+    private boolean pause() {
+        if (pauseMs <= 0) return true;
+        try {
+            Thread.sleep(pauseMs);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private record Chunk(List<Long> ids, List<String> fileHashes, List<String> legacyFileUrls, int comments, int likers) {
+    }
+}
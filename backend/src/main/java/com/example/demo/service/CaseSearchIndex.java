@@ -0,0 +1,354 @@
+package com.example.demo.service;
+
+import com.example.demo.cache.LongIntHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory inverted index over case posts, ranked with BM25.
+ *
+ * Each indexed post gets a dense doc number; per doc we keep the post id, the token count, the
+ * count rounded to one byte and a specialization code in flat arrays. Each term has a postings
+ * list of doc numbers (ascending, since docs are only appended) with term frequencies as bytes.
+ * Title terms count twice. A query precomputes BM25 per (tf, length byte) for each term, scores
+ * term-at-a-time into a pooled float array indexed by doc, then keeps the top hits in a small
+ * heap, so its cost is the length of the postings lists it touches and nothing else.
+ *
+ * Removal (and replacing a post) only marks the doc deleted. Once enough deletions pile up,
+ * compaction drops them from the postings and renumbers the live docs in order, so the per-doc
+ * arrays shrink back to the live count. Queries share a read lock, changes take the write lock.
+ */
+public class CaseSearchIndex {
+
+    static final double K1 = 1.2;
+    static final double B = 0.75;
+    private static final int TITLE_WEIGHT = 2;
+    private static final int NO_SPECIALIZATION = -1;
+    // term frequencies below this are scored from a per-query table
+    private static final int TABLE_TF = 16;
+    // doc lengths as one byte: exact up to 127, then steps of 16 up to about 2k tokens
+    private static final int[] BUCKET_LENGTHS = new int[256];
+
+    static {
+        for (int b = 0; b < 256; b++) BUCKET_LENGTHS[b] = b < 128 ? b : 128 + (b - 128) * 16;
+    }
+
+    public record Hit(long postId, double score) {
+    }
+
+    private static final class Postings {
+        int[] docs = new int[2];
+        byte[] tfs = new byte[2];
+        int size;
+
+        void add(int doc, int tf) {
+            if (size == docs.length) {
+                int grown = size + (size >> 1) + 1;
+                docs = Arrays.copyOf(docs, grown);
+                tfs = Arrays.copyOf(tfs, grown);
+            }
+            docs[size] = doc;
+            tfs[size] = (byte) Math.min(tf, 255);
+            size++;
+        }
+    }
+
+    // score accumulator, sized to the doc count and left zeroed after each query
+    private static final class Accumulator {
+        float[] scores = new float[0];
+        int[] touched = new int[0];
+    }
+
+    // pooled rather than per thread: one per concurrent query, not one per request thread
+    private final Queue<Accumulator> accumulators = new ConcurrentLinkedQueue<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<String, Postings> terms = new HashMap<>();
+    private final Map<String, Integer> specializationCodes = new HashMap<>();
+    private final LongIntHashMap docByPost = new LongIntHashMap();
+    private final BitSet deleted = new BitSet();
+    private long[] postIds = new long[1024];
+    private int[] lengths = new int[1024];
+    private byte[] norms = new byte[1024];
+    private int[] specializations = new int[1024];
+    private int docs;
+    private int liveDocs;
+    private long totalLength;
+    private int deletedSinceCompaction;
+
+    /** Indexes a post, replacing what was indexed for it before. */
+    public void add(long postId, String title, String description, String symptoms, String specialization) {
+        Map<String, Integer> tf = new HashMap<>();
+        int length = 0;
+        for (String token : DiagnosisCache.tokens(title)) {
+            tf.merge(token, TITLE_WEIGHT, Integer::sum);
+            length += TITLE_WEIGHT;
+        }
+        for (String text : new String[]{description, symptoms, specialization}) {
+            for (String token : DiagnosisCache.tokens(text)) {
+                tf.merge(token, 1, Integer::sum);
+                length++;
+            }
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (removeLocked(postId)) {
+                compactIfNeeded();
+            }
+            int doc = docs++;
+            if (doc == postIds.length) {
+                int grown = doc + (doc >> 1);
+                postIds = Arrays.copyOf(postIds, grown);
+                lengths = Arrays.copyOf(lengths, grown);
+                norms = Arrays.copyOf(norms, grown);
+                specializations = Arrays.copyOf(specializations, grown);
+            }
+            postIds[doc] = postId;
+            lengths[doc] = length;
+            norms[doc] = (byte) (length < 128 ? length : Math.min(255, 128 + (length - 128) / 16));
+            specializations[doc] = specialization == null || specialization.isBlank()
+                    ? NO_SPECIALIZATION
+                    : specializationCodes.computeIfAbsent(normalize(specialization), k -> specializationCodes.size());
+            for (Map.Entry<String, Integer> e : tf.entrySet()) {
+                terms.computeIfAbsent(e.getKey(), k -> new Postings()).add(doc, e.getValue());
+            }
+            docByPost.put(postId, doc);
+            liveDocs++;
+            totalLength += length;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(long postId) {
+        lock.writeLock().lock();
+        try {
+            if (removeLocked(postId)) {
+                compactIfNeeded();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean removeLocked(long postId) {
+        int doc = docByPost.remove(postId, -1);
+        if (doc < 0) return false;
+        deleted.set(doc);
+        liveDocs--;
+        totalLength -= lengths[doc];
+        deletedSinceCompaction++;
+        return true;
+    }
+
+    private void compactIfNeeded() {
+        if (deletedSinceCompaction > Math.max(10_000, liveDocs / 4)) {
+            compact();
+        }
+    }
+
+    // drops deleted docs from every postings list and renumbers the rest; the new numbers keep
+    // the old order, so postings stay ascending
+    private void compact() {
+        int[] renumbered = new int[docs];
+        int capacity = Math.max(1024, liveDocs + (liveDocs >> 1));
+        long[] keptPostIds = new long[capacity];
+        int[] keptLengths = new int[capacity];
+        byte[] keptNorms = new byte[capacity];
+        int[] keptSpecializations = new int[capacity];
+        int live = 0;
+        for (int doc = 0; doc < docs; doc++) {
+            if (deleted.get(doc)) {
+                renumbered[doc] = -1;
+                continue;
+            }
+            renumbered[doc] = live;
+            keptPostIds[live] = postIds[doc];
+            keptLengths[live] = lengths[doc];
+            keptNorms[live] = norms[doc];
+            keptSpecializations[live] = specializations[doc];
+            docByPost.put(postIds[doc], live);
+            live++;
+        }
+        postIds = keptPostIds;
+        lengths = keptLengths;
+        norms = keptNorms;
+        specializations = keptSpecializations;
+        docs = live;
+        deleted.clear();
+        // pooled accumulators are sized to the old doc numbers; no query holds one under the write lock
+        accumulators.clear();
+
+        Iterator<Postings> it = terms.values().iterator();
+        while (it.hasNext()) {
+            Postings p = it.next();
+            int kept = 0;
+            for (int i = 0; i < p.size; i++) {
+                int doc = renumbered[p.docs[i]];
+                if (doc < 0) continue;
+                p.docs[kept] = doc;
+                p.tfs[kept] = p.tfs[i];
+                kept++;
+            }
+            if (kept == 0) {
+                it.remove();
+            } else if (kept < p.size) {
+                p.docs = Arrays.copyOf(p.docs, kept);
+                p.tfs = Arrays.copyOf(p.tfs, kept);
+                p.size = kept;
+            }
+        }
+        deletedSinceCompaction = 0;
+    }
+
+    /**
+     * Best matches for the query, highest score first. With specializations given, only posts in
+     * one of them are considered.
+     */
+    public List<Hit> search(String query, Collection<String> specializations, int limit) {
+        Set<String> queryTerms = new LinkedHashSet<>(DiagnosisCache.tokens(query));
+        if (queryTerms.isEmpty() || limit <= 0) return List.of();
+
+        lock.readLock().lock();
+        try {
+            boolean[] allowed = null;
+            if (specializations != null && !specializations.isEmpty()) {
+                allowed = new boolean[specializationCodes.size()];
+                boolean any = false;
+                for (String s : specializations) {
+                    Integer code = specializationCodes.get(normalize(s));
+                    if (code != null) {
+                        allowed[code] = true;
+                        any = true;
+                    }
+                }
+                if (!any) return List.of();
+            }
+            if (liveDocs == 0) return List.of();
+
+            Accumulator acc = accumulators.poll();
+            if (acc == null) acc = new Accumulator();
+            if (acc.scores.length < docs) {
+                acc.scores = new float[postIds.length];
+                acc.touched = new int[postIds.length];
+            }
+            float[] scores = acc.scores;
+            int[] touched = acc.touched;
+            int touchedCount = 0;
+
+            double avgLength = (double) totalLength / liveDocs;
+            boolean staleDocs = deletedSinceCompaction > 0;
+            float[] table = new float[TABLE_TF * 256];
+            for (String term : queryTerms) {
+                Postings p = terms.get(term);
+                if (p == null) continue;
+                // postings may still hold deleted docs, so df can exceed liveDocs until compaction
+                int df = Math.min(p.size, liveDocs);
+                double idf = Math.log(1 + (liveDocs - df + 0.5) / (df + 0.5));
+                // BM25 for every (tf, length bucket) pair, so the loop below is a lookup and an add
+                for (int tf = 1; tf < TABLE_TF; tf++) {
+                    for (int bucket = 0; bucket < 256; bucket++) {
+                        table[tf << 8 | bucket] = bm25(idf, tf, BUCKET_LENGTHS[bucket], avgLength);
+                    }
+                }
+                int[] postings = p.docs;
+                byte[] tfs = p.tfs;
+                for (int i = 0, n = p.size; i < n; i++) {
+                    int doc = postings[i];
+                    if (staleDocs && deleted.get(doc)) continue;
+                    if (allowed != null) {
+                        int code = this.specializations[doc];
+                        if (code == NO_SPECIALIZATION || !allowed[code]) continue;
+                    }
+                    int tf = tfs[i] & 0xFF;
+                    float score = tf < TABLE_TF
+                            ? table[tf << 8 | (norms[doc] & 0xFF)]
+                            : bm25(idf, tf, lengths[doc], avgLength);
+                    if (scores[doc] == 0) touched[touchedCount++] = doc;
+                    scores[doc] += score;
+                }
+            }
+
+            // min-heap of the best so far; ties go to the newer post
+            PriorityQueue<Hit> top = new PriorityQueue<>(limit + 1, (a, b) -> a.score != b.score
+                    ? Double.compare(a.score, b.score)
+                    : Long.compare(a.postId, b.postId));
+            float floor = -1;
+            for (int i = 0; i < touchedCount; i++) {
+                int doc = touched[i];
+                float score = scores[doc];
+                scores[doc] = 0;
+                if (score < floor) continue;
+                if (top.size() < limit) {
+                    top.add(new Hit(postIds[doc], score));
+                } else {
+                    Hit worst = top.peek();
+                    if (score > worst.score || postIds[doc] > worst.postId) {
+                        top.poll();
+                        top.add(new Hit(postIds[doc], score));
+                    }
+                }
+                if (top.size() == limit) floor = (float) top.peek().score;
+            }
+
+            accumulators.offer(acc);
+
+            List<Hit> hits = new ArrayList<>(top);
+            hits.sort(top.comparator().reversed());
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static float bm25(double idf, int tf, int length, double avgLength) {
+        double norm = K1 * (1 - B + B * length / avgLength);
+        return (float) (idf * tf * (K1 + 1) / (tf + norm));
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return liveDocs;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // length of the per-doc arrays, which compaction shrinks back towards the live count
+    int docCapacity() {
+        lock.readLock().lock();
+        try {
+            return postIds.length;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int termCount() {
+        lock.readLock().lock();
+        try {
+            return terms.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static String normalize(String specialization) {
+        return specialization.trim().toLowerCase();
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.demo.service;
+
+import com.example.demo.model.CasePost;
+import com.example.demo.model.CasePostSummary;
+import com.example.demo.model.CaseSearchHit;
+import com.example.demo.model.CaseSearchRow;
+import com.example.demo.repository.CasePostRepo;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Full-text search over case posts. Owns the CaseSearchIndex: fills it from a streamed scan of
+ * case_post at startup, keeps it current as posts are created and deleted, and turns index hits
+ * into feed summaries with one query.
+ */
+@Service
+public class CaseSearchService {
+
+    private final CaseSearchIndex index = new CaseSearchIndex();
+    private final CasePostRepo postRepo;
+    private final LikeService likeService;
+    private final int maxResults;
+    private final Timer queryTimer;
+
+    public CaseSearchService(CasePostRepo postRepo, LikeService likeService, MeterRegistry registry,
+                             @Value("${cases.search.max-results:50}") int maxResults) {
+        this.postRepo = postRepo;
+        this.likeService = likeService;
+        this.maxResults = maxResults;
+        this.queryTimer = Timer.builder("cases.search.query").register(registry);
+        Gauge.builder("cases.search.docs", index, CaseSearchIndex::size).register(registry);
+        Gauge.builder("cases.search.terms", index, CaseSearchIndex::termCount).register(registry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void build() {
+        long start = System.currentTimeMillis();
+        int[] count = {0};
+        try (Stream<CaseSearchRow> rows = postRepo.streamSearchRows()) {
+            rows.forEach(row -> {
+                index.add(row.getId(), row.getTitle(), row.getDescription(), row.getSymptoms(), row.getSpecialization());
+                count[0]++;
+            });
+        }
+        System.out.println("Indexed " + count[0] + " case posts for search in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    public void postCreated(CasePost post) {
+        index.add(post.getId(), post.getTitle(), post.getDescription(), post.getSymptoms(), post.getSpecialization());
+    }
+
+    public void postsDeleted(Collection<Long> postIds) {
+        for (Long id : postIds) index.remove(id);
+    }
+
+    public List<CaseSearchHit> search(String query, List<String> specializations, int limit) {
+        List<CaseSearchIndex.Hit> hits = queryTimer.record(
+                () -> index.search(query, specializations, Math.max(1, Math.min(limit, maxResults))));
+        if (hits.isEmpty()) return List.of();
+
+        List<Long> ids = new ArrayList<>(hits.size());
+        hits.forEach(h -> ids.add(h.postId()));
+        Map<Long, CasePostSummary> summaries = new HashMap<>();
+        for (CasePostSummary s : postRepo.findSummaries(ids)) summaries.put(s.getId(), s);
+
+        List<CaseSearchHit> results = new ArrayList<>(hits.size());
+        for (CaseSearchIndex.Hit hit : hits) {
+            CasePostSummary summary = summaries.get(hit.postId());
+            // deleted after it was found
+            if (summary == null) continue;
+            long likes = likeService.currentLikes(summary.getId(), summary.getLikes());
+            results.add(new CaseSearchHit(summary.withLikes((int) likes), hit.score()));
+        }
+        return results;
+    }
+
+    int size() {
+        return index.size();
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Comment;
+import com.example.demo.model.CommentPage;
+import com.example.demo.model.CommentView;
+import com.example.demo.repository.CasePostRepo;
+import com.example.demo.repository.CommentRepo;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Comments on case posts. Each comment row carries its post id, so adding one is a single insert
+ * and a thread is read a page at a time by (postId, id) without loading the post.
+ */
+@Service
+public class CommentService {
+
+    @Autowired
+    private CommentRepo commentRepo;
+
+    @Autowired
+    private CasePostRepo postRepo;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Value("${cases.comments.max-page-size:100}")
+    private int maxPageSize;
+
+    // The foreign key checks the post exists, so this is the one insert and nothing else. Only a
+    // failed insert looks the post up, to tell a missing post from any other constraint; that goes
+    // through JDBC because the persistence context that failed to flush can't run queries.
+    public CommentView add(Long postId, Comment comment) {
+        comment.setId(null);
+        comment.setPostId(postId);
+        comment.setCreatedAt(LocalDateTime.now());
+        try {
+            return CommentView.of(commentRepo.save(comment));
+        } catch (DataIntegrityViolationException e) {
+            if (postId != null && postExists(postId)) {
+                throw e;
+            }
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Post not found");
+        }
+    }
+
+    private boolean postExists(long postId) {
+        return !jdbc.queryForList("SELECT id FROM case_post WHERE id = ?", Long.class, postId).isEmpty();
+    }
+
+    public CommentPage page(Long postId, String cursor, int size) {
+        int limit = Math.max(1, Math.min(size, maxPageSize));
+        long afterId = 0;
+        if (cursor != null && !cursor.isBlank()) {
+            try {
+                afterId = Long.parseLong(cursor);
+            } catch (NumberFormatException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+            }
+        }
+
+        // one extra row tells whether there is a next page
+        List<CommentView> rows = commentRepo.findPage(postId, afterId, PageRequest.of(0, limit + 1));
+        if (rows.isEmpty() && afterId == 0 && !postRepo.existsById(postId)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Post not found");
+        }
+        if (rows.size() <= limit) {
+            return new CommentPage(rows, null);
+        }
+        List<CommentView> items = List.copyOf(rows.subList(0, limit));
+        return new CommentPage(items, String.valueOf(items.get(limit - 1).getId()));
+    }
+
+    // Comments used to be linked through the case_post_comments join table; move those links
+    // onto comment.post_id once and drop the table.
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void migrateJoinTable() {
+        Integer tables = jdbc.queryForObject("SELECT COUNT(*) FROM information_schema.tables " +
+                "WHERE LOWER(table_name) = 'case_post_comments'", Integer.class);
+        if (tables == null || tables == 0) {
+            return;
+        }
+        int moved = jdbc.update("UPDATE comment SET post_id = (SELECT j.case_post_id FROM case_post_comments j " +
+                "WHERE j.comments_id = comment.id) WHERE post_id IS NULL");
+        jdbc.execute("DROP TABLE case_post_comments");
+        System.out.println("Moved " + moved + " comments onto comment.post_id and dropped case_post_comments");
+    }
+}
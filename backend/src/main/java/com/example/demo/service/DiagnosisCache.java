@@ -0,0 +1,92 @@
+package com.example.demo.service;
+
+import com.example.demo.cache.ExpiringLruCache;
+import com.example.demo.model.AIDiagnosis;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * Caches AI diagnoses by a canonical form of the symptom text, so "fever, headache" and
+ * "Headache and fever" share one upstream call.
+ */
+@Component
+public class DiagnosisCache {
+
+    private static final Set<String> STOP_WORDS = Set.of(
+            "a", "an", "and", "the", "of", "with", "i", "im", "am", "have", "has", "having", "had",
+            "my", "me", "is", "are", "also", "some", "very", "feel", "feeling", "since", "for",
+            "in", "on", "at", "to", "or", "but", "bit", "little", "lot", "t");
+
+    // "no fever" and "fever" are opposite findings; these negate the rest of their clause
+    private static final Set<String> NEGATIONS = Set.of(
+            "no", "not", "without", "denies", "denied", "never", "don", "doesn", "didn", "haven", "hasn");
+
+    private static final Pattern CLAUSES = Pattern.compile("[,;.:!?\\n]+|\\bbut\\b");
+    private static final Pattern WORDS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final ExpiringLruCache<String, AIDiagnosis> cache;
+
+    public DiagnosisCache(MeterRegistry registry,
+                          @Value("${ai.diagnosis-cache.max-size:5000}") int maxSize,
+                          @Value("${ai.diagnosis-cache.ttl-minutes:360}") long ttlMinutes) {
+        this.cache = new ExpiringLruCache<>(maxSize, ttlMinutes * 60 * 1000);
+
+        FunctionCounter.builder("ai.diagnosis.cache.hits", cache, ExpiringLruCache::getHits).register(registry);
+        FunctionCounter.builder("ai.diagnosis.cache.misses", cache, ExpiringLruCache::getMisses).register(registry);
+        Gauge.builder("ai.diagnosis.cache.hit-rate", cache, ExpiringLruCache::getHitRate).register(registry);
+        Gauge.builder("ai.diagnosis.cache.size", cache, ExpiringLruCache::size).register(registry);
+    }
+
+    /**
+     * Lowercases, splits on anything that isn't a letter or digit, drops filler words and plural
+     * "s", marks words after a negation in the same clause as "no_word", then sorts and
+     * de-duplicates. Returns "" when nothing meaningful is left.
+     */
+    public static String normalize(String symptoms) {
+        return String.join(" ", new TreeSet<>(tokens(symptoms)));
+    }
+
+    // The normalize rules without sorting, so callers can still see which words were next to each other
+    static List<String> tokens(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        for (String clause : CLAUSES.split(text.toLowerCase())) {
+            boolean negated = false;
+            for (String raw : WORDS.split(clause)) {
+                if (NEGATIONS.contains(raw)) {
+                    negated = true;
+                    continue;
+                }
+                if (raw.isEmpty() || STOP_WORDS.contains(raw)) {
+                    continue;
+                }
+                String token = raw.length() > 3 && raw.endsWith("s") && !raw.endsWith("ss")
+                        ? raw.substring(0, raw.length() - 1)
+                        : raw;
+                tokens.add(negated ? "no_" + token : token);
+            }
+        }
+        return tokens;
+    }
+
+    public AIDiagnosis get(String key) {
+        return key.isEmpty() ? null : cache.get(key);
+    }
+
+    public void put(String key, AIDiagnosis diagnosis) {
+        if (!key.isEmpty() && diagnosis != null) {
+            cache.put(key, diagnosis);
+        }
+    }
+}
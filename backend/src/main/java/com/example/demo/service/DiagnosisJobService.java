@@ -0,0 +1,284 @@
+package com.example.demo.service;
+
+import com.example.demo.model.AIDiagnosis;
+import com.example.demo.model.DiagnosisJob;
+import com.example.demo.model.DiagnosisJobItem;
+import com.example.demo.repository.DiagnosisJobItemRepo;
+import com.example.demo.repository.DiagnosisJobRepo;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Batch diagnosis: a job is a list of symptom sets, stored as one row per item. Items are picked
+ * up in submission order by a dispatcher that keeps at most ai.jobs.parallelism of them in
+ * flight, each going through AiService.diagnose (so the diagnosis cache, single-flight and the
+ * resilience limits all apply). Progress lives in the database; items that were running when the
+ * app stopped are queued again on startup.
+ */
+@Service
+public class DiagnosisJobService {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Autowired
+    private DiagnosisJobRepo jobRepo;
+
+    @Autowired
+    private DiagnosisJobItemRepo itemRepo;
+
+    @Autowired
+    private AiService aiService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${ai.jobs.parallelism:4}")
+    private int parallelism;
+
+    @Value("${ai.jobs.max-items:100}")
+    private int maxItems;
+
+    @Value("${ai.jobs.stream-poll-ms:1000}")
+    private long streamPollMs;
+
+    private final AtomicInteger running = new AtomicInteger();
+    private final Object dispatchLock = new Object();
+
+    @PostConstruct
+    void registerMetrics() {
+        Gauge.builder("ai.jobs.items.running", running, AtomicInteger::get).register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void recover() {
+        int requeued = itemRepo.requeueRunning();
+        if (requeued > 0) {
+            System.out.println("Re-queued " + requeued + " diagnosis job items interrupted by the last shutdown");
+        }
+        dispatch();
+    }
+
+    @Transactional
+    public DiagnosisJob submit(Long ownerId, List<String> symptoms) {
+        if (symptoms == null || symptoms.isEmpty()) {
+            throw new IllegalArgumentException("At least one symptom set is required.");
+        }
+        if (symptoms.size() > maxItems) {
+            throw new IllegalArgumentException("At most " + maxItems + " symptom sets per job.");
+        }
+        for (String s : symptoms) {
+            if (s == null || s.isBlank() || s.length() > 2000) {
+                throw new IllegalArgumentException("Each symptom set must be 1 to 2000 characters.");
+            }
+        }
+
+        DiagnosisJob job = new DiagnosisJob();
+        job.setOwnerId(ownerId);
+        job.setTotal(symptoms.size());
+        job = jobRepo.save(job);
+
+        List<DiagnosisJobItem> items = new ArrayList<>(symptoms.size());
+        for (int i = 0; i < symptoms.size(); i++) {
+            DiagnosisJobItem item = new DiagnosisJobItem();
+            item.setJobId(job.getId());
+            item.setPosition(i);
+            item.setSymptoms(symptoms.get(i));
+            items.add(item);
+        }
+        itemRepo.saveAll(items);
+
+        // start as soon as the rows are visible to the workers
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    Schedulers.boundedElastic().schedule(DiagnosisJobService.this::dispatch);
+                }
+            });
+        } else {
+            Schedulers.boundedElastic().schedule(this::dispatch);
+        }
+        return job;
+    }
+
+    public Optional<DiagnosisJob> find(Long jobId, Long ownerId) {
+        return jobRepo.findByIdAndOwnerId(jobId, ownerId);
+    }
+
+    public List<DiagnosisJobItem> items(Long jobId) {
+        return itemRepo.findByJobIdOrderByPosition(jobId);
+    }
+
+    // Also runs on a timer, so work is picked up even if a wake-up was missed
+    @Scheduled(fixedDelayString = "${ai.jobs.poll-interval-ms:5000}")
+    public void dispatch() {
+        synchronized (dispatchLock) {
+            int free = parallelism - running.get();
+            if (free <= 0) {
+                return;
+            }
+            for (DiagnosisJobItem item : itemRepo.findByStatusOrderById("queued", PageRequest.of(0, free))) {
+                if (itemRepo.claim(item.getId()) == 0) {
+                    continue;
+                }
+                running.incrementAndGet();
+                process(item)
+                        .doFinally(signal -> {
+                            running.decrementAndGet();
+                            Schedulers.boundedElastic().schedule(this::dispatch);
+                        })
+                        .subscribe();
+            }
+        }
+    }
+
+    private Mono<Void> process(DiagnosisJobItem item) {
+        return aiService.diagnose(item.getSymptoms())
+                .publishOn(Schedulers.boundedElastic()) // the JPA writes below block
+                .doOnNext(response -> {
+                    if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
+                        complete(item, response);
+                    } else {
+                        fail(item, "No diagnosis could be produced.");
+                    }
+                })
+                .switchIfEmpty(Mono.fromRunnable(() -> fail(item, "No diagnosis could be produced.")))
+                // the provider's error text is for the log, not for whoever reads the job
+                .onErrorResume(e -> Mono.fromRunnable(() -> {
+                            System.out.println("Diagnosis job item " + item.getId() + " failed: " + e);
+                            fail(item, "AI provider error, please try again.");
+                        })
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .then(Mono.empty()))
+                .then();
+    }
+
+    private void complete(DiagnosisJobItem item, ResponseEntity<AIDiagnosis> response) {
+        try {
+            item.setResult(MAPPER.writeValueAsString(response.getBody()));
+        } catch (JsonProcessingException e) {
+            fail(item, "Could not store the diagnosis.");
+            return;
+        }
+        item.setSource(response.getHeaders().getFirst(AiService.SOURCE_HEADER));
+        item.setStatus("done");
+        item.setFinishedAt(LocalDateTime.now());
+        itemRepo.save(item);
+        jobRepo.incrementCompleted(item.getJobId());
+        jobRepo.completeIfFinished(item.getJobId(), LocalDateTime.now());
+        meterRegistry.counter("ai.jobs.items", "outcome", "done").increment();
+    }
+
+    private void fail(DiagnosisJobItem item, String error) {
+        item.setStatus("failed");
+        item.setError(error.length() > 1000 ? error.substring(0, 1000) : error);
+        item.setFinishedAt(LocalDateTime.now());
+        itemRepo.save(item);
+        jobRepo.incrementFailed(item.getJobId());
+        jobRepo.completeIfFinished(item.getJobId(), LocalDateTime.now());
+        meterRegistry.counter("ai.jobs.items", "outcome", "failed").increment();
+    }
+
+    /**
+     * SSE feed for one job: a "result" event per item as it finishes (items already finished are
+     * sent first), a "progress" event whenever the counts change, and a final "completed" event.
+     */
+    public Flux<ServerSentEvent<Object>> stream(Long jobId) {
+        return Flux.defer(() -> {
+            Set<Long> sent = new HashSet<>();
+            int[] lastDone = {-1};
+            return Flux.interval(Duration.ZERO, Duration.ofMillis(streamPollMs))
+                    .onBackpressureDrop()
+                    .concatMap(tick -> Mono.fromCallable(() -> snapshot(jobId)).subscribeOn(Schedulers.boundedElastic()))
+                    .takeUntil(snapshot -> "completed".equals(snapshot.job.getStatus()))
+                    .concatMapIterable(snapshot -> {
+                        List<ServerSentEvent<Object>> events = new ArrayList<>();
+                        for (DiagnosisJobItem item : snapshot.items) {
+                            if (item.getFinishedAt() != null && sent.add(item.getId())) {
+                                events.add(event("result", view(item)));
+                            }
+                        }
+                        DiagnosisJob job = snapshot.job;
+                        int done = job.getCompleted() + job.getFailed();
+                        if ("completed".equals(job.getStatus())) {
+                            events.add(event("completed", view(job)));
+                        } else if (done != lastDone[0]) {
+                            events.add(event("progress", view(job)));
+                        }
+                        lastDone[0] = done;
+                        return events;
+                    });
+        });
+    }
+
+    private Snapshot snapshot(Long jobId) {
+        DiagnosisJob job = jobRepo.findById(jobId).orElseThrow();
+        return new Snapshot(job, itemRepo.findByJobIdOrderByPosition(jobId));
+    }
+
+    private record Snapshot(DiagnosisJob job, List<DiagnosisJobItem> items) {
+    }
+
+    private static ServerSentEvent<Object> event(String name, Object data) {
+        return ServerSentEvent.builder(data).event(name).build();
+    }
+
+    public static Map<String, Object> view(DiagnosisJob job) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("id", job.getId());
+        map.put("status", job.getStatus());
+        map.put("total", job.getTotal());
+        map.put("completed", job.getCompleted());
+        map.put("failed", job.getFailed());
+        map.put("createdAt", job.getCreatedAt());
+        map.put("finishedAt", job.getFinishedAt());
+        return map;
+    }
+
+    public static Map<String, Object> view(DiagnosisJobItem item) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("position", item.getPosition());
+        map.put("symptoms", item.getSymptoms());
+        map.put("status", item.getStatus());
+        map.put("source", item.getSource());
+        map.put("error", item.getError());
+        AIDiagnosis diagnosis = null;
+        if (item.getResult() != null) {
+            try {
+                diagnosis = MAPPER.readValue(item.getResult(), AIDiagnosis.class);
+            } catch (JsonProcessingException ignored) {
+            }
+        }
+        map.put("diagnosis", diagnosis);
+        return map;
+    }
+}
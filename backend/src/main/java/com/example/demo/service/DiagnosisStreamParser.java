@@ -0,0 +1,108 @@
+package com.example.demo.service;
+
+import com.example.demo.model.AIDiagnosis;
+import com.example.demo.model.Condition;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Incremental scanner for a streamed AIDiagnosis. Text chunks are fed as they arrive and each
+ * object inside "possibleConditions" is returned as soon as its closing brace is seen, without
+ * waiting for the rest of the document. Not thread-safe; use one instance per stream.
+ */
+public class DiagnosisStreamParser {
+
+    private static final String KEY = "\"possibleConditions\"";
+
+    private enum State { SEEK_KEY, SEEK_ARRAY, IN_ARRAY, DONE }
+
+    private final StringBuilder buffer = new StringBuilder();
+    private State state = State.SEEK_KEY;
+    private int pos;
+    private int depth;
+    private int objectStart = -1;
+    private boolean inString;
+    private boolean escaped;
+
+    public List<Condition> feed(String chunk) {
+        buffer.append(chunk);
+        List<Condition> completed = new ArrayList<>();
+
+        while (pos < buffer.length() && state != State.DONE) {
+            if (state == State.SEEK_KEY) {
+                int idx = buffer.indexOf(KEY, pos);
+                if (idx < 0) {
+                    // keep enough tail to match a key split across chunks
+                    pos = Math.max(pos, buffer.length() - KEY.length() + 1);
+                    break;
+                }
+                pos = idx + KEY.length();
+                state = State.SEEK_ARRAY;
+            } else if (state == State.SEEK_ARRAY) {
+                if (buffer.charAt(pos) == '[') {
+                    state = State.IN_ARRAY;
+                }
+                pos++;
+            } else {
+                scanArrayChar(buffer.charAt(pos), completed);
+                pos++;
+            }
+        }
+        return completed;
+    }
+
+    private void scanArrayChar(char c, List<Condition> completed) {
+        if (inString) {
+            if (escaped) {
+                escaped = false;
+            } else if (c == '\\') {
+                escaped = true;
+            } else if (c == '"') {
+                inString = false;
+            }
+            return;
+        }
+
+        switch (c) {
+            case '"' -> inString = true;
+            case '{', '[' -> {
+                if (depth == 0 && c == '{') {
+                    objectStart = pos;
+                }
+                depth++;
+            }
+            case '}' -> {
+                depth--;
+                if (depth == 0 && objectStart >= 0) {
+                    parseCondition(buffer.substring(objectStart, pos + 1), completed);
+                    objectStart = -1;
+                }
+            }
+            case ']' -> {
+                if (depth == 0) {
+                    state = State.DONE;
+                } else {
+                    depth--;
+                }
+            }
+            default -> {
+            }
+        }
+    }
+
+    private void parseCondition(String json, List<Condition> completed) {
+        try {
+            completed.add(AiJsonCodec.decodeCondition(json));
+        } catch (Exception e) {
+            // malformed entry, the final full parse still gets a chance
+        }
+    }
+
+    /** Decodes everything received so far as an AIDiagnosis, or returns null if nothing usable came through. */
+    public AIDiagnosis finish() {
+        String text = buffer.toString();
+        AIDiagnosis diagnosis = AiJsonCodec.decodeDiagnosis(text);
+        return diagnosis != null ? diagnosis : AiJsonCodec.salvageDiagnosis(text);
+    }
+}
@@ -0,0 +1,205 @@
+package com.example.demo.service;
+
+import com.example.demo.cache.SingleFlight;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps a pool of pre-generated health facts in memory so /facts never waits on the LLM.
+ * The pool is refreshed on a schedule (and in the background once it goes stale), written to
+ * disk after every successful refresh, and reloaded from there on startup. If a refresh fails
+ * the last good pool keeps being served. There is only ever one refresh in flight; on a cold
+ * start with nothing on disk, requests wait for that refresh instead of each calling the LLM.
+ */
+@Service
+public class HealthFactsService {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final int FACTS_PER_RESPONSE = 5;
+
+    @Autowired
+    private AiService aiService;
+
+    @Value("${facts.pool.batches:4}")
+    private int batches;
+
+    @Value("${facts.pool.stale-after-ms:21600000}")
+    private long staleAfterMs;
+
+    @Value("${facts.pool.file:data/facts-pool.json}")
+    private String poolFile;
+
+    // Pre-serialized responses, one per rotation offset, swapped atomically on refresh
+    private volatile Pool pool = Pool.EMPTY;
+    private final AtomicInteger cursor = new AtomicInteger();
+    private final SingleFlight<Pool> refreshes = new SingleFlight<>();
+    private volatile long lastAttempt;
+
+    @Value("${facts.pool.retry-backoff-ms:60000}")
+    private long retryBackoffMs;
+
+    @PostConstruct
+    public void loadPersisted() {
+        Path path = Paths.get(poolFile);
+        if (!Files.exists(path)) {
+            return;
+        }
+        try {
+            JsonNode root = MAPPER.readTree(path.toFile());
+            List<JsonNode> facts = new ArrayList<>();
+            root.path("facts").forEach(facts::add);
+            if (!facts.isEmpty()) {
+                pool = Pool.of(facts, root.path("generatedAt").asLong(0));
+            }
+        } catch (IOException e) {
+            System.out.println("Could not read facts pool: " + e.getMessage());
+        }
+    }
+
+    /** Next window of facts as a JSON array, rotating through the pool on every call. */
+    public Mono<String> nextFacts() {
+        Pool current = pool;
+        if (current.isEmpty()) {
+            // cold start with nothing on disk: wait for the one shared refresh; only if none can run
+            // right now (backing off after a failure) answer from a live call
+            refreshInBackground();
+            return sharedRefresh()
+                    .map(fresh -> fresh.window(cursor.getAndIncrement()))
+                    .switchIfEmpty(Mono.defer(() -> aiService.getFacts()));
+        }
+        if (System.currentTimeMillis() - current.generatedAt > staleAfterMs) {
+            refreshInBackground();
+        }
+        return Mono.just(current.window(cursor.getAndIncrement()));
+    }
+
+    @Scheduled(initialDelayString = "${facts.pool.initial-delay-ms:10000}",
+            fixedDelayString = "${facts.pool.refresh-interval-ms:3600000}")
+    public void refreshInBackground() {
+        sharedRefresh().subscribe(p -> { }, e -> System.out.println("Facts refresh failed: " + e.getMessage()));
+    }
+
+    // callers arriving while a refresh runs join it instead of starting another
+    private Mono<Pool> sharedRefresh() {
+        return refreshes.execute("pool", this::refresh);
+    }
+
+    private Mono<Pool> refresh() {
+        // don't let every request re-trigger a refresh while the provider is down
+        if (System.currentTimeMillis() - lastAttempt < retryBackoffMs) {
+            return Mono.empty();
+        }
+        lastAttempt = System.currentTimeMillis();
+        return Flux.range(0, batches)
+                .concatMap(i -> aiService.getFacts()
+                        .map(this::parse)
+                        .onErrorResume(e -> Mono.just(List.of())))
+                .collectList()
+                .map(this::dedupe)
+                .flatMap(facts -> {
+                    if (facts.isEmpty()) {
+                        // upstream is down or returned garbage: keep serving the last good pool
+                        return Mono.error(new IllegalStateException("No facts from AI provider, keeping last pool"));
+                    }
+                    Pool fresh = Pool.of(facts, System.currentTimeMillis());
+                    pool = fresh;
+                    persist(fresh);
+                    return Mono.just(fresh);
+                });
+    }
+
+    private List<JsonNode> parse(String json) {
+        List<JsonNode> facts = new ArrayList<>();
+        try {
+            JsonNode node = MAPPER.readTree(json);
+            if (node.isArray()) {
+                node.forEach(fact -> {
+                    if (fact.hasNonNull("title")) facts.add(fact);
+                });
+            }
+        } catch (IOException e) {
+            System.out.println("Discarding malformed facts batch");
+        }
+        return facts;
+    }
+
+    private List<JsonNode> dedupe(List<List<JsonNode>> batches) {
+        Map<String, JsonNode> byTitle = new LinkedHashMap<>();
+        for (List<JsonNode> batch : batches) {
+            for (JsonNode fact : batch) {
+                byTitle.putIfAbsent(fact.get("title").asText().toLowerCase(), fact);
+            }
+        }
+        return new ArrayList<>(byTitle.values());
+    }
+
+    private void persist(Pool fresh) {
+        try {
+            Path path = Paths.get(poolFile);
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            ArrayNode facts = MAPPER.createArrayNode();
+            fresh.facts.forEach(facts::add);
+            Path tmp = Files.createTempFile(path.toAbsolutePath().getParent(), "facts", ".tmp");
+            MAPPER.writeValue(tmp.toFile(), Map.of("generatedAt", fresh.generatedAt, "facts", facts));
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("Could not persist facts pool: " + e.getMessage());
+        }
+    }
+
+    private static final class Pool {
+        static final Pool EMPTY = new Pool(List.of(), new String[0], 0);
+
+        final List<JsonNode> facts;
+        final String[] windows;
+        final long generatedAt;
+
+        private Pool(List<JsonNode> facts, String[] windows, long generatedAt) {
+            this.facts = facts;
+            this.windows = windows;
+            this.generatedAt = generatedAt;
+        }
+
+        static Pool of(List<JsonNode> facts, long generatedAt) {
+            int n = facts.size();
+            String[] windows = new String[n];
+            for (int offset = 0; offset < n; offset++) {
+                ArrayNode window = MAPPER.createArrayNode();
+                for (int i = 0; i < Math.min(FACTS_PER_RESPONSE, n); i++) {
+                    window.add(facts.get((offset + i) % n));
+                }
+                windows[offset] = window.toString();
+            }
+            return new Pool(List.copyOf(facts), windows, generatedAt);
+        }
+
+        boolean isEmpty() {
+            return windows.length == 0;
+        }
+
+        String window(int index) {
+            return windows[Math.floorMod(index, windows.length)];
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package com.example.demo.service;
+
+import com.example.demo.model.CasePost;
+import com.example.demo.storage.UploadStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Downscaled copies of image attachments, so the feed can show a thumbnail instead of the
+ * original scan.
+ *
+ * New uploads are queued after the post is saved and processed on a small bounded pool. Each
+ * image is decoded once, subsampled while reading when it is much larger than the biggest size,
+ * and written out in every Size as a fresh JPEG (PNG if it has transparency), which drops EXIF
+ * and other metadata. The copies are kept next to the blob in the UploadStore, so posts sharing
+ * an upload share them and they go when the blob does. Then every post with that blob gets the
+ * derivative URLs. When the queue is full the image is left for the sweep, which also picks up
+ * anything a restart interrupted.
+ */
+@Service
+public class ImageDerivativeService {
+
+    public enum Size {
+        THUMB("thumb", 240), PREVIEW("preview", 1024);
+
+        final String param;
+        final int maxSide;
+
+        Size(String param, int maxSide) {
+            this.param = param;
+            this.maxSide = maxSide;
+        }
+
+        public static Optional<Size> of(String param) {
+            for (Size size : values()) {
+                if (size.param.equalsIgnoreCase(param)) return Optional.of(size);
+            }
+            return Optional.empty();
+        }
+    }
+
+    private static final Set<String> DECODABLE = Set.of("image/jpeg", "image/png", "image/gif", "image/bmp");
+    private static final float JPEG_QUALITY = 0.85f;
+
+    private final JdbcTemplate jdbc;
+    private final UploadStore uploadStore;
+    private final CaseFeedCache caseFeedCache;
+    private final long maxPixels;
+    private final ThreadPoolExecutor executor;
+    // hashes queued or in progress, so one upload is never processed twice at once
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    // not decodable or failed; not retried by the sweep until restart
+    private final Set<String> failed = ConcurrentHashMap.newKeySet();
+
+    private final Timer processTimer;
+    private final Counter done;
+    private final Counter skipped;
+    private final Counter failures;
+    private final Counter rejected;
+    private final Counter bytesIn;
+    private final Counter bytesOut;
+
+    public ImageDerivativeService(JdbcTemplate jdbc, UploadStore uploadStore, CaseFeedCache caseFeedCache,
+                                  MeterRegistry registry,
+                                  @Value("${cases.images.threads:1}") int threads,
+                                  @Value("${cases.images.queue-capacity:500}") int queueCapacity,
+                                  @Value("${cases.images.max-pixels:50000000}") long maxPixels) {
+        this.jdbc = jdbc;
+        this.uploadStore = uploadStore;
+        this.caseFeedCache = caseFeedCache;
+        this.maxPixels = maxPixels;
+
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "image-derivatives-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    t.setPriority(Thread.MIN_PRIORITY);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+
+        this.processTimer = Timer.builder("cases.images.process").register(registry);
+        this.done = Counter.builder("cases.images.processed").tag("result", "done").register(registry);
+        this.skipped = Counter.builder("cases.images.processed").tag("result", "skipped").register(registry);
+        this.failures = Counter.builder("cases.images.processed").tag("result", "failed").register(registry);
+        this.rejected = Counter.builder("cases.images.rejected").register(registry);
+        this.bytesIn = Counter.builder("cases.images.bytes").tag("direction", "in").register(registry);
+        this.bytesOut = Counter.builder("cases.images.bytes").tag("direction", "out").register(registry);
+        Gauge.builder("cases.images.backlog", executor, e -> e.getQueue().size() + e.getActiveCount())
+                .register(registry);
+    }
+
+    public void postCreated(CasePost post) {
+        if (post.getFileHash() != null && isImage(post.getFileName())) submit(post.getFileHash());
+    }
+
+    /** Queues every image upload whose posts have no derivatives yet. */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${cases.images.sweep-interval-ms:600000}",
+            initialDelayString = "${cases.images.sweep-interval-ms:600000}")
+    public void sweep() {
+        List<String> hashes = new ArrayList<>();
+        jdbc.query("SELECT DISTINCT file_hash, file_name FROM case_post " +
+                        "WHERE file_hash IS NOT NULL AND thumbnail_url IS NULL",
+                rs -> {
+                    String hash = rs.getString(1);
+                    if (isImage(rs.getString(2)) && !failed.contains(hash)) hashes.add(hash);
+                });
+        for (String hash : hashes) {
+            if (!submit(hash)) break;
+        }
+    }
+
+    /** A derivative of a stored upload, if it has been made. */
+    public Optional<Path> locate(String hash, Size size) {
+        for (String ext : new String[]{"jpg", "png"}) {
+            Path path = uploadStore.derivativePath(hash, size.param + "." + ext);
+            if (Files.isRegularFile(path)) return Optional.of(path);
+        }
+        return Optional.empty();
+    }
+
+    static boolean isImage(String fileName) {
+        return fileName != null && MediaTypeFactory.getMediaType(fileName)
+                .map(t -> DECODABLE.contains(t.getType() + "/" + t.getSubtype()))
+                .orElse(false);
+    }
+
+    private boolean submit(String hash) {
+        if (!pending.add(hash)) return true;
+        try {
+            executor.execute(() -> {
+                try {
+                    processTimer.record(() -> process(hash));
+                } finally {
+                    pending.remove(hash);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            pending.remove(hash);
+            rejected.increment();
+            return false;
+        }
+    }
+
+    void process(String hash) {
+        Path source = uploadStore.locate(hash).orElse(null);
+        if (source == null) {
+            skipped.increment();
+            return;
+        }
+        try {
+            boolean made = true;
+            for (Size size : Size.values()) made &= locate(hash, size).isPresent();
+            if (!made) {
+                if (!render(hash, source)) {
+                    failed.add(hash);
+                    skipped.increment();
+                    return;
+                }
+                bytesIn.increment(Files.size(source));
+            }
+            int posts = jdbc.update("UPDATE case_post SET thumbnail_url = file_url || '?size=" + Size.THUMB.param +
+                    "', preview_url = file_url || '?size=" + Size.PREVIEW.param + "' WHERE file_hash = ?", hash);
+            if (posts > 0) caseFeedCache.invalidate();
+            done.increment();
+        } catch (IOException | RuntimeException e) {
+            failed.add(hash);
+            failures.increment();
+            System.out.println("Could not make image derivatives for " + hash + ": " + e.getMessage());
+        }
+    }
+
+    // false when the file is not an image ImageIO can read, or is too large to decode
+    private boolean render(String hash, Path source) throws IOException {
+        BufferedImage image;
+        try (ImageInputStream in = ImageIO.createImageInputStream(source.toFile())) {
+            Iterator<ImageReader> readers = in == null ? null : ImageIO.getImageReaders(in);
+            if (readers == null || !readers.hasNext()) return false;
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > maxPixels) return false;
+
+                // decoding every other pixel (or fewer) is far cheaper and still leaves 2x the largest size
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = Math.max(1, Math.max(width, height) / (2 * Size.PREVIEW.maxSide));
+                if (step > 1) param.setSourceSubsampling(step, step, 0, 0);
+                image = reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+
+        boolean alpha = image.getColorModel().hasAlpha();
+        // largest first, each one scaled down from the previous
+        BufferedImage current = image;
+        for (int i = Size.values().length - 1; i >= 0; i--) {
+            Size size = Size.values()[i];
+            current = scale(current, size.maxSide, alpha);
+            write(hash, size, current, alpha);
+        }
+        return true;
+    }
+
+    private void write(String hash, Size size, BufferedImage image, boolean alpha) throws IOException {
+        String ext = alpha ? "png" : "jpg";
+        Path tmp = Files.createTempFile(uploadStore.tmpDir(), "derivative", "." + ext);
+        try {
+            ImageWriter writer = ImageIO.getImageWritersByFormatName(alpha ? "png" : "jpeg").next();
+            try (ImageOutputStream out = ImageIO.createImageOutputStream(tmp.toFile())) {
+                writer.setOutput(out);
+                ImageWriteParam param = writer.getDefaultWriteParam();
+                if (!alpha) {
+                    param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                    param.setCompressionQuality(JPEG_QUALITY);
+                }
+                // no metadata argument: nothing from the original (EXIF, GPS, comments) is carried over
+                writer.write(null, new IIOImage(image, null, null), param);
+            } finally {
+                writer.dispose();
+            }
+            Path target = uploadStore.derivativePath(hash, size.param + "." + ext);
+            try {
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            if (uploadStore.locate(hash).isEmpty()) {
+                // the upload was released while we worked; don't leave its copy behind
+                Files.deleteIfExists(target);
+                return;
+            }
+            bytesOut.increment(Files.size(target));
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    // halves with bilinear filtering until the last step, which is smoother than one big jump
+    static BufferedImage scale(BufferedImage source, int maxSide, boolean alpha) {
+        int type = alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        double factor = Math.min(1.0, (double) maxSide / Math.max(source.getWidth(), source.getHeight()));
+        int targetWidth = Math.max(1, (int) Math.round(source.getWidth() * factor));
+        int targetHeight = Math.max(1, (int) Math.round(source.getHeight() * factor));
+
+        BufferedImage current = source;
+        do {
+            int width = Math.max(targetWidth, current.getWidth() / 2);
+            int height = Math.max(targetHeight, current.getHeight() / 2);
+            BufferedImage next = new BufferedImage(width, height, type);
+            Graphics2D g = next.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                if (!alpha) {
+                    g.setColor(Color.WHITE);
+                    g.fillRect(0, 0, width, height);
+                }
+                g.drawImage(current, 0, 0, width, height, null);
+            } finally {
+                g.dispose();
+            }
+            current = next;
+        } while (current.getWidth() != targetWidth || current.getHeight() != targetHeight);
+        return current;
+    }
+
+    /** The name a derivative is downloaded as: the upload's name with the derivative's extension. */
+    public static String derivativeName(String fileName, Path derivative) {
+        String name = fileName == null ? "file" : fileName;
+        int dot = name.lastIndexOf('.');
+        String stem = dot > 0 ? name.substring(0, dot) : name;
+        String file = derivative.getFileName().toString();
+        String ext = file.substring(file.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+        return stem + "." + ext;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,332 @@
+package com.example.demo.service;
+
+import com.example.demo.cache.LongHashSet;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Likes on case posts, kept in memory and written behind.
+ *
+ * Each post that has been touched gets a PostLikes: its likers as primitive long sets, split into
+ * stripes by user id so concurrent likes on a hot post rarely share a lock. Like and unlike are
+ * idempotent and only touch memory. A scheduled flush drains the pending changes and writes them
+ * in one transaction as JDBC batches: "likes = likes + delta" per post, plus inserts/deletes of
+ * liker rows, so the post row is never read-modify-written. Posts with nothing pending are
+ * dropped from memory after a while and reloaded on next use.
+ */
+@Service
+public class LikeService {
+
+    private static final int STRIPES = 8;
+
+    public enum Change { LIKED, UNLIKED, UNCHANGED }
+
+    public record Result(long likes, boolean liked, Change change) {
+    }
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+    private final long idleEvictMs;
+    private final Map<Long, PostLikes> posts = new ConcurrentHashMap<>();
+    private final Object flushLock = new Object();
+
+    private final Counter flushedDeltas;
+    private final Timer flushTimer;
+
+    public LikeService(JdbcTemplate jdbc, PlatformTransactionManager transactionManager, MeterRegistry registry,
+                       @Value("${cases.likes.idle-evict-ms:600000}") long idleEvictMs) {
+        this.jdbc = jdbc;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.idleEvictMs = idleEvictMs;
+
+        Gauge.builder("cases.likes.posts.cached", posts, Map::size).register(registry);
+        Gauge.builder("cases.likes.posts.dirty", this, LikeService::dirtyCount).register(registry);
+        this.flushedDeltas = Counter.builder("cases.likes.flushed").register(registry);
+        this.flushTimer = Timer.builder("cases.likes.flush").register(registry);
+    }
+
+    public Result like(long postId, long userId) {
+        return apply(postId, userId, Op.LIKE);
+    }
+
+    public Result unlike(long postId, long userId) {
+        return apply(postId, userId, Op.UNLIKE);
+    }
+
+    public Result toggle(long postId, long userId) {
+        return apply(postId, userId, Op.TOGGLE);
+    }
+
+    /** Current like count, including changes not flushed yet; dbLikes is used for posts not in memory. */
+    public long currentLikes(long postId, long dbLikes) {
+        PostLikes post = posts.get(postId);
+        return post == null ? dbLikes : post.count();
+    }
+
+    /**
+     * Drops purged posts from memory; anything still pending for them has nowhere to go. Waits for a
+     * running flush, which may still need to put its drained changes back on these posts.
+     */
+    public void postsDeleted(List<Long> postIds) {
+        synchronized (flushLock) {
+            for (Long id : postIds) posts.remove(id);
+        }
+    }
+
+    private Result apply(long postId, long userId, Op op) {
+        while (true) {
+            PostLikes post = posts.get(postId);
+            if (post == null) {
+                PostLikes loaded = load(postId);
+                post = posts.putIfAbsent(postId, loaded);
+                if (post == null) post = loaded;
+            }
+            Result result = post.apply(userId, op);
+            if (result != null) return result;
+            // evicted between lookup and apply, take the fresh copy
+        }
+    }
+
+    private PostLikes load(long postId) {
+        List<Long> likes = jdbc.queryForList("SELECT likes FROM case_post WHERE id = ?", Long.class, postId);
+        if (likes.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Post not found");
+        }
+        PostLikes post = new PostLikes(likes.get(0) == null ? 0 : likes.get(0));
+        jdbc.query("SELECT liked_user_ids FROM case_post_liked_user_ids WHERE case_post_id = ?",
+                rs -> {
+                    post.loadLiker(rs.getLong(1));
+                }, postId);
+        return post;
+    }
+
+    private int dirtyCount() {
+        int n = 0;
+        for (PostLikes post : posts.values()) {
+            if (post.hasPending()) n++;
+        }
+        return n;
+    }
+
+    @Scheduled(fixedDelayString = "${cases.likes.flush-interval-ms:2000}")
+    public void flush() {
+        synchronized (flushLock) {
+            List<Long> ids = new ArrayList<>();
+            List<Drained> drained = new ArrayList<>();
+            long now = System.currentTimeMillis();
+            for (Map.Entry<Long, PostLikes> e : posts.entrySet()) {
+                PostLikes post = e.getValue();
+                Drained d = post.drain();
+                if (d != null) {
+                    ids.add(e.getKey());
+                    drained.add(d);
+                } else if (now - post.lastTouched > idleEvictMs && post.evictIfClean()) {
+                    posts.remove(e.getKey(), post);
+                }
+            }
+            if (ids.isEmpty()) {
+                return;
+            }
+
+            try {
+                flushTimer.record(() -> tx.executeWithoutResult(status -> write(ids, drained)));
+            } catch (RuntimeException e) {
+                // put everything back, the next flush retries it
+                for (int i = 0; i < ids.size(); i++) {
+                    posts.get(ids.get(i)).restore(drained.get(i));
+                }
+                System.out.println("Like flush failed, will retry: " + e.getMessage());
+                return;
+            }
+            for (Drained d : drained) {
+                flushedDeltas.increment(Math.abs(d.delta));
+            }
+        }
+    }
+
+    private void write(List<Long> ids, List<Drained> drained) {
+        List<Object[]> counts = new ArrayList<>();
+        List<Object[]> inserts = new ArrayList<>();
+        List<Object[]> deletes = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            long postId = ids.get(i);
+            Drained d = drained.get(i);
+            if (d.delta != 0) counts.add(new Object[]{d.delta, postId});
+            for (long user : d.added) inserts.add(new Object[]{postId, user, postId, postId, user});
+            for (long user : d.removed) deletes.add(new Object[]{postId, user});
+        }
+        if (!counts.isEmpty()) {
+            jdbc.batchUpdate("UPDATE case_post SET likes = likes + ? WHERE id = ?", counts);
+        }
+        if (!deletes.isEmpty()) {
+            jdbc.batchUpdate("DELETE FROM case_post_liked_user_ids WHERE case_post_id = ? AND liked_user_ids = ?", deletes);
+        }
+        if (!inserts.isEmpty()) {
+            // skips rows for posts deleted meanwhile and rows that already exist
+            jdbc.batchUpdate("INSERT INTO case_post_liked_user_ids (case_post_id, liked_user_ids) " +
+                    "SELECT ?, ? WHERE EXISTS (SELECT 1 FROM case_post WHERE id = ?) " +
+                    "AND NOT EXISTS (SELECT 1 FROM case_post_liked_user_ids WHERE case_post_id = ? AND liked_user_ids = ?)",
+                    inserts);
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    private enum Op { LIKE, UNLIKE, TOGGLE }
+
+    private record Drained(long delta, long[] added, long[] removed) {
+    }
+
+    private static final class Stripe {
+        final LongHashSet likers = new LongHashSet();
+        // changes since the last flush; a user is never in both
+        LongHashSet added = new LongHashSet();
+        LongHashSet removed = new LongHashSet();
+        long delta;
+    }
+
+    private static final class PostLikes {
+        private final Stripe[] stripes = new Stripe[STRIPES];
+        private volatile long committedCount;
+        // striped counter of unflushed +1/-1s, so reading the count takes no locks
+        private final LongAdder pending = new LongAdder();
+        private volatile boolean evicted;
+        volatile long lastTouched = System.currentTimeMillis();
+
+        PostLikes(long committedCount) {
+            this.committedCount = committedCount;
+            for (int i = 0; i < STRIPES; i++) stripes[i] = new Stripe();
+        }
+
+        private Stripe stripe(long userId) {
+            return stripes[(int) ((userId ^ (userId >>> 32)) & (STRIPES - 1))];
+        }
+
+        void loadLiker(long userId) {
+            stripe(userId).likers.add(userId);
+        }
+
+        // null means this copy was evicted and the caller should look the post up again
+        Result apply(long userId, Op op) {
+            Stripe s = stripe(userId);
+            Change change;
+            boolean likedNow;
+            synchronized (s) {
+                if (evicted) return null;
+                boolean liked = s.likers.contains(userId);
+                boolean want = op == Op.TOGGLE ? !liked : op == Op.LIKE;
+                if (want == liked) {
+                    change = Change.UNCHANGED;
+                } else if (want) {
+                    s.likers.add(userId);
+                    if (!s.removed.remove(userId)) s.added.add(userId);
+                    s.delta++;
+                    pending.increment();
+                    change = Change.LIKED;
+                } else {
+                    s.likers.remove(userId);
+                    if (!s.added.remove(userId)) s.removed.add(userId);
+                    s.delta--;
+                    pending.decrement();
+                    change = Change.UNLIKED;
+                }
+                likedNow = s.likers.contains(userId);
+            }
+            lastTouched = System.currentTimeMillis();
+            return new Result(count(), likedNow, change);
+        }
+
+        long count() {
+            return committedCount + pending.sum();
+        }
+
+        boolean hasPending() {
+            for (Stripe s : stripes) {
+                synchronized (s) {
+                    if (s.delta != 0 || !s.added.isEmpty() || !s.removed.isEmpty()) return true;
+                }
+            }
+            return false;
+        }
+
+        Drained drain() {
+            long delta = 0;
+            LongHashSet added = new LongHashSet();
+            LongHashSet removed = new LongHashSet();
+            for (Stripe s : stripes) {
+                synchronized (s) {
+                    if (s.delta == 0 && s.added.isEmpty() && s.removed.isEmpty()) continue;
+                    delta += s.delta;
+                    s.added.forEach(added::add);
+                    s.removed.forEach(removed::add);
+                    s.delta = 0;
+                    s.added = new LongHashSet();
+                    s.removed = new LongHashSet();
+                }
+            }
+            if (delta == 0 && added.isEmpty() && removed.isEmpty()) return null;
+            // the drained delta counts as committed while the write is in flight, restore() undoes it
+            committedCount += delta;
+            pending.add(-delta);
+            return new Drained(delta, added.toArray(), removed.toArray());
+        }
+
+        void restore(Drained d) {
+            committedCount -= d.delta;
+            pending.add(d.delta);
+            synchronized (stripes[0]) {
+                stripes[0].delta += d.delta;
+            }
+            for (long user : d.added) {
+                Stripe s = stripe(user);
+                synchronized (s) {
+                    // unliked again since the drain: the two cancel out
+                    if (!s.removed.remove(user)) s.added.add(user);
+                }
+            }
+            for (long user : d.removed) {
+                Stripe s = stripe(user);
+                synchronized (s) {
+                    if (!s.added.remove(user)) s.removed.add(user);
+                }
+            }
+        }
+
+        boolean evictIfClean() {
+            return lockAllAndEvict(0);
+        }
+
+        private boolean lockAllAndEvict(int i) {
+            if (i == STRIPES) {
+                for (Stripe s : stripes) {
+                    if (s.delta != 0 || !s.added.isEmpty() || !s.removed.isEmpty()) return false;
+                }
+                evicted = true;
+                return true;
+            }
+            synchronized (stripes[i]) {
+                return lockAllAndEvict(i + 1);
+            }
+        }
+    }
+}
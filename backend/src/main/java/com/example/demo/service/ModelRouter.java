@@ -0,0 +1,238 @@
+package com.example.demo.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Picks the model endpoint for each AI call. Every endpoint keeps a rolling latency and error rate;
+ * a call goes to the healthy endpoint with the lowest expected latency, adjusted for its error rate
+ * and for calls already in flight on it. An endpoint whose error rate passes maxErrorRate sits out
+ * a cooldown. A small share of calls is sent to a random endpoint so a recovered or faster endpoint
+ * gets noticed.
+ */
+@Component
+public class ModelRouter {
+
+    static final String DEFAULT_MODEL = "deepseek/deepseek-r1-0528-qwen3-8b:free";
+
+    private final List<Route> routes;
+    private final MeterRegistry registry;
+    private final double alpha;
+    private final double exploreRatio;
+    private final double maxErrorRate;
+    private final long cooldownMs;
+    private final double loadPenalty;
+
+    public ModelRouter(AiRoutingProperties properties, MeterRegistry registry,
+                       @Value("${openrouter.api.url:https://openrouter.ai/api/v1/chat/completions}") String defaultUrl,
+                       @Value("${openrouter.api.key}") String defaultApiKey) {
+        this.registry = registry;
+        this.alpha = properties.getAlpha();
+        this.exploreRatio = properties.getExploreRatio();
+        this.maxErrorRate = properties.getMaxErrorRate();
+        this.cooldownMs = properties.getCooldownMs();
+        this.loadPenalty = properties.getLoadPenalty();
+
+        List<AiRoutingProperties.Endpoint> configured = properties.getEndpoints();
+        if (configured.isEmpty()) {
+            AiRoutingProperties.Endpoint fallback = new AiRoutingProperties.Endpoint();
+            fallback.setModel(DEFAULT_MODEL);
+            configured = List.of(fallback);
+        }
+
+        List<Route> list = new ArrayList<>();
+        for (AiRoutingProperties.Endpoint endpoint : configured) {
+            if (endpoint.getModel() == null || endpoint.getModel().isBlank()) {
+                throw new IllegalStateException("ai.routing endpoint without a model: " + endpoint);
+            }
+            String url = isBlank(endpoint.getUrl()) ? defaultUrl : endpoint.getUrl();
+            String apiKey = isBlank(endpoint.getApiKey()) ? defaultApiKey : endpoint.getApiKey();
+            String name = isBlank(endpoint.getName()) ? endpoint.getModel() : endpoint.getName();
+            Route route = new Route(name, url, endpoint.getModel(), apiKey, properties.getInitialLatencyMs());
+            registerMetrics(route);
+            list.add(route);
+        }
+        this.routes = Collections.unmodifiableList(list);
+    }
+
+    private static boolean isBlank(String s) {
+        return s == null || s.isBlank();
+    }
+
+    private void registerMetrics(Route route) {
+        Gauge.builder("ai.route.latency", route, Route::latencyMs).tag("endpoint", route.name)
+                .baseUnit("milliseconds").register(registry);
+        Gauge.builder("ai.route.error.rate", route, Route::errorRate).tag("endpoint", route.name).register(registry);
+        Gauge.builder("ai.route.in-flight", route, r -> r.inFlight.get()).tag("endpoint", route.name).register(registry);
+        Gauge.builder("ai.route.available", route, r -> r.available(System.currentTimeMillis()) ? 1 : 0)
+                .tag("endpoint", route.name).register(registry);
+        route.successes = callTimer(route, "success");
+        route.errors = callTimer(route, "error");
+    }
+
+    private Timer callTimer(Route route, String outcome) {
+        return Timer.builder("ai.route.calls").tag("endpoint", route.name).tag("outcome", outcome).register(registry);
+    }
+
+    public List<Route> routes() {
+        return routes;
+    }
+
+    public Route select() {
+        if (routes.size() == 1) {
+            return routes.get(0);
+        }
+        long now = System.currentTimeMillis();
+        List<Route> candidates = new ArrayList<>(routes.size());
+        for (Route route : routes) {
+            if (route.available(now)) candidates.add(route);
+        }
+        if (candidates.isEmpty()) {
+            candidates = routes; // everything is cooling down, take the least bad one
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (candidates.size() > 1 && random.nextDouble() < exploreRatio) {
+            return candidates.get(random.nextInt(candidates.size()));
+        }
+        Route best = candidates.get(0);
+        double bestScore = score(best);
+        for (int i = 1; i < candidates.size(); i++) {
+            double s = score(candidates.get(i));
+            if (s < bestScore) {
+                best = candidates.get(i);
+                bestScore = s;
+            }
+        }
+        return best;
+    }
+
+    // expected latency: slower when busy, and inflated by the retries a failing endpoint costs
+    private double score(Route route) {
+        double errors = Math.min(route.errorRate(), 0.95);
+        return route.latencyMs() * (1 + loadPenalty * route.inFlight.get()) / (1 - errors);
+    }
+
+    /** Wraps a call to the route so its latency and outcome feed the route's stats. */
+    public <T> Mono<T> observe(Route route, Mono<T> call) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            route.inFlight.incrementAndGet();
+            return call
+                    .doOnTerminate(route.inFlight::decrementAndGet)
+                    .doOnSuccess(v -> record(route, System.nanoTime() - start, true))
+                    .doOnError(e -> record(route, System.nanoTime() - start, false))
+                    // cancelled by a timeout or a winning hedge: at least this slow, count it if that's news
+                    .doOnCancel(() -> {
+                        route.inFlight.decrementAndGet();
+                        route.recordLowerBound(System.nanoTime() - start, alpha);
+                    });
+        });
+    }
+
+    /**
+     * Streaming calls only feed the error rate, their duration depends on the answer length. The
+     * stream ends at the first element matching end (not emitted), which counts as a success.
+     */
+    public <T> Flux<T> observe(Route route, Flux<T> call, Predicate<? super T> end) {
+        return Flux.defer(() -> {
+            route.inFlight.incrementAndGet();
+            return call
+                    // cut here rather than downstream, so the hooks below see completion and not a cancel
+                    .takeWhile(item -> !end.test(item))
+                    .doOnTerminate(route.inFlight::decrementAndGet)
+                    .doOnCancel(route.inFlight::decrementAndGet)
+                    .doOnComplete(() -> route.recordOutcome(true, alpha, maxErrorRate, cooldownMs))
+                    .doOnError(e -> route.recordOutcome(false, alpha, maxErrorRate, cooldownMs));
+        });
+    }
+
+    void record(Route route, long nanos, boolean success) {
+        if (success) {
+            route.recordLatency(nanos, alpha);
+        }
+        route.recordOutcome(success, alpha, maxErrorRate, cooldownMs);
+        (success ? route.successes : route.errors).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public static final class Route {
+        private final String name;
+        private final String url;
+        private final String model;
+        private final String apiKey;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private Timer successes;
+        private Timer errors;
+
+        private double latencyMs;
+        private double errorRate;
+        private long cooldownUntil;
+
+        Route(String name, String url, String model, String apiKey, long initialLatencyMs) {
+            this.name = name;
+            this.url = url;
+            this.model = model;
+            this.apiKey = apiKey;
+            this.latencyMs = initialLatencyMs;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public String url() {
+            return url;
+        }
+
+        public String model() {
+            return model;
+        }
+
+        public String apiKey() {
+            return apiKey;
+        }
+
+        synchronized double latencyMs() {
+            return latencyMs;
+        }
+
+        synchronized double errorRate() {
+            return errorRate;
+        }
+
+        synchronized boolean available(long now) {
+            return now >= cooldownUntil;
+        }
+
+        synchronized void recordLatency(long nanos, double alpha) {
+            latencyMs += alpha * (nanos / 1e6 - latencyMs);
+        }
+
+        synchronized void recordLowerBound(long nanos, double alpha) {
+            double ms = nanos / 1e6;
+            if (ms > latencyMs) {
+                latencyMs += alpha * (ms - latencyMs);
+            }
+        }
+
+        synchronized void recordOutcome(boolean success, double alpha, double maxErrorRate, long cooldownMs) {
+            errorRate += alpha * ((success ? 0 : 1) - errorRate);
+            if (!success && errorRate > maxErrorRate) {
+                cooldownUntil = System.currentTimeMillis() + cooldownMs;
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.demo.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Runs BCrypt on a small CPU-sized pool so a login burst can't occupy every Tomcat thread.
+ * When the queue is full the submit methods throw RejectedExecutionException straight away;
+ * callers turn that into a 503. Results are completed on a separate pool, so whatever callers
+ * chain on them (saving the user, signing a token) never holds a hashing thread.
+ */
+@Service
+public class PasswordHashingService {
+
+    private final PasswordEncoder passwordEncoder;
+    private final ThreadPoolExecutor executor;
+    private final ThreadPoolExecutor completions;
+
+    private final Timer encodeTimer;
+    private final Timer matchTimer;
+    private final Counter rejected;
+    private final Counter rehashed;
+
+    public PasswordHashingService(PasswordEncoder passwordEncoder,
+                                  MeterRegistry registry,
+                                  @Value("${auth.hashing.threads:0}") int threads,
+                                  @Value("${auth.hashing.queue-capacity:64}") int queueCapacity,
+                                  @Value("${auth.hashing.completion-threads:8}") int completionThreads) {
+        this.passwordEncoder = passwordEncoder;
+
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "bcrypt-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        // unbounded queue: the hashing queue already caps how much work can be waiting here
+        AtomicInteger completionCount = new AtomicInteger();
+        this.completions = new ThreadPoolExecutor(completionThreads, completionThreads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> {
+                    Thread t = new Thread(r, "bcrypt-done-" + completionCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+
+        this.encodeTimer = Timer.builder("auth.password.hash").tag("op", "encode").register(registry);
+        this.matchTimer = Timer.builder("auth.password.hash").tag("op", "matches").register(registry);
+        this.rejected = Counter.builder("auth.password.rejected").register(registry);
+        this.rehashed = Counter.builder("auth.password.rehashed").register(registry);
+        Gauge.builder("auth.password.queue", executor, e -> e.getQueue().size()).register(registry);
+    }
+
+    public CompletableFuture<String> encode(String rawPassword) {
+        return submit(() -> encodeTimer.record(() -> passwordEncoder.encode(rawPassword)));
+    }
+
+    public CompletableFuture<Boolean> matches(String rawPassword, String encodedPassword) {
+        return submit(() -> matchTimer.record(() -> passwordEncoder.matches(rawPassword, encodedPassword)));
+    }
+
+    /** True when the stored hash was made with a lower cost than the encoder is configured for. */
+    public boolean needsRehash(String encodedPassword) {
+        return passwordEncoder.upgradeEncoding(encodedPassword);
+    }
+
+    /** Re-hashes in the background; skipped silently when the pool is saturated, the next login retries. */
+    public void rehashLater(String rawPassword, Consumer<String> onHashed) {
+        try {
+            encode(rawPassword).thenAccept(hash -> {
+                onHashed.accept(hash);
+                rehashed.increment();
+            });
+        } catch (RejectedExecutionException ignored) {
+        }
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> task) {
+        CompletableFuture<T> hashed;
+        try {
+            hashed = CompletableFuture.supplyAsync(task, executor);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw e;
+        }
+        CompletableFuture<T> result = new CompletableFuture<>();
+        hashed.whenComplete((value, error) -> completions.execute(() -> {
+            if (error != null) result.completeExceptionally(error);
+            else result.complete(value);
+        }));
+        return result;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+        completions.shutdown();
+    }
+}
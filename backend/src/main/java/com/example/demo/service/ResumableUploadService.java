@@ -0,0 +1,593 @@
+package com.example.demo.service;
+
+import com.example.demo.model.UploadSession;
+import com.example.demo.repository.UploadSessionRepo;
+import com.example.demo.storage.UploadStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Resumable uploads for files too large, or links too slow, for one multipart request.
+ *
+ * A client opens a session with the file's size, PUTs numbered chunks in any order (retrying any
+ * that fail), asks which chunks arrived after a dropped connection, and commits. Each chunk is
+ * copied from the request straight to its offset in a part file through one small buffer, so a
+ * file of any size costs the same heap; it is flushed before it counts as received. The SHA-256
+ * of the whole file is built while chunks arrive: a chunk that extends the hashed prefix is
+ * hashed as it streams, and chunks that arrived early are read back from disk once the gap before
+ * them is filled. After a restart the prefix is rebuilt from the part file the same way.
+ *
+ * Commit moves the part file into the UploadStore, where the session holds one reference until a
+ * case post or consult request takes it over with attach. Sessions idle past the TTL are deleted
+ * with their part file, or their reference if they were committed and never attached.
+ *
+ * Chunks of one session are written in parallel under its lock's read side; commit and expiry
+ * change the status under the write side, so no chunk is half-written when a commit starts
+ * hashing, and a chunk that waited re-reads the status and is refused. Only one request at a time
+ * may write a given chunk; a second gets 409 and retries. Chunks that were written more than once
+ * are read back and checked against their digest before the file goes into the UploadStore.
+ */
+@Service
+public class ResumableUploadService {
+
+    private static final int BUFFER = 64 * 1024;
+
+    private final UploadSessionRepo sessionRepo;
+    private final UploadStore uploadStore;
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+    private final long maxSize;
+    private final int defaultChunkSize;
+    private final int minChunkSize;
+    private final int maxChunkSize;
+    private final long ttlHours;
+    private final Path sessionDir;
+
+    // the running whole-file hash per session; rebuilt from disk when missing
+    private final Map<String, RunningHash> running = new ConcurrentHashMap<>();
+    private final Map<String, ReadWriteLock> locks = new ConcurrentHashMap<>();
+
+    private final Counter chunksReceived;
+    private final Counter chunksRejected;
+    private final Counter bytesReceived;
+    private final Counter committed;
+    private final Counter expired;
+
+    public ResumableUploadService(UploadSessionRepo sessionRepo, UploadStore uploadStore, JdbcTemplate jdbc,
+                                  PlatformTransactionManager transactionManager, MeterRegistry registry,
+                                  @Value("${cases.uploads.max-size:2147483648}") long maxSize,
+                                  @Value("${cases.uploads.chunk-size:8388608}") int defaultChunkSize,
+                                  @Value("${cases.uploads.min-chunk-size:262144}") int minChunkSize,
+                                  @Value("${cases.uploads.max-chunk-size:67108864}") int maxChunkSize,
+                                  @Value("${cases.uploads.session-ttl-hours:24}") long ttlHours) throws IOException {
+        this.sessionRepo = sessionRepo;
+        this.uploadStore = uploadStore;
+        this.jdbc = jdbc;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.maxSize = maxSize;
+        this.defaultChunkSize = defaultChunkSize;
+        this.minChunkSize = minChunkSize;
+        this.maxChunkSize = maxChunkSize;
+        this.ttlHours = ttlHours;
+        this.sessionDir = uploadStore.tmpDir().resolve("sessions");
+        Files.createDirectories(sessionDir);
+
+        this.chunksReceived = Counter.builder("cases.uploads.chunks").tag("result", "received").register(registry);
+        this.chunksRejected = Counter.builder("cases.uploads.chunks").tag("result", "rejected").register(registry);
+        this.bytesReceived = Counter.builder("cases.uploads.chunk.bytes").register(registry);
+        this.committed = Counter.builder("cases.uploads.sessions").tag("result", "committed").register(registry);
+        this.expired = Counter.builder("cases.uploads.sessions").tag("result", "expired").register(registry);
+    }
+
+    public UploadSession initiate(Long ownerId, String fileName, String contentType, Long size, Integer chunkSize) {
+        if (size == null || size <= 0) throw badRequest("size must be positive");
+        if (size > maxSize) {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, "Uploads are limited to " + maxSize + " bytes");
+        }
+        int chunk = chunkSize == null ? defaultChunkSize : chunkSize;
+        if (chunk < minChunkSize || chunk > maxChunkSize) {
+            throw badRequest("chunkSize must be between " + minChunkSize + " and " + maxChunkSize);
+        }
+        String name = fileName == null ? "" : StringUtils.cleanPath(fileName);
+        name = name.substring(name.lastIndexOf('/') + 1);
+        if (name.isBlank()) throw badRequest("fileName is required");
+
+        UploadSession session = new UploadSession();
+        session.setId(UUID.randomUUID().toString().replace("-", ""));
+        session.setOwnerId(ownerId);
+        session.setFileName(name);
+        session.setContentType(contentType);
+        session.setSize(size);
+        session.setChunkSize(chunk);
+        session.setChunkCount((int) ((size + chunk - 1) / chunk));
+        UploadSession saved = sessionRepo.save(session);
+        // chunks only ever open the part file, so none can bring it back once commit has moved it
+        try {
+            Files.createFile(partFile(saved.getId()));
+        } catch (IOException e) {
+            sessionRepo.delete(saved);
+            throw new UncheckedIOException(e);
+        }
+        return saved;
+    }
+
+    public UploadSession find(String id, Long ownerId) {
+        return sessionRepo.findByIdAndOwnerId(id, ownerId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Upload not found"));
+    }
+
+    /**
+     * Writes chunk index from the body. contentLength is -1 when the request did not say;
+     * chunkSha256, if given, is checked before the chunk counts as received.
+     */
+    public void writeChunk(String id, Long ownerId, int index, InputStream body, long contentLength,
+                           String chunkSha256) throws IOException {
+        find(id, ownerId);
+        Lock shared = lock(id).readLock();
+        shared.lock();
+        try {
+            writeChunkLocked(find(id, ownerId), index, body, contentLength, chunkSha256);
+        } catch (NoSuchFileException e) {
+            throw conflict("Upload is no longer open");
+        } finally {
+            shared.unlock();
+        }
+    }
+
+    private void writeChunkLocked(UploadSession session, int index, InputStream body, long contentLength,
+                                  String chunkSha256) throws IOException {
+        String id = session.getId();
+        if (!"open".equals(session.getStatus())) throw conflict("Upload is " + session.getStatus());
+        if (index < 0 || index >= session.getChunkCount()) {
+            throw badRequest("Chunk index must be between 0 and " + (session.getChunkCount() - 1));
+        }
+        long offset = (long) index * session.getChunkSize();
+        long expected = Math.min(session.getChunkSize(), session.getSize() - offset);
+        if (contentLength >= 0 && contentLength != expected) {
+            chunksRejected.increment();
+            throw badRequest("Chunk " + index + " must be " + expected + " bytes");
+        }
+
+        RunningHash hash = running(session);
+        // two bodies for one offset would leave either on disk while the digests record the other
+        if (!hash.startWrite(index)) {
+            chunksRejected.increment();
+            throw conflict("Chunk " + index + " is already being written");
+        }
+        // extending the hashed prefix: hash a copy while streaming, kept only if the chunk completes
+        MessageDigest prefix = hash.claim(index);
+        MessageDigest chunkDigest = sha256();
+        boolean complete = false;
+        try {
+            try (FileChannel channel = FileChannel.open(partFile(id), StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.allocate(BUFFER);
+                byte[] bytes = buffer.array();
+                long written = 0;
+                int n;
+                // asks for one byte past the chunk so an overlong body is noticed
+                while ((n = body.read(bytes, 0, (int) Math.min(bytes.length, expected - written + 1))) > 0) {
+                    if (written + n > expected) {
+                        chunksRejected.increment();
+                        throw badRequest("Chunk " + index + " is longer than " + expected + " bytes");
+                    }
+                    chunkDigest.update(bytes, 0, n);
+                    if (prefix != null) prefix.update(bytes, 0, n);
+                    buffer.clear().limit(n);
+                    while (buffer.hasRemaining()) channel.write(buffer, offset + written + buffer.position());
+                    written += n;
+                }
+                if (written != expected) {
+                    chunksRejected.increment();
+                    throw badRequest("Chunk " + index + " ended after " + written + " of " + expected + " bytes");
+                }
+                byte[] digest = chunkDigest.digest();
+                if (chunkSha256 != null && !HexFormat.of().formatHex(digest).equalsIgnoreCase(chunkSha256.trim())) {
+                    chunksRejected.increment();
+                    throw badRequest("Chunk " + index + " does not match its checksum");
+                }
+                channel.force(false);
+                hash.written(index, digest);
+                bytesReceived.increment(written);
+            }
+            jdbc.update("INSERT INTO upload_session_chunk (session_id, chunk_index) SELECT ?, ? " +
+                    "WHERE NOT EXISTS (SELECT 1 FROM upload_session_chunk WHERE session_id = ? AND chunk_index = ?)",
+                    id, index, id, index);
+            jdbc.update("UPDATE upload_session SET updated_at = ? WHERE id = ?", LocalDateTime.now(), id);
+            hash.received(index);
+            chunksReceived.increment();
+            complete = true;
+        } finally {
+            if (prefix != null) hash.release(complete ? prefix : null);
+            if (!complete && hash.isReceived(index)) {
+                jdbc.update("DELETE FROM upload_session_chunk WHERE session_id = ? AND chunk_index = ?", id, index);
+                hash.discarded(index);
+            }
+            hash.endWrite(index);
+        }
+        catchUp(session, hash);
+    }
+
+    /** Indexes of the chunks received so far, in order. */
+    public List<Integer> receivedChunks(String id) {
+        return jdbc.queryForList("SELECT chunk_index FROM upload_session_chunk WHERE session_id = ? ORDER BY chunk_index",
+                Integer.class, id);
+    }
+
+    /**
+     * Checks that every chunk is there and, if sha256 is given, that the file matches it, then
+     * moves the file into the UploadStore. A failed commit leaves the session open.
+     */
+    public UploadSession commit(String id, Long ownerId, String sha256) throws IOException {
+        UploadSession session = find(id, ownerId);
+        // waits for chunks being written; once the status has moved on, new ones are refused
+        Lock exclusive = lock(id).writeLock();
+        exclusive.lock();
+        try {
+            if (!transition(id, "open", "committing")) throw conflict("Upload is " + find(id, ownerId).getStatus());
+        } finally {
+            exclusive.unlock();
+        }
+        UploadStore.Blob blob = null;
+        try {
+            List<Integer> received = receivedChunks(id);
+            if (received.size() != session.getChunkCount()) {
+                throw conflict("Missing chunks " + String.join(",", missingRanges(received, session.getChunkCount())));
+            }
+            Path part = partFile(id);
+            if (Files.size(part) != session.getSize()) throw conflict("Upload has the wrong size, resend its chunks");
+
+            verifyRewritten(session);
+            String hash = fileHash(session);
+            if (sha256 != null && !hash.equalsIgnoreCase(sha256.trim())) {
+                throw badRequest("Upload does not match its checksum");
+            }
+            blob = uploadStore.adopt(part, hash);
+            String adopted = blob.hash();
+            if (!Boolean.TRUE.equals(tx.execute(status -> sessionRepo.committed(id, adopted, LocalDateTime.now()) > 0))) {
+                throw conflict("Upload was changed while committing");
+            }
+            running.remove(id);
+            locks.remove(id);
+            committed.increment();
+            return find(id, ownerId);
+        } catch (RuntimeException | IOException e) {
+            if (blob == null) transition(id, "committing", "open");
+            else uploadStore.release(blob.hash());
+            throw e;
+        }
+    }
+
+    /**
+     * Hands a committed upload's blob reference to whatever is being saved with it; returns the
+     * session with its fileHash. If that save fails, detach gives the reference back.
+     */
+    public UploadSession attach(String id, Long ownerId) {
+        find(id, ownerId);
+        if (!transition(id, "committed", "attached")) throw conflict("Upload is not committed, or already attached");
+        return find(id, ownerId);
+    }
+
+    public void detach(String id) {
+        transition(id, "attached", "committed");
+    }
+
+    /** Deletes sessions idle past the TTL; returns how many. */
+    @Scheduled(fixedDelayString = "${cases.uploads.sweep-interval-ms:3600000}",
+            initialDelayString = "${cases.uploads.sweep-interval-ms:3600000}")
+    public int expire() {
+        LocalDateTime cutoff = LocalDateTime.now().minusHours(ttlHours);
+        int count = 0;
+        for (UploadSession session : sessionRepo.findByUpdatedAtBefore(cutoff)) {
+            String id = session.getId();
+            // a chunk still being written means the session is in use after all
+            Lock exclusive = lock(id).writeLock();
+            if (!exclusive.tryLock()) continue;
+            Boolean deleted;
+            try {
+                // claims the row first, so a chunk or commit racing the sweep cannot resurrect it
+                deleted = tx.execute(status -> {
+                    if (jdbc.update("UPDATE upload_session SET status = 'expired' WHERE id = ? AND status = ? AND updated_at < ?",
+                            id, session.getStatus(), cutoff) == 0) {
+                        return false;
+                    }
+                    jdbc.update("DELETE FROM upload_session_chunk WHERE session_id = ?", id);
+                    jdbc.update("DELETE FROM upload_session WHERE id = ?", id);
+                    return true;
+                });
+            } finally {
+                exclusive.unlock();
+            }
+            if (!Boolean.TRUE.equals(deleted)) continue;
+            running.remove(id);
+            locks.remove(id);
+            if ("committed".equals(session.getStatus())) {
+                uploadStore.release(session.getFileHash());
+            } else {
+                try {
+                    Files.deleteIfExists(partFile(id));
+                } catch (IOException e) {
+                    System.out.println("Could not delete upload part " + id + ": " + e.getMessage());
+                }
+            }
+            count++;
+        }
+        expired.increment(count);
+        return count;
+    }
+
+    public Map<String, Object> view(UploadSession session) {
+        List<Integer> received = receivedChunks(session.getId());
+        long receivedBytes = 0;
+        for (int index : received) {
+            receivedBytes += Math.min(session.getChunkSize(), session.getSize() - (long) index * session.getChunkSize());
+        }
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("id", session.getId());
+        map.put("status", session.getStatus());
+        map.put("fileName", session.getFileName());
+        map.put("contentType", session.getContentType());
+        map.put("size", session.getSize());
+        map.put("chunkSize", session.getChunkSize());
+        map.put("chunkCount", session.getChunkCount());
+        map.put("receivedChunks", ranges(received));
+        map.put("receivedBytes", receivedBytes);
+        map.put("fileHash", session.getFileHash());
+        map.put("expiresAt", session.getUpdatedAt().plusHours(ttlHours));
+        return map;
+    }
+
+    Path partFile(String id) {
+        return sessionDir.resolve(id + ".part");
+    }
+
+    // hashes chunks that arrived ahead of the prefix, one at a time, while nobody else is extending it
+    private void catchUp(UploadSession session, RunningHash hash) throws IOException {
+        while (true) {
+            int index;
+            MessageDigest prefix;
+            synchronized (hash) {
+                if (hash.claimed || hash.next >= session.getChunkCount() || !hash.received.get(hash.next)) return;
+                index = hash.next;
+                // a chunk being rewritten is hashed by its writer; reading it now could mix both bodies
+                if (!hash.startWrite(index)) return;
+                prefix = hash.claim(index);
+            }
+            boolean complete = false;
+            try {
+                long offset = (long) index * session.getChunkSize();
+                hashRange(partFile(session.getId()), offset,
+                        Math.min(session.getChunkSize(), session.getSize() - offset), prefix);
+                complete = true;
+            } finally {
+                hash.release(complete ? prefix : null);
+                hash.endWrite(index);
+            }
+        }
+    }
+
+    // reads back every chunk written more than once, so adopt never files bytes under another hash
+    private void verifyRewritten(UploadSession session) throws IOException {
+        for (Map.Entry<Integer, byte[]> chunk : running(session).rewritten().entrySet()) {
+            int index = chunk.getKey();
+            long offset = (long) index * session.getChunkSize();
+            MessageDigest digest = sha256();
+            hashRange(partFile(session.getId()), offset,
+                    Math.min(session.getChunkSize(), session.getSize() - offset), digest);
+            if (!MessageDigest.isEqual(digest.digest(), chunk.getValue())) {
+                jdbc.update("DELETE FROM upload_session_chunk WHERE session_id = ? AND chunk_index = ?",
+                        session.getId(), index);
+                running(session).discarded(index);
+                throw conflict("Chunk " + index + " does not match what was received, resend it");
+            }
+        }
+    }
+
+    private String fileHash(UploadSession session) throws IOException {
+        RunningHash hash = running(session);
+        catchUp(session, hash);
+        synchronized (hash) {
+            if (!hash.claimed && hash.next == session.getChunkCount()) {
+                return HexFormat.of().formatHex(copy(hash.digest).digest());
+            }
+        }
+        // only when the prefix could not be built, e.g. a chunk failed to read back
+        MessageDigest digest = sha256();
+        hashRange(partFile(session.getId()), 0, session.getSize(), digest);
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static void hashRange(Path file, long offset, long length, MessageDigest digest) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER);
+            long position = offset;
+            long end = offset + length;
+            while (position < end) {
+                buffer.clear().limit((int) Math.min(BUFFER, end - position));
+                int n = channel.read(buffer, position);
+                if (n < 0) throw new IOException("Part file ends at " + position);
+                digest.update(buffer.array(), 0, n);
+                position += n;
+            }
+        }
+    }
+
+    private ReadWriteLock lock(String id) {
+        return locks.computeIfAbsent(id, k -> new ReentrantReadWriteLock());
+    }
+
+    private RunningHash running(UploadSession session) {
+        return running.computeIfAbsent(session.getId(), id -> {
+            RunningHash hash = new RunningHash(session.getChunkCount());
+            receivedChunks(id).forEach(hash::received);
+            return hash;
+        });
+    }
+
+    private boolean transition(String id, String from, String to) {
+        return Boolean.TRUE.equals(tx.execute(status -> sessionRepo.transition(id, from, to, LocalDateTime.now()) > 0));
+    }
+
+    static List<String> ranges(List<Integer> indexes) {
+        List<String> ranges = new ArrayList<>();
+        int i = 0;
+        while (i < indexes.size()) {
+            int start = indexes.get(i);
+            int end = start;
+            while (i + 1 < indexes.size() && indexes.get(i + 1) == end + 1) end = indexes.get(++i);
+            ranges.add(start + "-" + end);
+            i++;
+        }
+        return ranges;
+    }
+
+    private static List<String> missingRanges(List<Integer> received, int chunkCount) {
+        BitSet present = new BitSet(chunkCount);
+        received.forEach(present::set);
+        List<Integer> missing = new ArrayList<>();
+        for (int i = present.nextClearBit(0); i < chunkCount; i = present.nextClearBit(i + 1)) missing.add(i);
+        return ranges(missing);
+    }
+
+    private static ResponseStatusException badRequest(String message) {
+        return new ResponseStatusException(HttpStatus.BAD_REQUEST, message);
+    }
+
+    private static ResponseStatusException conflict(String message) {
+        return new ResponseStatusException(HttpStatus.CONFLICT, message);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MessageDigest copy(MessageDigest digest) {
+        try {
+            return (MessageDigest) digest.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** SHA-256 of chunks [0, next), and which chunks are on disk. */
+    private static final class RunningHash {
+        MessageDigest digest = sha256();
+        int next;
+        // one request at a time may extend the prefix, working on a copy of digest
+        boolean claimed;
+        // bumped when the prefix is thrown away, so a copy taken before that is not kept
+        int generation;
+        int claimedGeneration;
+        final BitSet received = new BitSet();
+        // chunks a request is writing, or catchUp is reading back
+        final BitSet writing = new BitSet();
+        // chunks written more than once since the service started
+        final BitSet rewritten = new BitSet();
+        // digest of each chunk as last written, to tell a retried chunk from a changed one
+        final byte[][] chunkDigests;
+
+        RunningHash(int chunkCount) {
+            this.chunkDigests = new byte[chunkCount][];
+        }
+
+        // a copy of digest to extend with chunk index, or null if index is not next or someone has it
+        synchronized MessageDigest claim(int index) {
+            if (claimed || index != next) return null;
+            claimed = true;
+            claimedGeneration = generation;
+            return copy(digest);
+        }
+
+        synchronized void release(MessageDigest extended) {
+            if (extended != null && claimedGeneration == generation) {
+                digest = extended;
+                next++;
+            }
+            claimed = false;
+        }
+
+        synchronized boolean startWrite(int index) {
+            if (writing.get(index)) return false;
+            writing.set(index);
+            return true;
+        }
+
+        synchronized void endWrite(int index) {
+            writing.clear(index);
+        }
+
+        synchronized void written(int index, byte[] chunkDigest) {
+            byte[] previous = chunkDigests[index];
+            chunkDigests[index] = chunkDigest;
+            if (previous != null) rewritten.set(index);
+            // a chunk already in the prefix came again with different bytes
+            if (index < next && !MessageDigest.isEqual(previous, chunkDigest)) reset();
+        }
+
+        synchronized void received(int index) {
+            received.set(index);
+        }
+
+        // digests of the rewritten chunks whose last write completed
+        synchronized Map<Integer, byte[]> rewritten() {
+            Map<Integer, byte[]> digests = new LinkedHashMap<>();
+            for (int i = rewritten.nextSetBit(0); i >= 0; i = rewritten.nextSetBit(i + 1)) {
+                if (chunkDigests[i] != null) digests.put(i, chunkDigests[i]);
+            }
+            return digests;
+        }
+
+        synchronized boolean isReceived(int index) {
+            return received.get(index);
+        }
+
+        // a rewrite of the chunk broke off, so its bytes on disk are no longer the ones received
+        synchronized void discarded(int index) {
+            received.clear(index);
+            chunkDigests[index] = null;
+            if (index < next) reset();
+        }
+
+        private void reset() {
+            digest = sha256();
+            next = 0;
+            generation++;
+        }
+    }
+}
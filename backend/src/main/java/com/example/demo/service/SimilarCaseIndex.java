@@ -0,0 +1,244 @@
+package com.example.demo.service;
+
+import com.example.demo.cache.LongHashSet;
+import com.example.demo.cache.LongIntHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * MinHash signatures and LSH buckets for finding case posts with similar symptoms.
+ *
+ * A post's text becomes a set of word tokens; its signature is the minimum of each of HASHES
+ * seeded hash functions over that set, so two signatures agree in a position with probability
+ * equal to the Jaccard similarity of their sets. Signatures are cut into BANDS bands of ROWS
+ * values; posts sharing any whole band land in the same bucket, which makes pairs above roughly
+ * (1/BANDS)^(1/ROWS) = 0.3 similarity likely to meet and pairs well below it unlikely. The
+ * candidates found that way are ranked by exact Jaccard on their token sets.
+ *
+ * Each doc keeps its sorted token hashes in one shared int pool and one slot per band; buckets
+ * are chains threaded through those slots with the chain heads in a LongIntHashMap, so the index
+ * is a few flat arrays. A lookup walks at most maxCandidates entries across the post's buckets,
+ * which keeps its cost independent of how many posts there are. Removal only marks the doc
+ * deleted; rebuilding from scratch drops the leftovers.
+ */
+public class SimilarCaseIndex {
+
+    static final int HASHES = 96;
+    static final int BANDS = 32;
+    static final int ROWS = HASHES / BANDS;
+    private static final long[] SEEDS = new long[HASHES];
+
+    static {
+        long seed = 0x5DEECE66DL;
+        for (int i = 0; i < HASHES; i++) {
+            seed = mix(seed + 0x9E3779B97F4A7C15L);
+            SEEDS[i] = seed;
+        }
+    }
+
+    public record Neighbor(long postId, double similarity) {
+    }
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final int maxCandidates;
+
+    private final LongIntHashMap docByPost = new LongIntHashMap();
+    private final LongIntHashMap bucketHeads = new LongIntHashMap();
+    private final BitSet deleted = new BitSet();
+    private long[] postIds = new long[1024];
+    // doc's token hashes are pool[starts[doc] .. starts[doc + 1]), sorted
+    private int[] starts = new int[1025];
+    private int[] pool = new int[16 * 1024];
+    // next[doc * BANDS + band] is the previous slot in the same bucket, -1 at the end
+    private int[] next = new int[1024 * BANDS];
+    private int docs;
+
+    public SimilarCaseIndex(int maxCandidates) {
+        this.maxCandidates = maxCandidates;
+    }
+
+    /** The token set a post is compared on, as sorted distinct hashes. */
+    public static int[] shingles(String symptoms, String description) {
+        LongHashSet set = new LongHashSet();
+        for (String text : new String[]{symptoms, description}) {
+            for (String token : DiagnosisCache.tokens(text)) set.add(hash(token) >>> 32);
+        }
+        int[] out = new int[set.size()];
+        int[] n = {0};
+        set.forEach(h -> out[n[0]++] = (int) h);
+        Arrays.sort(out);
+        return out;
+    }
+
+    static int[] signature(int[] shingles) {
+        int[] sig = new int[HASHES];
+        Arrays.fill(sig, Integer.MAX_VALUE);
+        for (int shingle : shingles) {
+            for (int i = 0; i < HASHES; i++) {
+                int h = (int) (mix(shingle ^ SEEDS[i]) >>> 33);
+                if (h < sig[i]) sig[i] = h;
+            }
+        }
+        return sig;
+    }
+
+    /** Indexes a post, replacing what was indexed for it before. Posts with no tokens are skipped. */
+    public void add(long postId, String symptoms, String description) {
+        int[] shingles = shingles(symptoms, description);
+        int[] sig = shingles.length == 0 ? null : signature(shingles);
+
+        lock.writeLock().lock();
+        try {
+            int old = docByPost.remove(postId, -1);
+            if (old >= 0) deleted.set(old);
+            if (sig == null) return;
+
+            int doc = docs++;
+            if (doc == postIds.length) {
+                int grown = doc + (doc >> 1);
+                postIds = Arrays.copyOf(postIds, grown);
+                starts = Arrays.copyOf(starts, grown + 1);
+                next = Arrays.copyOf(next, grown * BANDS);
+            }
+            int start = starts[doc];
+            if (start + shingles.length > pool.length) {
+                pool = Arrays.copyOf(pool, Math.max(start + shingles.length, pool.length + (pool.length >> 1)));
+            }
+            System.arraycopy(shingles, 0, pool, start, shingles.length);
+            starts[doc + 1] = start + shingles.length;
+            postIds[doc] = postId;
+            for (int band = 0; band < BANDS; band++) {
+                long key = bandKey(sig, band);
+                int slot = doc * BANDS + band;
+                next[slot] = bucketHeads.get(key, -1);
+                bucketHeads.put(key, slot);
+            }
+            docByPost.put(postId, doc);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(long postId) {
+        lock.writeLock().lock();
+        try {
+            int doc = docByPost.remove(postId, -1);
+            if (doc >= 0) deleted.set(doc);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Up to k posts most similar to the given one, best first; empty if it is not indexed. */
+    public List<Neighbor> similarTo(long postId, int k) {
+        lock.readLock().lock();
+        try {
+            int doc = docByPost.get(postId, -1);
+            if (doc < 0) return List.of();
+            return neighbors(Arrays.copyOfRange(pool, starts[doc], starts[doc + 1]), doc, k);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Up to k indexed posts most similar to free text, best first. */
+    public List<Neighbor> similarTo(String symptoms, String description, int k) {
+        int[] shingles = shingles(symptoms, description);
+        if (shingles.length == 0) return List.of();
+        lock.readLock().lock();
+        try {
+            return neighbors(shingles, -1, k);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<Neighbor> neighbors(int[] shingles, int self, int k) {
+        int[] sig = signature(shingles);
+        LongHashSet seen = new LongHashSet();
+        PriorityQueue<Neighbor> top = new PriorityQueue<>(k + 1, (a, b) -> a.similarity != b.similarity
+                ? Double.compare(a.similarity, b.similarity)
+                : Long.compare(a.postId, b.postId));
+        int walked = 0;
+        // round-robin over the bands so one crowded bucket cannot use up the whole budget
+        int[] cursors = new int[BANDS];
+        for (int band = 0; band < BANDS; band++) cursors[band] = bucketHeads.get(bandKey(sig, band), -1);
+        boolean more = true;
+        while (more && walked < maxCandidates) {
+            more = false;
+            for (int band = 0; band < BANDS && walked < maxCandidates; band++) {
+                int slot = cursors[band];
+                if (slot < 0) continue;
+                more = true;
+                cursors[band] = next[slot];
+                int doc = slot / BANDS;
+                walked++;
+                if (doc == self || deleted.get(doc) || !seen.add(doc)) continue;
+                double similarity = jaccard(shingles, 0, shingles.length, pool, starts[doc], starts[doc + 1]);
+                if (similarity == 0) continue;
+                top.add(new Neighbor(postIds[doc], similarity));
+                if (top.size() > k) top.poll();
+            }
+        }
+        List<Neighbor> result = new ArrayList<>(top);
+        result.sort(top.comparator().reversed());
+        return result;
+    }
+
+    private static long bandKey(int[] sig, int band) {
+        long h = band;
+        for (int r = 0; r < ROWS; r++) h = mix(h * 31 + sig[band * ROWS + r]);
+        return h;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return docByPost.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Exact Jaccard similarity of two sorted token sets. */
+    public static double jaccard(int[] a, int[] b) {
+        return jaccard(a, 0, a.length, b, 0, b.length);
+    }
+
+    private static double jaccard(int[] a, int aFrom, int aTo, int[] b, int bFrom, int bTo) {
+        int i = aFrom;
+        int j = bFrom;
+        int common = 0;
+        while (i < aTo && j < bTo) {
+            if (a[i] == b[j]) {
+                common++;
+                i++;
+                j++;
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        int union = (aTo - aFrom) + (bTo - bFrom) - common;
+        return union == 0 ? 0 : (double) common / union;
+    }
+
+    static long hash(String token) {
+        long h = 1125899906842597L;
+        for (int i = 0; i < token.length(); i++) h = 31 * h + token.charAt(i);
+        return mix(h);
+    }
+
+    // splitmix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.demo.service;
+
+import com.example.demo.model.CasePost;
+import com.example.demo.model.CasePostSummary;
+import com.example.demo.model.CaseSearchRow;
+import com.example.demo.model.SimilarCase;
+import com.example.demo.repository.CasePostRepo;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Similar past cases for a post, by symptoms and description. Keeps a SimilarCaseIndex current
+ * as posts are created and deleted, and rebuilds it from case_post at startup and nightly after
+ * the cleanup, which also sheds the entries of deleted posts.
+ */
+@Service
+public class SimilarCaseService {
+
+    private final CasePostRepo postRepo;
+    private final LikeService likeService;
+    private final int maxCandidates;
+    private final int maxResults;
+    private final Timer lookupTimer;
+
+    private volatile SimilarCaseIndex index;
+    // while a rebuild runs, changes go to the new index too so none are lost in the swap. The
+    // rebuild publishes index before clearing building and writers read building first, so a
+    // writer that misses building is sure to see the new index.
+    private volatile SimilarCaseIndex building;
+
+    public SimilarCaseService(CasePostRepo postRepo, LikeService likeService, MeterRegistry registry,
+                              @Value("${cases.similar.max-candidates:500}") int maxCandidates,
+                              @Value("${cases.similar.max-results:20}") int maxResults) {
+        this.postRepo = postRepo;
+        this.likeService = likeService;
+        this.maxCandidates = maxCandidates;
+        this.maxResults = maxResults;
+        this.index = new SimilarCaseIndex(maxCandidates);
+        this.lookupTimer = Timer.builder("cases.similar.lookup").register(registry);
+        Gauge.builder("cases.similar.docs", this, s -> s.index.size()).register(registry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "${cases.similar.rebuild-cron:0 30 2 * * ?}")
+    @Transactional(readOnly = true)
+    public synchronized void rebuild() {
+        long start = System.currentTimeMillis();
+        SimilarCaseIndex fresh = new SimilarCaseIndex(maxCandidates);
+        building = fresh;
+        try (Stream<CaseSearchRow> rows = postRepo.streamSearchRows()) {
+            rows.forEach(row -> fresh.add(row.getId(), row.getSymptoms(), row.getDescription()));
+            index = fresh;
+        } finally {
+            building = null;
+        }
+        System.out.println("Built similar-case index over " + fresh.size() + " posts in "
+                + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    public void postCreated(CasePost post) {
+        SimilarCaseIndex next = building;
+        index.add(post.getId(), post.getSymptoms(), post.getDescription());
+        if (next != null) next.add(post.getId(), post.getSymptoms(), post.getDescription());
+    }
+
+    public void postsDeleted(Collection<Long> postIds) {
+        SimilarCaseIndex next = building;
+        for (Long id : postIds) {
+            index.remove(id);
+            if (next != null) next.remove(id);
+        }
+    }
+
+    public List<SimilarCase> similarTo(Long postId, int k) {
+        if (!postRepo.existsById(postId)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Post not found");
+        }
+        List<SimilarCaseIndex.Neighbor> neighbors = lookupTimer.record(
+                () -> index.similarTo(postId, Math.max(1, Math.min(k, maxResults))));
+        if (neighbors.isEmpty()) return List.of();
+
+        List<Long> ids = new ArrayList<>(neighbors.size());
+        neighbors.forEach(n -> ids.add(n.postId()));
+        Map<Long, CasePostSummary> summaries = new HashMap<>();
+        for (CasePostSummary s : postRepo.findSummaries(ids)) summaries.put(s.getId(), s);
+
+        List<SimilarCase> results = new ArrayList<>(neighbors.size());
+        for (SimilarCaseIndex.Neighbor n : neighbors) {
+            CasePostSummary summary = summaries.get(n.postId());
+            if (summary == null) continue;
+            long likes = likeService.currentLikes(summary.getId(), summary.getLikes());
+            results.add(new SimilarCase(summary.withLikes((int) likes), n.similarity()));
+        }
+        return results;
+    }
+}
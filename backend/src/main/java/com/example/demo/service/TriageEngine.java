@@ -0,0 +1,174 @@
+package com.example.demo.service;
+
+import com.example.demo.model.AIDiagnosis;
+import com.example.demo.model.Condition;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Local, rule-based triage: maps symptom phrases to conditions and recommended tests from a
+ * weighted knowledge table (triage/knowledge.json), loaded once at startup. Answers in
+ * microseconds with the same AIDiagnosis shape as the LLM, so it can be shown straight away and
+ * used when the LLM is too slow or unavailable.
+ *
+ * Input is split into clauses on punctuation and "and"/"with"; a symptom phrase matches when all
+ * of its words appear in one clause, in any order ("pain in chest" matches "chest pain").
+ */
+@Component
+public class TriageEngine {
+
+    private static final Pattern CLAUSES = Pattern.compile("[,;.\\n/]+|\\b(?:and|with|but|plus)\\b");
+
+    // Headroom in the probability denominator for "none of the known conditions"
+    private static final double UNKNOWN_WEIGHT = 2.0;
+
+    private final List<Entry> entries;
+    private final Map<String, List<Phrase>> index;
+    private final int maxConditions;
+
+    public TriageEngine(@Value("${ai.triage.knowledge:classpath:triage/knowledge.json}") Resource knowledge,
+                        @Value("${ai.triage.max-conditions:5}") int maxConditions) {
+        this.maxConditions = maxConditions;
+        this.entries = load(knowledge);
+        Map<String, List<Phrase>> byToken = new HashMap<>();
+        for (Entry entry : entries) {
+            for (int g = 0; g < entry.weights.length; g++) {
+                for (List<String> words : entry.phrases.get(g)) {
+                    Phrase phrase = new Phrase(entry, g, words);
+                    // one index slot per phrase is enough, every word of it must be in the clause anyway
+                    byToken.computeIfAbsent(words.get(0), k -> new ArrayList<>()).add(phrase);
+                }
+            }
+        }
+        this.index = byToken;
+    }
+
+    private static List<Entry> load(Resource knowledge) {
+        try (InputStream in = knowledge.getInputStream()) {
+            JsonNode root = new ObjectMapper().readTree(in);
+            List<Entry> list = new ArrayList<>();
+            for (JsonNode node : root.path("conditions")) {
+                List<List<List<String>>> phrases = new ArrayList<>();
+                List<Double> weights = new ArrayList<>();
+                for (Map.Entry<String, JsonNode> symptom : node.path("symptoms").properties()) {
+                    List<List<String>> alternatives = new ArrayList<>();
+                    for (String alternative : symptom.getKey().split("\\|")) {
+                        List<String> words = DiagnosisCache.tokens(alternative);
+                        if (!words.isEmpty()) alternatives.add(words);
+                    }
+                    if (alternatives.isEmpty()) continue;
+                    phrases.add(alternatives);
+                    weights.add(symptom.getValue().asDouble());
+                }
+                List<String> tests = new ArrayList<>();
+                node.path("tests").forEach(t -> tests.add(t.asText()));
+                list.add(new Entry(node.path("name").asText(), node.path("description").asText(),
+                        tests, phrases, weights.stream().mapToDouble(Double::doubleValue).toArray()));
+            }
+            if (list.isEmpty()) {
+                throw new IllegalStateException("Triage knowledge table has no conditions: " + knowledge);
+            }
+            return list;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not load triage knowledge table " + knowledge, e);
+        }
+    }
+
+    /**
+     * Ranked conditions and their recommended tests for free-text symptoms. Returns a diagnosis
+     * with empty lists when nothing in the table matches.
+     */
+    public AIDiagnosis triage(String symptoms) {
+        Map<Entry, boolean[]> matched = new HashMap<>();
+        if (symptoms != null) {
+            for (String clause : CLAUSES.split(symptoms.toLowerCase())) {
+                // negated words come back as no_<word>, so "no chest pain" matches no phrase
+                Set<String> words = new HashSet<>(DiagnosisCache.tokens(clause));
+                for (String word : words) {
+                    for (Phrase phrase : index.getOrDefault(word, Collections.emptyList())) {
+                        if (words.containsAll(phrase.words)) {
+                            matched.computeIfAbsent(phrase.entry, e -> new boolean[e.weights.length])[phrase.group] = true;
+                        }
+                    }
+                }
+            }
+        }
+
+        List<Scored> scored = new ArrayList<>(matched.size());
+        double total = 0;
+        for (Map.Entry<Entry, boolean[]> m : matched.entrySet()) {
+            Entry entry = m.getKey();
+            double hit = 0;
+            for (int g = 0; g < entry.weights.length; g++) {
+                if (m.getValue()[g]) hit += entry.weights[g];
+            }
+            // favours conditions that explain more of their own typical picture
+            double score = hit * Math.sqrt(hit / entry.totalWeight);
+            scored.add(new Scored(entry, score));
+            total += score;
+        }
+        scored.sort((a, b) -> Double.compare(b.score, a.score));
+
+        AIDiagnosis diagnosis = new AIDiagnosis();
+        List<Condition> conditions = new ArrayList<>();
+        Set<String> tests = new LinkedHashSet<>();
+        for (Scored s : scored.subList(0, Math.min(maxConditions, scored.size()))) {
+            Condition condition = new Condition();
+            condition.setCondition(s.entry.name);
+            condition.setDescription(s.entry.description);
+            condition.setProbability(Math.round(s.score / (total + UNKNOWN_WEIGHT) * 100) / 100.0);
+            conditions.add(condition);
+            tests.addAll(s.entry.tests);
+        }
+        diagnosis.setPossibleConditions(conditions);
+        diagnosis.setRecommendedTests(new ArrayList<>(tests));
+        return diagnosis;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private static final class Entry {
+        final String name;
+        final String description;
+        final List<String> tests;
+        // per symptom group: its alternative phrasings, each as normalized words
+        final List<List<List<String>>> phrases;
+        final double[] weights;
+        final double totalWeight;
+
+        Entry(String name, String description, List<String> tests, List<List<List<String>>> phrases, double[] weights) {
+            this.name = name;
+            this.description = description;
+            this.tests = tests;
+            this.phrases = phrases;
+            this.weights = weights;
+            double sum = 0;
+            for (double w : weights) sum += w;
+            this.totalWeight = sum;
+        }
+    }
+
+    private record Phrase(Entry entry, int group, List<String> words) {
+    }
+
+    private record Scored(Entry entry, double score) {
+    }
+}
@@ -0,0 +1,185 @@
+package com.example.demo.storage;
+
+import com.example.demo.model.UploadBlob;
+import com.example.demo.repository.UploadBlobRepo;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * UploadStore on the local disk, addressed by SHA-256.
+ *
+ * An upload is streamed to a temp file while it is hashed, then moved to blobs/ab/cd/<hash> -
+ * two levels of 256 directories so no directory grows past a few thousand entries. If that path
+ * already exists the temp file is just deleted. Files derived from a blob sit next to it as
+ * <hash>.<suffix> and are deleted with it. Reference counts live in upload_blob. Storing and
+ * releasing the same hash is serialized on a lock stripe, so a blob is never deleted between
+ * another upload finding it and counting its reference; that assumes one instance owns the
+ * directory.
+ */
+@Service
+public class ContentAddressedUploadStore implements UploadStore {
+
+    private static final Pattern HASH = Pattern.compile("[0-9a-f]{64}");
+    private static final int STRIPES = 64;
+
+    private final UploadBlobRepo blobRepo;
+    private final TransactionTemplate tx;
+    private final Path blobDir;
+    private final Path tmpDir;
+    private final Object[] locks = new Object[STRIPES];
+
+    private final Counter storedNew;
+    private final Counter storedDuplicate;
+    private final Counter bytesDeduplicated;
+
+    public ContentAddressedUploadStore(UploadBlobRepo blobRepo, PlatformTransactionManager transactionManager,
+                                       MeterRegistry registry,
+                                       @Value("${cases.uploads.dir:uploads}") String uploadDir) throws IOException {
+        this.blobRepo = blobRepo;
+        this.tx = new TransactionTemplate(transactionManager);
+        Path root = Paths.get(uploadDir).toAbsolutePath().normalize();
+        this.blobDir = root.resolve("blobs");
+        this.tmpDir = root.resolve("tmp");
+        Files.createDirectories(blobDir);
+        Files.createDirectories(tmpDir);
+        for (int i = 0; i < STRIPES; i++) locks[i] = new Object();
+
+        this.storedNew = Counter.builder("cases.uploads.stored").tag("result", "new").register(registry);
+        this.storedDuplicate = Counter.builder("cases.uploads.stored").tag("result", "duplicate").register(registry);
+        this.bytesDeduplicated = Counter.builder("cases.uploads.deduplicated.bytes").register(registry);
+    }
+
+    @Override
+    public Blob store(InputStream in) throws IOException {
+        Path tmp = Files.createTempFile(tmpDir, "upload", ".tmp");
+        try {
+            MessageDigest digest = sha256();
+            try (OutputStream out = new DigestOutputStream(Files.newOutputStream(tmp), digest)) {
+                in.transferTo(out);
+            }
+            return adopt(tmp, HexFormat.of().formatHex(digest.digest()));
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    @Override
+    public Blob adopt(Path file, String hash) throws IOException {
+        if (!HASH.matcher(hash).matches()) throw new IllegalArgumentException("Bad hash " + hash);
+        long size = Files.size(file);
+        Path target = path(hash);
+        synchronized (lock(hash)) {
+            boolean duplicate = Files.exists(target);
+            if (duplicate) {
+                Files.delete(file);
+            } else {
+                Files.createDirectories(target.getParent());
+                move(file, target);
+            }
+            tx.executeWithoutResult(status -> {
+                if (blobRepo.retain(hash) == 0) {
+                    UploadBlob blob = new UploadBlob();
+                    blob.setHash(hash);
+                    blob.setSize(size);
+                    blob.setRefCount(1);
+                    blobRepo.save(blob);
+                }
+            });
+            if (duplicate) {
+                storedDuplicate.increment();
+                bytesDeduplicated.increment(size);
+            } else {
+                storedNew.increment();
+            }
+            return new Blob(hash, size, duplicate);
+        }
+    }
+
+    @Override
+    public long release(String hash) {
+        if (!HASH.matcher(hash).matches()) return 0;
+        synchronized (lock(hash)) {
+            Boolean last = tx.execute(status -> blobRepo.release(hash) > 0 && blobRepo.deleteIfUnreferenced(hash) > 0);
+            if (!Boolean.TRUE.equals(last)) return 0;
+            Path path = path(hash);
+            long freed = 0;
+            try {
+                freed += Files.size(path);
+                Files.delete(path);
+                try (DirectoryStream<Path> derivatives = Files.newDirectoryStream(path.getParent(), hash + ".*")) {
+                    for (Path derivative : derivatives) {
+                        freed += Files.size(derivative);
+                        Files.delete(derivative);
+                    }
+                }
+            } catch (IOException e) {
+                System.out.println("Could not delete blob " + hash + ": " + e.getMessage());
+            }
+            return freed;
+        }
+    }
+
+    @Override
+    public Optional<Path> locate(String hash) {
+        if (!HASH.matcher(hash).matches()) return Optional.empty();
+        Path path = path(hash);
+        return Files.isRegularFile(path) ? Optional.of(path) : Optional.empty();
+    }
+
+    @Override
+    public Path derivativePath(String hash, String suffix) {
+        if (!HASH.matcher(hash).matches() || !suffix.matches("[a-z0-9.]+")) {
+            throw new IllegalArgumentException("Bad derivative " + hash + "." + suffix);
+        }
+        return path(hash).resolveSibling(hash + "." + suffix);
+    }
+
+    @Override
+    public Path tmpDir() {
+        return tmpDir;
+    }
+
+    private Path path(String hash) {
+        return blobDir.resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(hash);
+    }
+
+    private Object lock(String hash) {
+        return locks[Integer.parseInt(hash.substring(0, 2), 16) % STRIPES];
+    }
+
+    private static void move(Path from, Path to) throws IOException {
+        try {
+            Files.move(from, to, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(from, to, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.demo.storage;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+
+/**
+ * Writes a file from disk as an HTTP response with validators, caching and byte ranges.
+ *
+ * GET and HEAD get an ETag and Last-Modified; a matching If-None-Match (or, without one,
+ * If-Modified-Since) answers 304. A single "Range: bytes=..." answers 206 with just that slice,
+ * unless an If-Range says the client holds a different version; several ranges are served as the
+ * whole file. Content-addressed files never change, so they are cached as immutable; anything
+ * else must be revalidated. The body goes out through Tomcat's sendfile when the connector offers
+ * it, so the bytes never pass through the JVM, and through FileChannel.transferTo otherwise.
+ */
+@Component
+public class FileResponder {
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    static final long[] UNSATISFIABLE = new long[0];
+
+    static final String IMMUTABLE = "private, max-age=31536000, immutable";
+    static final String REVALIDATE = "private, no-cache";
+
+    // shown in the browser rather than saved; nothing here can run script
+    private static final Set<String> INLINE = Set.of(
+            "image/png", "image/jpeg", "image/gif", "image/webp", "image/bmp", "image/tiff", "application/pdf");
+
+    /**
+     * @param etag      a strong, quoted ETag for content-addressed files, or null to derive a weak
+     *                  one from size and modification time
+     * @param immutable whether the content at this URL can never change
+     */
+    public void serve(Path file, String etag, String fileName, boolean immutable,
+                      HttpServletRequest request, HttpServletResponse response) throws IOException {
+        long length;
+        long lastModified;
+        try {
+            length = Files.size(file);
+            // HTTP dates have second precision
+            lastModified = Files.getLastModifiedTime(file).toMillis() / 1000 * 1000;
+        } catch (IOException e) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        if (etag == null) etag = "W/\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, lastModified);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, immutable ? IMMUTABLE : REVALIDATE);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        if (notModified(request, etag, lastModified)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        MediaType type = MediaTypeFactory.getMediaType(fileName).orElse(MediaType.APPLICATION_OCTET_STREAM);
+        response.setContentType(type.toString());
+        ContentDisposition.Builder disposition = INLINE.contains(type.getType() + "/" + type.getSubtype())
+                ? ContentDisposition.inline() : ContentDisposition.attachment();
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                disposition.filename(fileName, StandardCharsets.UTF_8).build().toString());
+
+        long start = 0;
+        long end = length;
+        String range = request.getHeader(HttpHeaders.RANGE);
+        if (range != null && rangeApplies(request, etag, lastModified)) {
+            long[] slice = parseRange(range, length);
+            if (slice == UNSATISFIABLE) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            if (slice != null) {
+                start = slice[0];
+                end = slice[1];
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + (end - 1) + "/" + length);
+            }
+        }
+        response.setContentLengthLong(end - start);
+        if ("HEAD".equals(request.getMethod()) || end == start) return;
+
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            while (position < end) {
+                long sent = channel.transferTo(position, end - position, out);
+                if (sent <= 0) break;
+                position += sent;
+            }
+        }
+    }
+
+    private static boolean notModified(HttpServletRequest request, String etag, long lastModified) {
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null) return matches(ifNoneMatch, etag, false);
+        long ifModifiedSince = dateHeader(request, HttpHeaders.IF_MODIFIED_SINCE);
+        return ifModifiedSince >= 0 && lastModified <= ifModifiedSince;
+    }
+
+    // If-Range names the version the client has; a range of any other version would corrupt its copy
+    private static boolean rangeApplies(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) return true;
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) return matches(ifRange, etag, true);
+        return dateHeader(request, HttpHeaders.IF_RANGE) == lastModified;
+    }
+
+    private static boolean matches(String header, String etag, boolean strong) {
+        if (strong && etag.startsWith("W/")) return false;
+        String opaque = etag.startsWith("W/") ? etag.substring(2) : etag;
+        for (String candidate : header.split(",")) {
+            String c = candidate.trim();
+            if (c.equals("*") && !strong) return true;
+            if (c.startsWith("W/")) {
+                if (strong) continue;
+                c = c.substring(2);
+            }
+            if (c.equals(opaque)) return true;
+        }
+        return false;
+    }
+
+    private static long dateHeader(HttpServletRequest request, String name) {
+        try {
+            return request.getDateHeader(name);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    /** [start, end) of a single byte range, null to serve the whole file, or UNSATISFIABLE. */
+    static long[] parseRange(String header, long length) {
+        if (!header.startsWith("bytes=")) return null;
+        String spec = header.substring("bytes=".length()).trim();
+        if (spec.contains(",")) return null;
+        int dash = spec.indexOf('-');
+        if (dash < 0) return null;
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            if (first.isEmpty()) {
+                // suffix: the last n bytes
+                long n = Long.parseLong(last);
+                if (n <= 0 || length == 0) return UNSATISFIABLE;
+                return new long[]{Math.max(0, length - n), length};
+            }
+            long start = Long.parseLong(first);
+            if (start >= length) return UNSATISFIABLE;
+            long end = last.isEmpty() ? length : Long.parseLong(last) + 1;
+            if (end <= start) return null;
+            return new long[]{start, Math.min(end, length)};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.demo.storage;
+
+import com.example.demo.controller.CasesCtrl;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Moves attachments from the old flat uploads/ directory (UUID_name files) into the UploadStore
+ * and points their posts at the stored blob. Runs at startup; posts that already have a hash are
+ * skipped, so it is a no-op once everything has moved. A file is deleted only after its post has
+ * been updated, and a missing file leaves the post as it was.
+ */
+@Component
+public class UploadMigration {
+
+    private static final String LEGACY_PREFIX = "/case-posts/file/";
+    private static final int PAGE = 500;
+
+    private final JdbcTemplate jdbc;
+    private final UploadStore uploadStore;
+    private final Path uploadDir;
+
+    public UploadMigration(JdbcTemplate jdbc, UploadStore uploadStore,
+                           @Value("${cases.uploads.dir:uploads}") String uploadDir) {
+        this.jdbc = jdbc;
+        this.uploadStore = uploadStore;
+        this.uploadDir = Paths.get(uploadDir).toAbsolutePath().normalize();
+    }
+
+    private record LegacyFile(long postId, String fileName, String fileUrl) {
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrate() {
+        long afterId = 0;
+        int moved = 0, missing = 0, deduplicated = 0;
+        while (true) {
+            List<LegacyFile> page = new ArrayList<>();
+            jdbc.query("SELECT id, file_name, file_url FROM case_post WHERE file_hash IS NULL AND file_url LIKE ? " +
+                            "AND id > ? ORDER BY id LIMIT ?",
+                    rs -> {
+                        page.add(new LegacyFile(rs.getLong(1), rs.getString(2), rs.getString(3)));
+                    }, LEGACY_PREFIX + "%", afterId, PAGE);
+            if (page.isEmpty()) break;
+
+            for (LegacyFile legacy : page) {
+                afterId = legacy.postId();
+                Path file = uploadDir.resolve(legacy.fileUrl().substring(LEGACY_PREFIX.length())).normalize();
+                if (!uploadDir.equals(file.getParent()) || !Files.isRegularFile(file)) {
+                    missing++;
+                    continue;
+                }
+                try {
+                    UploadStore.Blob blob;
+                    try (InputStream in = Files.newInputStream(file)) {
+                        blob = uploadStore.store(in);
+                    }
+                    int updated = jdbc.update("UPDATE case_post SET file_hash = ?, file_url = ? WHERE id = ? AND file_hash IS NULL",
+                            blob.hash(), CasesCtrl.fileUrl(blob.hash(), legacy.fileName()), legacy.postId());
+                    if (updated == 0) {
+                        // deleted or migrated meanwhile, give the reference back
+                        uploadStore.release(blob.hash());
+                        continue;
+                    }
+                    Files.deleteIfExists(file);
+                    moved++;
+                    if (blob.deduplicated()) deduplicated++;
+                } catch (IOException e) {
+                    System.out.println("Could not migrate upload for post " + legacy.postId() + ": " + e.getMessage());
+                }
+            }
+        }
+        if (moved > 0 || missing > 0) {
+            System.out.println("Moved " + moved + " uploads into the content-addressed store (" + deduplicated
+                    + " duplicates), " + missing + " files missing");
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.demo.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Where case-post attachments live. Uploads are stored by content, so storing the same bytes
+ * twice keeps one copy with two references; the copy goes when the last reference is released.
+ */
+public interface UploadStore {
+
+    record Blob(String hash, long size, boolean deduplicated) {
+    }
+
+    /** Stores the stream's content and takes one reference to it. */
+    Blob store(InputStream in) throws IOException;
+
+    /**
+     * Stores a complete file that is already on disk, moving it rather than copying when it is
+     * on the same file system as tmpDir(); hash is its SHA-256, which the caller has computed.
+     * Takes one reference, and the file is gone from its old path afterwards.
+     */
+    Blob adopt(Path file, String hash) throws IOException;
+
+    /** Drops one reference; returns the bytes freed if that was the last one, else 0. */
+    long release(String hash);
+
+    /** The stored file for a hash, if there is one. */
+    Optional<Path> locate(String hash);
+
+    /** Where a file derived from a blob (a resized image, say) is kept; it goes when the blob goes. */
+    Path derivativePath(String hash, String suffix);
+
+    /** A directory for temp files on the same file system, so finished files can be moved into place. */
+    Path tmpDir();
+}
@@ -0,0 +1,187 @@
+package com.example.demo.ai;
+
+import com.example.demo.AiClientConfig;
+import com.example.demo.controller.AiDiagCtrl;
+import com.example.demo.controller.HomeCtrl;
+import com.example.demo.service.AiResilience;
+import com.example.demo.service.AiService;
+import com.example.demo.service.DiagnosisCache;
+import com.example.demo.service.HealthFactsService;
+import com.example.demo.service.ModelRouter;
+import com.example.demo.service.TriageEngine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+/**
+ * Load run of /aiDiag and /facts against FakeOpenRouterServer, with the real AI service stack
+ * (single-flight, diagnosis cache, resilience, facts pool) but no database or network.
+ * Prints throughput and latency percentiles per endpoint.
+ *
+ * Tagged "load" and left out of the default build; run it with
+ * mvn test -Dtest=AiLoadTest -Dtest.excludedGroups= and size it with
+ * -Dload.requests=5000 -Dload.concurrency=200 for a longer run.
+ */
+@Tag("load")
+@SpringJUnitConfig(classes = {AiService.class, DiagnosisCache.class, AiResilience.class, AiClientConfig.class,
+        HealthFactsService.class, ModelRouter.class, TriageEngine.class, AiDiagCtrl.class, HomeCtrl.class, AiLoadTest.TestBeans.class})
+@TestPropertySource(properties = {
+        "openrouter.api.key=test-key",
+        "facts.pool.file=target/load-test/facts-pool.json",
+        "ai.resilience.max-concurrent=64",
+        "ai.resilience.max-queued=4096",
+        "ai.resilience.retry-backoff-ms=20"
+})
+class AiLoadTest {
+
+    private static final String[] SYMPTOMS = {
+            "fever", "headache", "cough", "fatigue", "nausea", "vomiting", "dizziness", "rash",
+            "chest pain", "back pain", "sore throat", "runny nose", "shortness of breath", "abdominal pain",
+            "joint pain", "chills", "blurred vision", "insomnia", "diarrhea", "loss of appetite"
+    };
+
+    private static final int REQUESTS = Integer.getInteger("load.requests", 300);
+    private static final int CONCURRENCY = Integer.getInteger("load.concurrency", 32);
+
+    private static FakeOpenRouterServer fake;
+
+    @Configuration
+    static class TestBeans {
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    @DynamicPropertySource
+    static void fakeProvider(DynamicPropertyRegistry registry) throws IOException {
+        fake = new FakeOpenRouterServer().latency(40, 60).errors(0.05, 503);
+        registry.add("openrouter.api.url", fake::url);
+    }
+
+    @AfterAll
+    static void stopFake() {
+        fake.close();
+    }
+
+    @Autowired
+    private AiDiagCtrl aiDiagCtrl;
+
+    @Autowired
+    private HomeCtrl homeCtrl;
+
+    private MockMvc mvc;
+
+    @BeforeEach
+    void setUp() {
+        mvc = MockMvcBuilders.standaloneSetup(aiDiagCtrl, homeCtrl).build();
+    }
+
+    @Test
+    void aiDiagUnderLoad() throws Exception {
+        Report report = run("/aiDiag", i -> {
+            Random random = new Random(i);
+            List<String> picked = new ArrayList<>();
+            for (int k = 0; k < 2 + random.nextInt(2); k++) {
+                picked.add(SYMPTOMS[random.nextInt(SYMPTOMS.length)]);
+            }
+            return post("/aiDiag")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content("{\"symptoms\":\"" + String.join(", ", picked) + "\"}");
+        });
+        assertTrue(report.successRate() > 0.95, "success rate " + report.successRate());
+    }
+
+    @Test
+    void factsUnderLoad() throws Exception {
+        Report report = run("/facts", i -> get("/facts"));
+        assertTrue(report.successRate() > 0.99, "success rate " + report.successRate());
+    }
+
+    private Report run(String name, IntFunction<RequestBuilder> request) throws Exception {
+        long upstreamBefore = fake.requestCount();
+        List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger ok = new AtomicInteger();
+        AtomicInteger next = new AtomicInteger();
+
+        ExecutorService clients = Executors.newFixedThreadPool(CONCURRENCY);
+        long start = System.nanoTime();
+        for (int c = 0; c < CONCURRENCY; c++) {
+            clients.submit(() -> {
+                int i;
+                while ((i = next.getAndIncrement()) < REQUESTS) {
+                    long t0 = System.nanoTime();
+                    try {
+                        MvcResult started = mvc.perform(request.apply(i)).andReturn();
+                        MvcResult done = started.getRequest().isAsyncStarted()
+                                ? mvc.perform(asyncDispatch(started)).andReturn()
+                                : started;
+                        if (done.getResponse().getStatus() == 200) ok.incrementAndGet();
+                    } catch (Exception ignored) {
+                    }
+                    latencies.add(System.nanoTime() - t0);
+                }
+                return null;
+            });
+        }
+        clients.shutdown();
+        clients.awaitTermination(5, TimeUnit.MINUTES);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        Report report = new Report(name, latencies, ok.get(), seconds, fake.requestCount() - upstreamBefore);
+        System.out.println(report);
+        return report;
+    }
+
+    private record Report(String endpoint, List<Long> latenciesNanos, int ok, double seconds, long upstreamCalls) {
+
+        double successRate() {
+            return latenciesNanos.isEmpty() ? 0 : (double) ok / latenciesNanos.size();
+        }
+
+        double percentileMs(double p) {
+            List<Long> sorted = new ArrayList<>(latenciesNanos);
+            Collections.sort(sorted);
+            int idx = Math.max(0, (int) Math.ceil(p * sorted.size()) - 1);
+            return sorted.get(idx) / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-8s requests=%d ok=%d throughput=%.1f req/s p50=%.1fms p95=%.1fms p99=%.1fms max=%.1fms upstream=%d",
+                    endpoint, latenciesNanos.size(), ok, latenciesNanos.size() / seconds,
+                    percentileMs(0.50), percentileMs(0.95), percentileMs(0.99), percentileMs(1.0), upstreamCalls);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.example.demo.ai;
+
+import com.fasterxml.jackson.core.json.JsonReadFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process stand-in for the OpenRouter chat-completions endpoint, for tests and load runs that
+ * must not hit openrouter.ai. Answers diagnosis prompts with an AIDiagnosis document and facts
+ * prompts with a facts array, and can be told to add latency, fail a share of requests, wrap the
+ * content in markdown fences, return malformed JSON, or stream the answer as SSE chunks.
+ *
+ * Latency jitter and injected failures are drawn from a generator seeded with the request's arrival
+ * number, so the n-th request gets the same draw on every run however many handler threads there are.
+ * Which caller's request arrives n-th still depends on scheduling.
+ */
+public class FakeOpenRouterServer implements AutoCloseable {
+
+    public enum ContentMode { VALID, FENCED, MALFORMED }
+
+    private static final ObjectMapper MAPPER = JsonMapper.builder()
+            // the request body may contain raw newlines, accept it the way the real endpoint does
+            .enable(JsonReadFeature.ALLOW_UNESCAPED_CONTROL_CHARS)
+            .build();
+
+    private static final String DIAGNOSIS = """
+            {"possibleConditions":[\
+            {"condition":"Migraine","probability":0.55,"description":"Recurrent headache, often with light sensitivity."},\
+            {"condition":"Viral fever","probability":0.3,"description":"Self-limiting infection with fever and aches."},\
+            {"condition":"Sinusitis","probability":0.15,"description":"Inflammation of the sinuses causing facial pain."}],\
+            "recommendedTests":["Complete blood count","CRP"]}""";
+
+    private static final String FACTS = """
+            [{"title":"Fact %1$d","description":"Generated fact number %1$d.","category":"General","source":"WHO"},\
+            {"title":"Fact %2$d","description":"Generated fact number %2$d.","category":"Nutrition","source":"CDC"},\
+            {"title":"Fact %3$d","description":"Generated fact number %3$d.","category":"Exercise","source":"AHA"},\
+            {"title":"Fact %4$d","description":"Generated fact number %4$d.","category":"Mental Health","source":"WHO"},\
+            {"title":"Fact %5$d","description":"Generated fact number %5$d.","category":"Preventive Care","source":"CDC"}]""";
+
+    private static final long SEED = 42;
+
+    private final HttpServer server;
+    public static final String THREAD_PREFIX = "fake-openrouter-";
+
+    private final AtomicLong threads = new AtomicLong();
+    private final ExecutorService executor = Executors.newCachedThreadPool(
+            r -> new Thread(r, THREAD_PREFIX + threads.incrementAndGet()));
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong factBatches = new AtomicLong();
+
+    private volatile long latencyMs;
+    private volatile long latencyJitterMs;
+    private volatile double errorRate;
+    private volatile int errorStatus = 503;
+    private volatile ContentMode contentMode = ContentMode.VALID;
+    private volatile int streamChunkSize = 16;
+
+    public FakeOpenRouterServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/v1/chat/completions", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/api/v1/chat/completions";
+    }
+
+    public FakeOpenRouterServer latency(long millis, long jitterMillis) {
+        this.latencyMs = millis;
+        this.latencyJitterMs = jitterMillis;
+        return this;
+    }
+
+    public FakeOpenRouterServer errors(double rate, int status) {
+        this.errorRate = rate;
+        this.errorStatus = status;
+        return this;
+    }
+
+    public FakeOpenRouterServer content(ContentMode mode) {
+        this.contentMode = mode;
+        return this;
+    }
+
+    public FakeOpenRouterServer streamChunkSize(int chars) {
+        this.streamChunkSize = chars;
+        return this;
+    }
+
+    public long requestCount() {
+        return requests.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        Random random = new Random(SEED + requests.incrementAndGet());
+        try {
+            JsonNode body = MAPPER.readTree(exchange.getRequestBody());
+            String prompt = body.path("messages").path(0).path("content").asText();
+            boolean stream = body.path("stream").asBoolean(false);
+
+            sleep(latencyMs + (latencyJitterMs > 0 ? (long) (random.nextDouble() * latencyJitterMs) : 0));
+
+            if (errorRate > 0 && random.nextDouble() < errorRate) {
+                send(exchange, errorStatus, "application/json", "{\"error\":{\"message\":\"injected failure\"}}");
+                return;
+            }
+
+            String content = render(prompt);
+            if (stream) {
+                stream(exchange, content);
+            } else {
+                send(exchange, 200, "application/json", completion(content));
+            }
+        } catch (Exception e) {
+            send(exchange, 400, "application/json", "{\"error\":{\"message\":\"bad request\"}}");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private String render(String prompt) {
+        String content;
+        if (prompt.contains("health-related facts")) {
+            long b = factBatches.getAndIncrement() * 5;
+            content = FACTS.formatted(b + 1, b + 2, b + 3, b + 4, b + 5);
+        } else {
+            content = DIAGNOSIS;
+        }
+        return switch (contentMode) {
+            case VALID -> content;
+            case FENCED -> "```json\n" + content + "\n```";
+            case MALFORMED -> content.substring(0, content.length() / 2) + "\"oops";
+        };
+    }
+
+    private void stream(HttpExchange exchange, String content) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(": OPENROUTER PROCESSING\n\n".getBytes(StandardCharsets.UTF_8));
+            for (int i = 0; i < content.length(); i += streamChunkSize) {
+                String piece = content.substring(i, Math.min(content.length(), i + streamChunkSize));
+                String chunk = MAPPER.writeValueAsString(
+                        Map.of("choices", List.of(Map.of("delta", Map.of("content", piece)))));
+                out.write(("data: " + chunk + "\n\n").getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            }
+            out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) return;
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    // Non-streaming chat-completions envelope around the rendered content
+    private static String completion(String content) throws IOException {
+        return MAPPER.writeValueAsString(Map.of(
+                "id", "fake-1",
+                "object", "chat.completion",
+                "choices", List.of(Map.of(
+                        "index", 0,
+                        "message", Map.of("role", "assistant", "content", content),
+                        "finish_reason", "stop"))));
+    }
+}
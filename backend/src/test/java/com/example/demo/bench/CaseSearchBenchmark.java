@@ -0,0 +1,137 @@
+package com.example.demo.bench;
+
+import com.example.demo.service.CaseSearchIndex;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Case search at 1M posts: BM25 queries on CaseSearchIndex against scanning every post for the
+ * query words, which is what scrolling the findAll() list amounts to. Posts are synthetic, drawn
+ * from a Zipf vocabulary: "pain fever" is in nearly every post and is the worst case, clinical
+ * terms like "kidney" are in roughly one post in ten.
+ *
+ * Run with: MAVEN_OPTS=-Xmx3g mvn test-compile exec:java -Dexec.classpathScope=test
+ *           -Dexec.mainClass=com.example.demo.bench.CaseSearchBenchmark -Dexec.args="-f 0"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx3g")
+public class CaseSearchBenchmark {
+
+    private static final String[] COMMON = {
+            "pain", "fever", "patient", "history", "acute", "chronic", "presented", "with", "male", "female",
+            "cough", "fatigue", "nausea", "vomiting", "headache", "swelling", "tenderness", "elevated", "normal", "mild"};
+    private static final String[] CLINICAL = {
+            "ultrasound", "kidney", "stone", "renal", "colic", "hematuria", "flank", "ct", "mri", "xray",
+            "troponin", "ecg", "chest", "dyspnea", "wheeze", "asthma", "copd", "pneumonia", "sepsis", "lactate",
+            "liver", "jaundice", "bilirubin", "gallstone", "pancreatitis", "lipase", "appendicitis", "hernia",
+            "fracture", "femur", "cast", "rash", "eczema", "psoriasis", "biopsy", "melanoma", "anemia", "ferritin",
+            "thyroid", "tsh", "diabetes", "hba1c", "insulin", "ketoacidosis", "stroke", "hemiparesis", "seizure",
+            "migraine", "meningitis", "lumbar", "puncture", "pregnancy", "preeclampsia", "cesarean", "infant",
+            "bronchiolitis", "otitis", "tonsillitis", "glaucoma", "cataract", "retina", "dialysis", "creatinine"};
+    private static final String[] SPECIALIZATIONS = {
+            "Nephrology", "Urology", "Cardiology", "Pulmonology", "Gastroenterology", "Orthopedics",
+            "Dermatology", "Endocrinology", "Neurology", "Obstetrics", "Pediatrics", "Ophthalmology"};
+
+    @Param({"1000000"})
+    public int posts;
+
+    private CaseSearchIndex index;
+    private List<String> scanText;
+    private String[] vocabulary;
+    private double[] cumulative;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        buildVocabulary();
+        Random random = new Random(7);
+        index = new CaseSearchIndex();
+        scanText = new ArrayList<>(posts);
+        for (int id = 1; id <= posts; id++) {
+            String title = word(random) + " " + word(random) + " " + word(random);
+            StringBuilder description = new StringBuilder();
+            int words = 15 + random.nextInt(25);
+            for (int w = 0; w < words; w++) description.append(word(random)).append(' ');
+            String symptoms = word(random) + ", " + word(random);
+            String specialization = SPECIALIZATIONS[random.nextInt(SPECIALIZATIONS.length)];
+            index.add(id, title, description.toString(), symptoms, specialization);
+            scanText.add((title + " " + description + " " + symptoms + " " + specialization).toLowerCase(Locale.ROOT));
+        }
+    }
+
+    // Zipf over 20k words: the everyday words on top, clinical terms from rank 20 on, then a long tail
+    private void buildVocabulary() {
+        vocabulary = new String[20_000];
+        int rank = 0;
+        for (String w : COMMON) vocabulary[rank++] = w;
+        for (int i = 0; i < CLINICAL.length; i++) {
+            vocabulary[rank++] = CLINICAL[i];
+            // spread clinical terms out over the first few hundred ranks
+            for (int k = 0; k < 4 && rank < vocabulary.length; k++) vocabulary[rank] = "t" + rank++;
+        }
+        while (rank < vocabulary.length) vocabulary[rank] = "t" + rank++;
+
+        cumulative = new double[vocabulary.length];
+        double sum = 0;
+        for (int r = 0; r < vocabulary.length; r++) {
+            sum += 1.0 / (r + 1);
+            cumulative[r] = sum;
+        }
+        for (int r = 0; r < vocabulary.length; r++) cumulative[r] /= sum;
+    }
+
+    private String word(Random random) {
+        int i = Arrays.binarySearch(cumulative, random.nextDouble());
+        return vocabulary[Math.min(i < 0 ? -i - 1 : i, vocabulary.length - 1)];
+    }
+
+    @Benchmark
+    public List<CaseSearchIndex.Hit> indexClinicalQuery() {
+        return index.search("ultrasound kidney stone", null, 20);
+    }
+
+    @Benchmark
+    public List<CaseSearchIndex.Hit> indexClinicalQueryFiltered() {
+        return index.search("ultrasound kidney stone", List.of("Nephrology", "Urology"), 20);
+    }
+
+    @Benchmark
+    public List<CaseSearchIndex.Hit> indexRareTermQuery() {
+        return index.search("retina glaucoma", null, 20);
+    }
+
+    @Benchmark
+    public List<CaseSearchIndex.Hit> indexCommonTermQuery() {
+        return index.search("pain fever", null, 20);
+    }
+
+    @Benchmark
+    public int legacyScan() {
+        int found = 0;
+        for (String text : scanText) {
+            if (text.contains("ultrasound") && text.contains("kidney") && text.contains("stone")) found++;
+        }
+        return found;
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(CaseSearchBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
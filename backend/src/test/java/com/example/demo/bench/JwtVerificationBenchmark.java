@@ -0,0 +1,82 @@
+package com.example.demo.bench;
+
+import com.example.demo.CustomUserDetails;
+import com.example.demo.JwtUtil;
+import com.example.demo.VerifiedToken;
+import com.example.demo.model.Role;
+import com.example.demo.model.User;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request JWT cost: the old filter path (three parses, parser rebuilt each time)
+ * against a single parse with a shared parser and against a cache hit.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ *           -Dexec.mainClass=com.example.demo.bench.JwtVerificationBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtVerificationBenchmark {
+
+    private static final String SECRET = "KX74#k39!dQ92$zvL0bnf9%kPqL5@rMqVx6*WnZtYzA7$wQhJp";
+
+    private JwtUtil jwtUtil;
+    private JwtParser sharedParser;
+    private CustomUserDetails userDetails;
+    private String token;
+
+    @Setup
+    public void setup() {
+        User user = new User();
+        user.setEmail("doctor@example.com");
+        user.setRole(Role.DOCTOR);
+        userDetails = new CustomUserDetails(user);
+
+        jwtUtil = new JwtUtil();
+        token = jwtUtil.generateToken(userDetails);
+        sharedParser = Jwts.parserBuilder().setSigningKey(Keys.hmacShaKeyFor(SECRET.getBytes())).build();
+    }
+
+    @Benchmark
+    public boolean legacyFilterPath() {
+        // extractUsername + validateToken(extractUsername, isTokenExpired), as JwtFilter used to do
+        String email = Jwts.parserBuilder().setSigningKey(SECRET.getBytes()).build()
+                .parseClaimsJws(token).getBody().getSubject();
+        String again = Jwts.parserBuilder().setSigningKey(SECRET.getBytes()).build()
+                .parseClaimsJws(token).getBody().getSubject();
+        Date expiration = Jwts.parserBuilder().setSigningKey(SECRET.getBytes()).build()
+                .parseClaimsJws(token).getBody().getExpiration();
+        return email != null && again.equals(userDetails.getUsername()) && !expiration.before(new Date());
+    }
+
+    @Benchmark
+    public boolean singleParse() {
+        var claims = sharedParser.parseClaimsJws(token).getBody();
+        return claims.getSubject().equals(userDetails.getUsername()) && !claims.getExpiration().before(new Date());
+    }
+
+    @Benchmark
+    public boolean cachedVerify() {
+        VerifiedToken verified = jwtUtil.verify(token);
+        return jwtUtil.validateToken(verified, userDetails);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(JwtVerificationBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
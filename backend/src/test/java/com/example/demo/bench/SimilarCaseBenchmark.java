@@ -0,0 +1,128 @@
+package com.example.demo.bench;
+
+import com.example.demo.service.SimilarCaseIndex;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Similar cases: SimilarCaseIndex lookups against brute-force Jaccard over every post, plus the
+ * recall of the index measured against that brute force (printed once at setup).
+ *
+ * Posts are synthetic: a few thousand "presentations" of 12-25 findings each, and every post is
+ * one of them with some findings dropped and some random ones added, so each post has a cluster
+ * of true near neighbors among unrelated noise.
+ *
+ * Run with: MAVEN_OPTS=-Xmx3g mvn test-compile exec:java -Dexec.classpathScope=test
+ *           -Dexec.mainClass=com.example.demo.bench.SimilarCaseBenchmark -Dexec.args="-f 0"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx3g")
+public class SimilarCaseBenchmark {
+
+    private static final int K = 10;
+    private static final int RECALL_QUERIES = 200;
+
+    @Param({"200000"})
+    public int posts;
+
+    private SimilarCaseIndex index;
+    private int[][] shingles;
+    private int query;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(11);
+        int presentations = Math.max(100, posts / 50);
+        List<List<String>> templates = new ArrayList<>(presentations);
+        for (int t = 0; t < presentations; t++) {
+            List<String> findings = new ArrayList<>();
+            int n = 12 + random.nextInt(14);
+            for (int i = 0; i < n; i++) findings.add("f" + random.nextInt(5_000));
+            templates.add(findings);
+        }
+
+        index = new SimilarCaseIndex(500);
+        shingles = new int[posts + 1][];
+        for (int id = 1; id <= posts; id++) {
+            StringBuilder text = new StringBuilder();
+            for (String finding : templates.get(random.nextInt(presentations))) {
+                if (random.nextInt(5) > 0) text.append(finding).append(' ');
+            }
+            int noise = random.nextInt(6);
+            for (int i = 0; i < noise; i++) text.append('f').append(random.nextInt(5_000)).append(' ');
+            index.add(id, text.toString(), null);
+            shingles[id] = SimilarCaseIndex.shingles(text.toString(), null);
+        }
+
+        double recallAtK = 0;
+        long close = 0;
+        long closeFound = 0;
+        for (int q = 1; q <= RECALL_QUERIES; q++) {
+            long id = 1 + (long) q * (posts / RECALL_QUERIES - 1);
+            Set<Long> lsh = new HashSet<>();
+            index.similarTo(id, K).forEach(n -> lsh.add(n.postId()));
+            List<long[]> exact = bruteForce((int) id, K);
+            int hit = 0;
+            for (long[] e : exact) if (lsh.contains(e[0])) hit++;
+            recallAtK += exact.isEmpty() ? 1 : (double) hit / exact.size();
+            for (long[] e : exact) {
+                if (Double.longBitsToDouble(e[1]) >= 0.5) {
+                    close++;
+                    if (lsh.contains(e[0])) closeFound++;
+                }
+            }
+        }
+        System.out.printf("%nrecall@%d vs brute-force Jaccard: %.3f; recall of top-%d neighbors with Jaccard >= 0.5: %.3f%n",
+                K, recallAtK / RECALL_QUERIES, K, close == 0 ? 1.0 : (double) closeFound / close);
+    }
+
+    // the k posts with the highest exact Jaccard to the given one, as {postId, similarity bits}
+    private List<long[]> bruteForce(int self, int k) {
+        PriorityQueue<long[]> top = new PriorityQueue<>(k + 1,
+                (a, b) -> Double.compare(Double.longBitsToDouble(a[1]), Double.longBitsToDouble(b[1])));
+        int[] mine = shingles[self];
+        for (int id = 1; id <= posts; id++) {
+            if (id == self) continue;
+            double j = SimilarCaseIndex.jaccard(mine, shingles[id]);
+            if (j == 0) continue;
+            top.add(new long[]{id, Double.doubleToLongBits(j)});
+            if (top.size() > k) top.poll();
+        }
+        return new ArrayList<>(top);
+    }
+
+    @Benchmark
+    public List<SimilarCaseIndex.Neighbor> lshLookup() {
+        query = query % posts + 1;
+        return index.similarTo(query, K);
+    }
+
+    @Benchmark
+    public List<long[]> bruteForceJaccard() {
+        query = query % posts + 1;
+        return bruteForce(query, K);
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(SimilarCaseBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
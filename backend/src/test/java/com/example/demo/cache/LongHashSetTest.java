@@ -0,0 +1,57 @@
+package com.example.demo.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * LongHashSet against java.util.HashSet under random adds and removes, over a small key range so
+ * probe runs collide and removal has to shift entries back.
+ */
+class LongHashSetTest {
+
+    @Test
+    void behavesLikeHashSet() {
+        Random random = new Random(42);
+        LongHashSet set = new LongHashSet();
+        Set<Long> expected = new HashSet<>();
+
+        for (int i = 0; i < 200_000; i++) {
+            long value = random.nextInt(2_000) - 100;
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(value), set.remove(value));
+            } else {
+                assertEquals(expected.add(value), set.add(value));
+            }
+            if (i % 1_000 == 0) {
+                assertEquals(expected.size(), set.size());
+                for (long v = -100; v < 1_900; v++) {
+                    assertEquals(expected.contains(v), set.contains(v), "value " + v);
+                }
+            }
+        }
+
+        long[] values = set.toArray();
+        Arrays.sort(values);
+        assertArrayEquals(expected.stream().mapToLong(Long::longValue).sorted().toArray(), values);
+    }
+
+    @Test
+    void zeroIsAnOrdinaryMember() {
+        LongHashSet set = new LongHashSet();
+        assertFalse(set.contains(0));
+        assertTrue(set.add(0));
+        assertFalse(set.add(0));
+        assertTrue(set.contains(0));
+        assertEquals(1, set.size());
+        assertArrayEquals(new long[]{0}, set.toArray());
+        assertTrue(set.remove(0));
+        assertFalse(set.remove(0));
+        assertTrue(set.isEmpty());
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.demo.cache;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Callers racing on one key from separate threads share a single upstream subscription, and the
+ * key is released after a result, an error, or every caller cancelling, so the next call goes
+ * upstream again.
+ */
+class SingleFlightTest {
+
+    private static final int CALLERS = 16;
+
+    private final ExecutorService pool = Executors.newFixedThreadPool(CALLERS);
+    private final SingleFlight<String> flights = new SingleFlight<>();
+    private final AtomicInteger subscriptions = new AtomicInteger();
+
+    @AfterEach
+    void shutDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    void concurrentCallersShareOneSubscriptionAndTheKeyIsReleasedOnSuccess() throws Exception {
+        Sinks.One<String> upstream = Sinks.one();
+        List<CompletableFuture<String>> results = race(upstream);
+
+        assertEquals(1, subscriptions.get());
+        assertEquals(1, flights.inFlightCount());
+        upstream.tryEmitValue("done");
+        for (CompletableFuture<String> result : results) {
+            assertEquals("done", result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, flights.getLeaders());
+        assertEquals(CALLERS - 1, flights.getCollapsed());
+        assertEquals(0, flights.inFlightCount());
+
+        assertEquals("again", flights.execute("key", () -> call(Mono.just("again"))).block());
+        assertEquals(2, subscriptions.get());
+    }
+
+    @Test
+    void everyCallerGetsTheErrorAndTheKeyIsReleased() throws Exception {
+        Sinks.One<String> upstream = Sinks.one();
+        List<CompletableFuture<String>> results = race(upstream);
+
+        upstream.tryEmitError(new IllegalStateException("upstream down"));
+        for (CompletableFuture<String> result : results) {
+            ExecutionException e = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+            assertEquals("upstream down", e.getCause().getMessage());
+        }
+        assertEquals(1, subscriptions.get());
+        assertEquals(0, flights.inFlightCount());
+
+        assertEquals("recovered", flights.execute("key", () -> call(Mono.just("recovered"))).block());
+        assertEquals(2, subscriptions.get());
+    }
+
+    @Test
+    void upstreamIsCancelledOnlyWhenEveryCallerHasGoneAndTheNextCallStartsFresh() {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        Mono<String> hanging = Mono.<String>never().doOnCancel(() -> cancelled.set(true));
+        List<Disposable> callers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            callers.add(flights.execute("key", () -> call(hanging)).subscribe());
+        }
+        assertEquals(1, subscriptions.get());
+
+        callers.get(0).dispose();
+        callers.get(1).dispose();
+        assertFalse(cancelled.get(), "one caller is still waiting");
+        assertEquals(1, flights.inFlightCount());
+
+        callers.get(2).dispose();
+        assertTrue(cancelled.get());
+        assertEquals(0, flights.inFlightCount());
+
+        // a new call does not join the dead flight
+        assertEquals("fresh", flights.execute("key", () -> call(Mono.just("fresh"))).block());
+        assertEquals(2, subscriptions.get());
+    }
+
+    // All callers subscribe at once from their own threads while the upstream is still pending
+    private List<CompletableFuture<String>> race(Sinks.One<String> upstream) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch subscribed = new CountDownLatch(CALLERS);
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            CompletableFuture<String> result = new CompletableFuture<>();
+            results.add(result);
+            pool.execute(() -> {
+                try {
+                    start.await();
+                    flights.execute("key", () -> call(upstream.asMono()))
+                            .subscribe(result::complete, result::completeExceptionally);
+                } catch (InterruptedException e) {
+                    result.completeExceptionally(e);
+                } finally {
+                    subscribed.countDown();
+                }
+            });
+        }
+        start.countDown();
+        assertTrue(subscribed.await(5, TimeUnit.SECONDS));
+        return results;
+    }
+
+    private Mono<String> call(Mono<String> upstream) {
+        return Mono.defer(() -> {
+            subscriptions.incrementAndGet();
+            return upstream;
+        });
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.demo.controller;
+
+import com.example.demo.AiClientConfig;
+import com.example.demo.CustomUserDetails;
+import com.example.demo.CustomUserDetailsService;
+import com.example.demo.JwtFilter;
+import com.example.demo.JwtUtil;
+import com.example.demo.SecurityConfig;
+import com.example.demo.ai.FakeOpenRouterServer;
+import com.example.demo.model.Role;
+import com.example.demo.model.User;
+import com.example.demo.repository.UserRepo;
+import com.example.demo.service.AiResilience;
+import com.example.demo.service.AiService;
+import com.example.demo.service.DiagnosisCache;
+import com.example.demo.service.ModelRouter;
+import com.example.demo.service.TriageEngine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.context.junit.jupiter.web.SpringJUnitWebConfig;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Fires growing numbers of concurrent /aiDiag calls through the real AiService and WebClient at a
+ * FakeOpenRouterServer that takes 300ms to answer, behind the application's security filter chain.
+ * Checks that the JVM thread count (leaving out the fake server's own threads) does not grow with
+ * the number of requests in flight, that the calls overlap instead of queueing, and that the async
+ * re-dispatch of an authenticated request is let through.
+ */
+@SpringJUnitWebConfig(classes = {AiService.class, DiagnosisCache.class, AiResilience.class, AiClientConfig.class,
+        ModelRouter.class, TriageEngine.class, AiDiagCtrl.class, SecurityConfig.class, JwtFilter.class, JwtUtil.class,
+        CustomUserDetailsService.class, AiAsyncLoadTest.TestBeans.class})
+@TestPropertySource(properties = {
+        "openrouter.api.key=test-key",
+        "auth.principal-source=claims",
+        "ai.resilience.max-concurrent=1000",
+        "ai.resilience.max-queued=1000",
+        "ai.resilience.max-retries=0"
+})
+class AiAsyncLoadTest {
+
+    private static final long LATENCY_MS = 300;
+
+    private static FakeOpenRouterServer fake;
+
+    @Configuration
+    @EnableWebMvc
+    static class TestBeans {
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    @DynamicPropertySource
+    static void fakeProvider(DynamicPropertyRegistry registry) throws IOException {
+        fake = new FakeOpenRouterServer().latency(LATENCY_MS, 0);
+        registry.add("openrouter.api.url", fake::url);
+    }
+
+    @AfterAll
+    static void stopFake() {
+        fake.close();
+    }
+
+    @MockitoBean
+    private UserRepo userRepo;
+
+    @Autowired
+    private WebApplicationContext context;
+
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    private MockMvc mvc;
+    private String token;
+    private int symptomSeq;
+
+    @BeforeEach
+    void setUp() {
+        mvc = MockMvcBuilders.webAppContextSetup(context).apply(springSecurity()).build();
+        User user = new User();
+        user.setId(1L);
+        user.setEmail("patient@example.com");
+        user.setRole(Role.PATIENT);
+        user.setVerified(true);
+        token = jwtUtil.generateToken(new CustomUserDetails(user));
+    }
+
+    @Test
+    void unauthenticatedCallsAreRefused() throws Exception {
+        mvc.perform(post("/aiDiag")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"symptoms\":\"fever\"}"))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    void threadCountStaysFlatWhileAiConcurrencyGrows() throws Exception {
+        runBatch(20); // warm up the event loop and connection pool
+        int baseline = applicationThreads();
+
+        for (int concurrency : new int[]{50, 200, 400}) {
+            long upstreamBefore = fake.requestCount();
+            long start = System.nanoTime();
+            List<MvcResult> inFlight = new ArrayList<>();
+            for (int i = 0; i < concurrency; i++) {
+                inFlight.add(start());
+            }
+            int peak = applicationThreads();
+            assertTrue(peak - baseline < 10,
+                    "threads grew with " + concurrency + " calls in flight: " + peak + " vs " + baseline);
+
+            for (MvcResult result : inFlight) {
+                mvc.perform(asyncDispatch(result))
+                        .andExpect(status().isOk())
+                        .andExpect(header().string(AiService.SOURCE_HEADER, "ai"));
+            }
+            long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+            assertEquals(concurrency, fake.requestCount() - upstreamBefore);
+            // one after another this would take concurrency * 300ms
+            assertTrue(elapsedMs < concurrency * LATENCY_MS / 4,
+                    concurrency + " overlapping calls took " + elapsedMs + "ms");
+        }
+    }
+
+    private void runBatch(int n) throws Exception {
+        List<MvcResult> results = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            results.add(start());
+        }
+        for (MvcResult result : results) {
+            mvc.perform(asyncDispatch(result)).andExpect(status().isOk());
+        }
+    }
+
+    // distinct symptoms, so neither the diagnosis cache nor single-flight collapses the calls
+    private MvcResult start() throws Exception {
+        return mvc.perform(post("/aiDiag")
+                        .header("Authorization", "Bearer " + token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"symptoms\":\"fever, symptom" + (symptomSeq++) + "\"}"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+    }
+
+    private static int applicationThreads() {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (!thread.getName().startsWith(FakeOpenRouterServer.THREAD_PREFIX)) count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.demo.controller;
+
+import com.example.demo.model.CasePost;
+import com.example.demo.repository.CasePostRepo;
+import com.example.demo.service.CaseFeedCache;
+import com.example.demo.service.CaseSearchService;
+import com.example.demo.service.ImageDerivativeService;
+import com.example.demo.service.SimilarCaseService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.security.web.method.annotation.AuthenticationPrincipalArgumentResolver;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Creating a case post: attachment fields sent by the client are dropped, so a post can't point
+ * viewers' authenticated image requests at a URL of the author's choosing.
+ */
+class CasesCtrlTest {
+
+    private final CasePostRepo postRepo = mock(CasePostRepo.class);
+    private MockMvc mvc;
+
+    @BeforeEach
+    void setUp() {
+        CasesCtrl ctrl = new CasesCtrl();
+        ReflectionTestUtils.setField(ctrl, "postRepo", postRepo);
+        ReflectionTestUtils.setField(ctrl, "caseFeedCache", mock(CaseFeedCache.class));
+        ReflectionTestUtils.setField(ctrl, "caseSearchService", mock(CaseSearchService.class));
+        ReflectionTestUtils.setField(ctrl, "similarCaseService", mock(SimilarCaseService.class));
+        ReflectionTestUtils.setField(ctrl, "imageDerivativeService", mock(ImageDerivativeService.class));
+        mvc = MockMvcBuilders.standaloneSetup(ctrl)
+                .setCustomArgumentResolvers(new AuthenticationPrincipalArgumentResolver())
+                .build();
+        when(postRepo.save(any(CasePost.class))).thenAnswer(call -> call.getArgument(0));
+    }
+
+    @Test
+    void clientSuppliedAttachmentUrlsAreDiscarded() throws Exception {
+        String json = """
+                {"title":"Rash","description":"Itchy rash on both arms",
+                 "thumbnailUrl":"https://attacker.example/steal",
+                 "previewUrl":"https://attacker.example/steal?size=preview",
+                 "fileUrl":"https://attacker.example/file","fileName":"scan.png",
+                 "fileHash":"0000000000000000000000000000000000000000000000000000000000000000"}""";
+        MockMultipartFile post = new MockMultipartFile("post", "", MediaType.APPLICATION_JSON_VALUE,
+                json.getBytes(StandardCharsets.UTF_8));
+
+        mvc.perform(multipart("/case-posts").file(post))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.title").value("Rash"))
+                .andExpect(jsonPath("$.thumbnailUrl").doesNotExist())
+                .andExpect(jsonPath("$.previewUrl").doesNotExist())
+                .andExpect(jsonPath("$.fileUrl").doesNotExist());
+
+        ArgumentCaptor<CasePost> saved = ArgumentCaptor.forClass(CasePost.class);
+        verify(postRepo).save(saved.capture());
+        assertNull(saved.getValue().getThumbnailUrl());
+        assertNull(saved.getValue().getPreviewUrl());
+        assertNull(saved.getValue().getFileUrl());
+        assertNull(saved.getValue().getFileName());
+        assertNull(saved.getValue().getFileHash());
+    }
+}
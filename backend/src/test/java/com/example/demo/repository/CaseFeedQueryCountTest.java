@@ -0,0 +1,124 @@
+package com.example.demo.repository;
+
+import com.example.demo.model.CaseFeedPage;
+import com.example.demo.model.CasePost;
+import com.example.demo.model.CasePostSummary;
+import com.example.demo.model.Comment;
+import com.example.demo.service.CaseFeedService;
+import com.example.demo.service.LikeService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The case feed must cost one SQL statement per page, however many comments and likes the posts
+ * have. Guards against the feed slipping back into loading collections per post.
+ */
+@DataJpaTest
+@Import({CaseFeedService.class, LikeService.class, SimpleMeterRegistry.class})
+@TestPropertySource(properties = {
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "spring.jpa.show-sql=false"
+})
+class CaseFeedQueryCountTest {
+
+    private static final int POSTS = 45;
+
+    @Autowired
+    private CaseFeedService feed;
+
+    @Autowired
+    private EntityManager em;
+
+    @Autowired
+    private EntityManagerFactory emf;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void seed() {
+        // a few share a timestamp, so the id tie-breaker is exercised
+        LocalDateTime base = LocalDateTime.of(2025, 1, 1, 12, 0);
+        for (int i = 0; i < POSTS; i++) {
+            CasePost post = new CasePost();
+            post.setTitle("Case " + i);
+            post.setCreatedAt(base.plusMinutes(i / 3));
+            post.setLikes(i);
+            post.getLikedUserIds().add((long) i);
+            em.persist(post);
+            for (int c = 0; c < i % 4; c++) {
+                Comment comment = new Comment();
+                comment.setPostId(post.getId());
+                comment.setContent("comment " + c);
+                em.persist(comment);
+            }
+        }
+        em.flush();
+        em.clear();
+
+        statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    void eachPageIsASingleQuery() {
+        CaseFeedPage first = feed.page(null, 10);
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(10, first.getItems().size());
+
+        statistics.clear();
+        feed.page(first.getNextCursor(), 10);
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void walkingTheFeedVisitsEveryPostOnceNewestFirst() {
+        List<CasePostSummary> seen = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            statistics.clear();
+            CaseFeedPage page = feed.page(cursor, 10);
+            assertEquals(1, statistics.getPrepareStatementCount());
+            seen.addAll(page.getItems());
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(5, pages);
+        assertEquals(POSTS, seen.size());
+        Set<Long> ids = new HashSet<>();
+        seen.forEach(s -> ids.add(s.getId()));
+        assertEquals(POSTS, ids.size());
+        for (int i = 1; i < seen.size(); i++) {
+            CasePostSummary prev = seen.get(i - 1);
+            CasePostSummary cur = seen.get(i);
+            int byTime = prev.getCreatedAt().compareTo(cur.getCreatedAt());
+            assertTrue(byTime > 0 || (byTime == 0 && prev.getId() > cur.getId()));
+        }
+    }
+
+    @Test
+    void summariesCarryCommentAndLikeCounts() {
+        CasePostSummary newest = feed.page(null, 1).getItems().get(0);
+        assertEquals("Case 44", newest.getTitle());
+        assertEquals(44 % 4, newest.getCommentCount());
+        assertEquals(44, newest.getLikes());
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.demo.service;
+
+import com.example.demo.model.AIDiagnosis;
+import com.example.demo.model.Condition;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Decoding model output the way it actually arrives: fenced, with chatter, with syntax slips,
+ * truncated mid-stream, or not JSON at all.
+ */
+class AiJsonCodecTest {
+
+    private static final String DIAGNOSIS = """
+            {"possibleConditions":[\
+            {"condition":"Migraine","probability":0.55,"description":"Recurrent headache."},\
+            {"condition":"Viral fever","probability":0.3,"description":"Self-limiting infection."}],\
+            "recommendedTests":["Complete blood count"]}""";
+
+    @Test
+    void decodesFencedOutputWithChatterAround() {
+        AIDiagnosis d = AiJsonCodec.decodeDiagnosis("Here is the analysis:\n```json\n" + DIAGNOSIS + "\n```\nStay safe!");
+
+        assertNotNull(d);
+        assertEquals(List.of("Migraine", "Viral fever"), names(d.getPossibleConditions()));
+        assertEquals(0.55, d.getPossibleConditions().get(0).getProbability(), 1e-9);
+        assertEquals(List.of("Complete blood count"), d.getRecommendedTests());
+    }
+
+    @Test
+    void acceptsCommonSyntaxSlips() {
+        AIDiagnosis d = AiJsonCodec.decodeDiagnosis(
+                "{possibleConditions:[{'condition':'Migraine','probability':0.6,},],recommendedTests:['MRI',],}");
+
+        assertNotNull(d);
+        assertEquals(List.of("Migraine"), names(d.getPossibleConditions()));
+        assertEquals(List.of("MRI"), d.getRecommendedTests());
+    }
+
+    @Test
+    void truncatedOrMalformedOutputDoesNotDecodeButCanBeSalvaged() {
+        String truncated = DIAGNOSIS.substring(0, DIAGNOSIS.indexOf("Self-limiting"));
+        assertNull(AiJsonCodec.decodeDiagnosis(truncated));
+        assertNull(AiJsonCodec.decodeDiagnosis(DIAGNOSIS.replace("],\"recommendedTests\"", "]]\"recommendedTests\"")));
+
+        AIDiagnosis salvaged = AiJsonCodec.salvageDiagnosis(truncated);
+        assertNotNull(salvaged);
+        assertEquals(List.of("Migraine"), names(salvaged.getPossibleConditions()));
+        assertTrue(salvaged.getRecommendedTests().isEmpty());
+    }
+
+    @Test
+    void nothingToDecodeOrSalvageGivesNull() {
+        for (String text : new String[]{null, "", "I cannot help with that.", "} backwards {",
+                "{\"possibleConditions\":[{\"condition\":\"Migr"}) {
+            assertNull(AiJsonCodec.decodeDiagnosis(text), String.valueOf(text));
+            assertNull(AiJsonCodec.salvageDiagnosis(text), String.valueOf(text));
+        }
+    }
+
+    @Test
+    void deltaContentReadsStreamedChunks() {
+        assertEquals("Mig", AiJsonCodec.deltaContent(
+                "{\"id\":\"gen-1\",\"choices\":[{\"index\":0,\"delta\":{\"role\":\"assistant\",\"content\":\"Mig\"}}]}"));
+        // fields before the one we want are skipped whole, nested values included
+        assertEquals("raine", AiJsonCodec.deltaContent(
+                "{\"usage\":{\"a\":[1,{\"b\":2}]},\"choices\":[{\"logprobs\":null,\"delta\":{\"content\":\"raine\"}}]}"));
+
+        assertNull(AiJsonCodec.deltaContent("{\"choices\":[{\"delta\":{}}]}"));
+        assertNull(AiJsonCodec.deltaContent("{\"choices\":[{\"delta\":{\"content\":null}}]}"));
+        assertNull(AiJsonCodec.deltaContent("{\"choices\":[]}"));
+        assertNull(AiJsonCodec.deltaContent("{\"choices\":[{\"delta\":{\"content\":\"cut"));
+        assertNull(AiJsonCodec.deltaContent("[DONE]"));
+        assertNull(AiJsonCodec.deltaContent(""));
+    }
+
+    private static List<String> names(List<Condition> conditions) {
+        return conditions.stream().map(Condition::getCondition).toList();
+    }
+}
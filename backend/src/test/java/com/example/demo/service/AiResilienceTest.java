@@ -0,0 +1,180 @@
+package com.example.demo.service;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntUnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs AiResilience against a local stub server whose status code and latency are scripted per request.
+ */
+class AiResilienceTest {
+
+    private HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile IntUnaryOperator statusForRequest = n -> 200;
+    private volatile long delayMs;
+    private WebClient client;
+
+    @BeforeEach
+    void startStub() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            int n = requests.incrementAndGet();
+            try {
+                Thread.sleep(delayMs);
+            } catch (InterruptedException ignored) {
+            }
+            byte[] body = "ok".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(statusForRequest.applyAsInt(n), body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        client = WebClient.create("http://127.0.0.1:" + server.getAddress().getPort());
+    }
+
+    @AfterEach
+    void stopStub() {
+        server.stop(0);
+    }
+
+    private AiResilience resilience(int maxConcurrent, int maxQueued, long timeoutMs, int retries, int breakerThreshold) {
+        return new AiResilience(new SimpleMeterRegistry(), maxConcurrent, maxQueued, timeoutMs,
+                retries, 10, false, breakerThreshold, 60_000);
+    }
+
+    private AiResilience hedged(int maxConcurrent, int retries, int breakerThreshold) {
+        return new AiResilience(new SimpleMeterRegistry(), maxConcurrent, 32, 2000,
+                retries, 10, true, breakerThreshold, 60_000);
+    }
+
+    // hedging starts once there are enough latency samples to take a p95 from
+    private void warmUp(AiResilience r, long latencyMs) {
+        delayMs = latencyMs;
+        Flux.range(0, 20).flatMap(i -> r.protect(this::call), 4).blockLast();
+        requests.set(0);
+    }
+
+    private Mono<String> call() {
+        return client.get().uri("/chat").retrieve().bodyToMono(String.class);
+    }
+
+    @Test
+    void retriesServerErrorsThenSucceeds() {
+        statusForRequest = n -> n <= 2 ? 503 : 200;
+        AiResilience r = resilience(4, 4, 2000, 2, 5);
+
+        assertEquals("ok", r.protect(this::call).block());
+        assertEquals(3, requests.get());
+    }
+
+    @Test
+    void doesNotRetryClientErrors() {
+        statusForRequest = n -> 400;
+        AiResilience r = resilience(4, 4, 2000, 2, 5);
+
+        assertThrows(Exception.class, () -> r.protect(this::call).block());
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    void opensCircuitAndFailsFast() {
+        statusForRequest = n -> 500;
+        AiResilience r = resilience(4, 4, 2000, 0, 2);
+
+        assertThrows(Exception.class, () -> r.protect(this::call).block());
+        assertThrows(Exception.class, () -> r.protect(this::call).block());
+        assertTrue(r.isOpen());
+
+        AiUnavailableException e = assertThrows(AiUnavailableException.class, () -> r.protect(this::call).block());
+        assertTrue(e.getMessage().contains("circuit open"));
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    void bulkheadRejectsBeyondQueue() {
+        delayMs = 300;
+        AiResilience r = resilience(1, 1, 2000, 0, 5);
+
+        List<String> results = Flux.range(0, 3)
+                .flatMap(i -> r.protect(this::call).onErrorResume(AiUnavailableException.class, e -> Mono.just("busy")))
+                .collectList()
+                .block();
+
+        assertEquals(2, results.stream().filter("ok"::equals).count());
+        assertEquals(1, results.stream().filter("busy"::equals).count());
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    void slowAttemptTimesOut() {
+        delayMs = 1000;
+        AiResilience r = resilience(1, 1, 200, 0, 5);
+
+        Throwable e = assertThrows(Exception.class,
+                () -> r.protect(this::call).block(Duration.ofSeconds(5)));
+        assertTrue(e instanceof TimeoutException || e.getCause() instanceof TimeoutException, e.toString());
+    }
+
+    @Test
+    void hedgedAttemptsReportTheRealErrorSoTheyAreRetriedAndCounted() {
+        AiResilience r = hedged(4, 1, 1);
+        warmUp(r, 20);
+        assertTrue(r.p95Millis() > 0);
+
+        delayMs = 150;
+        statusForRequest = n -> 503;
+        Throwable e = assertThrows(Exception.class, () -> r.protect(this::call).block(Duration.ofSeconds(5)));
+
+        assertTrue(e instanceof WebClientResponseException.ServiceUnavailable, e.toString());
+        assertEquals(4, requests.get()); // primary and hedge, then both again on the retry
+        assertTrue(r.isOpen());
+    }
+
+    @Test
+    void primaryThatFailsBeforeTheHedgeIsDueDoesNotStartIt() throws Exception {
+        AiResilience r = hedged(4, 0, 5);
+        warmUp(r, 200);
+
+        delayMs = 0;
+        statusForRequest = n -> 400;
+        Throwable e = assertThrows(Exception.class, () -> r.protect(this::call).block(Duration.ofSeconds(5)));
+        assertTrue(e instanceof WebClientResponseException.BadRequest, e.toString());
+
+        Thread.sleep(400);
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    void hedgeOnlyRunsWhenABulkheadSlotIsFree() {
+        AiResilience single = hedged(1, 0, 5);
+        warmUp(single, 20);
+        delayMs = 200;
+        assertEquals("ok", single.protect(this::call).block(Duration.ofSeconds(5)));
+        assertEquals(1, requests.get());
+
+        AiResilience two = hedged(2, 0, 5);
+        warmUp(two, 20);
+        delayMs = 200;
+        assertEquals("ok", two.protect(this::call).block(Duration.ofSeconds(5)));
+        assertEquals(2, requests.get());
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.demo.service;
+
+import com.example.demo.model.AIDiagnosis;
+import com.example.demo.model.AiResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.spy;
+
+/**
+ * diagnose() past its latency budget, with the LLM reply stubbed: every path ends in a response,
+ * never an empty body.
+ */
+class AiServiceTest {
+
+    private static final long BUDGET_MS = 50;
+
+    private AiService service;
+
+    @BeforeEach
+    void setUp() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        service = spy(new AiService());
+        ReflectionTestUtils.setField(service, "meterRegistry", registry);
+        ReflectionTestUtils.setField(service, "diagnosisCache", new DiagnosisCache(registry, 100, 60));
+        ReflectionTestUtils.setField(service, "triageEngine",
+                new TriageEngine(new ClassPathResource("triage/knowledge.json"), 5));
+        ReflectionTestUtils.setField(service, "latencyBudgetMs", BUDGET_MS);
+    }
+
+    private void replyAfterBudget(String content) {
+        doReturn(Mono.delay(Duration.ofMillis(BUDGET_MS * 4)).map(x -> new AiResponse(content)))
+                .when(service).getReply(any());
+    }
+
+    @Test
+    void slowUnparseableReplyWithNoTriageMatchIsAServerError() {
+        replyAfterBudget("I'm not sure, {\"possibleConditions\": oops");
+
+        ResponseEntity<AIDiagnosis> response = service.diagnose("xyzzy plugh").block(Duration.ofSeconds(5));
+
+        assertNotNull(response);
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, response.getStatusCode());
+    }
+
+    @Test
+    void slowValidReplyWithNoTriageMatchIsStillAwaited() {
+        replyAfterBudget("{\"possibleConditions\":[{\"condition\":\"Migraine\",\"probability\":0.6}],\"recommendedTests\":[]}");
+
+        ResponseEntity<AIDiagnosis> response = service.diagnose("xyzzy plugh").block(Duration.ofSeconds(5));
+
+        assertNotNull(response);
+        assertEquals("ai", response.getHeaders().getFirst(AiService.SOURCE_HEADER));
+        assertEquals("Migraine", response.getBody().getPossibleConditions().get(0).getCondition());
+    }
+}
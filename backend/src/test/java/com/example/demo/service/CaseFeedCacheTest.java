@@ -0,0 +1,135 @@
+package com.example.demo.service;
+
+import com.example.demo.model.CaseFeedPage;
+import com.example.demo.model.CasePost;
+import com.example.demo.model.CasePostSummary;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * The cached first page: loaded once, patched by posts, likes and comments, and versioned so
+ * an unchanged poll is a 304 without touching CaseFeedService.
+ */
+class CaseFeedCacheTest {
+
+    private static final LocalDateTime BASE = LocalDateTime.of(2025, 1, 1, 12, 0);
+
+    private CaseFeedService feedService;
+    private SimpleMeterRegistry registry;
+    private CaseFeedCache cache;
+
+    @BeforeEach
+    void setUp() {
+        feedService = mock(CaseFeedService.class);
+        // posts 5..3 on the first page, 2 and 1 behind the cursor
+        List<CasePostSummary> items = new ArrayList<>();
+        for (long id = 5; id >= 3; id--) items.add(summary(id));
+        when(feedService.page(null, 3)).thenReturn(new CaseFeedPage(items, CaseFeedService.encode(BASE.plusMinutes(3), 3L)));
+        registry = new SimpleMeterRegistry();
+        cache = new CaseFeedCache(feedService, new ObjectMapper().findAndRegisterModules(), registry, 3);
+    }
+
+    private static CasePostSummary summary(long id) {
+        return new CasePostSummary(id, "Case " + id, null, 40, "female", null, null, null, null,
+                BASE.plusMinutes(id), 0, null, null, null, null, 0);
+    }
+
+    private static List<Long> ids(CaseFeedCache.Snapshot snapshot) {
+        return snapshot.page().getItems().stream().map(CasePostSummary::getId).toList();
+    }
+
+    @Test
+    void unchangedPollsAreNotModifiedWithoutReloading() {
+        CaseFeedCache.Snapshot first = cache.firstPage();
+        assertTrue(new String(first.json(), StandardCharsets.UTF_8).contains("\"Case 5\""));
+        assertTrue(first.etag().startsWith("\"") && first.etag().endsWith("\""));
+
+        for (int i = 0; i < 10; i++) {
+            CaseFeedCache.Snapshot again = cache.firstPage();
+            assertSame(first, again);
+            assertTrue(cache.notModified(again, first.etag()));
+        }
+        assertTrue(cache.notModified(first, "\"other\", " + first.etag()));
+        assertFalse(cache.notModified(first, "\"other\""));
+        assertFalse(cache.notModified(first, null));
+
+        verify(feedService, times(1)).page(null, 3);
+        assertEquals(10, registry.get("cases.feed.cache.requests").tag("result", "hit").counter().count());
+        assertEquals(1, registry.get("cases.feed.cache.requests").tag("result", "miss").counter().count());
+    }
+
+    @Test
+    void likesAndCommentsPatchThePageAndChangeTheEtag() {
+        CaseFeedCache.Snapshot before = cache.firstPage();
+
+        cache.likesChanged(4L, 7);
+        cache.commentAdded(4L);
+        CaseFeedCache.Snapshot after = cache.firstPage();
+
+        assertNotEquals(before.etag(), after.etag());
+        assertFalse(cache.notModified(after, before.etag()));
+        CasePostSummary post = after.page().getItems().get(1);
+        assertEquals(7, post.getLikes());
+        assertEquals(1, post.getCommentCount());
+        assertTrue(new String(after.json(), StandardCharsets.UTF_8).contains("\"likes\":7"));
+        verify(feedService, times(1)).page(null, 3);
+    }
+
+    @Test
+    void changesOffThePageKeepTheVersion() {
+        CaseFeedCache.Snapshot before = cache.firstPage();
+        cache.likesChanged(1L, 3);
+        cache.commentAdded(2L);
+        cache.likesChanged(5L, 0);
+        assertSame(before, cache.firstPage());
+    }
+
+    @Test
+    void newPostGoesOnTopAndPushesTheLastOneBehindTheCursor() {
+        cache.firstPage();
+        CasePost post = new CasePost();
+        post.setId(6L);
+        post.setTitle("Case 6");
+        post.setCreatedAt(BASE.plusMinutes(6));
+
+        cache.postCreated(post);
+
+        CaseFeedCache.Snapshot after = cache.firstPage();
+        assertEquals(List.of(6L, 5L, 4L), ids(after));
+        assertEquals(CaseFeedService.encode(BASE.plusMinutes(4), 4L), after.page().getNextCursor());
+    }
+
+    @Test
+    void invalidateReloadsOnTheNextRequest() {
+        CaseFeedCache.Snapshot before = cache.firstPage();
+        cache.invalidate();
+        CaseFeedCache.Snapshot after = cache.firstPage();
+
+        assertNotEquals(before.etag(), after.etag());
+        verify(feedService, times(2)).page(null, 3);
+        assertEquals(1, registry.get("cases.feed.cache.invalidations").counter().count());
+    }
+
+    @Test
+    void aLoadThatRacedWithAChangeIsServedButNotKept() {
+        when(feedService.page(null, 3)).thenAnswer(inv -> {
+            cache.likesChanged(5L, 1);
+            return new CaseFeedPage(List.of(summary(5)), null);
+        });
+
+        cache.firstPage();
+        cache.firstPage();
+
+        verify(feedService, times(2)).page(null, 3);
+    }
+}
@@ -0,0 +1,185 @@
+package com.example.demo.service;
+
+import com.example.demo.model.CasePost;
+import com.example.demo.model.Comment;
+import com.example.demo.repository.CasePostRepo;
+import com.example.demo.repository.CommentRepo;
+import com.example.demo.repository.UploadBlobRepo;
+import com.example.demo.storage.ContentAddressedUploadStore;
+import com.example.demo.storage.UploadStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Purging against H2: old posts go with their comments, likers and files in bounded chunks, a
+ * shared attachment stays until its last post goes, newer posts stay, and a run stops at its time
+ * budget. Runs outside a test transaction because every chunk commits on its own.
+ */
+@DataJpaTest
+@Import(SimpleMeterRegistry.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class CasePurgeServiceTest {
+
+    @Autowired
+    private CasePostRepo postRepo;
+
+    @Autowired
+    private CommentRepo commentRepo;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private UploadBlobRepo blobRepo;
+
+    @TempDir
+    Path uploads;
+
+    private ContentAddressedUploadStore store;
+
+    private final LocalDateTime cutoff = LocalDateTime.now().minusDays(2);
+
+    @BeforeEach
+    void setUp() throws IOException {
+        store = new ContentAddressedUploadStore(blobRepo, transactionManager, new SimpleMeterRegistry(), uploads.toString());
+    }
+
+    @AfterEach
+    void cleanUp() {
+        commentRepo.deleteAll();
+        postRepo.deleteAll();
+        blobRepo.deleteAll();
+    }
+
+    private CasePurgeService purger(int batchSize, long timeBudgetMs) {
+        return new CasePurgeService(jdbc, transactionManager, store, new SimpleMeterRegistry(), uploads.toString(),
+                batchSize, timeBudgetMs, 0);
+    }
+
+    private long post(LocalDateTime createdAt, String file, int fileBytes) throws IOException {
+        CasePost post = new CasePost();
+        post.setTitle("Case");
+        post.setCreatedAt(createdAt);
+        post.getLikedUserIds().add(1L);
+        post.getLikedUserIds().add(2L);
+        if (file != null) {
+            Files.write(uploads.resolve(file), new byte[fileBytes]);
+            post.setFileName(file);
+            post.setFileUrl("/case-posts/file/" + file);
+        }
+        long id = postRepo.save(post).getId();
+
+        Comment comment = new Comment();
+        comment.setPostId(id);
+        comment.setContent("Agree");
+        commentRepo.save(comment);
+        return id;
+    }
+
+    @Test
+    void purgesOldPostsWithTheirChildRowsAndFilesInChunks() throws IOException {
+        for (int i = 0; i < 7; i++) post(cutoff.minusHours(1 + i), "old" + i + ".pdf", 100);
+        long kept = post(cutoff.plusHours(1), "new.pdf", 100);
+        List<List<Long>> chunks = new ArrayList<>();
+
+        CasePurgeService.Report report = purger(3, 60_000).purgeBefore(cutoff, chunks::add);
+
+        assertTrue(report.complete());
+        assertEquals(3, report.chunks());
+        assertEquals(List.of(3, 3, 1), chunks.stream().map(List::size).toList());
+        assertEquals(7, report.posts());
+        assertEquals(7, report.comments());
+        assertEquals(14, report.likers());
+        assertEquals(7, report.files());
+        assertEquals(700, report.bytes());
+
+        assertEquals(List.of(kept), postRepo.findAll().stream().map(CasePost::getId).toList());
+        assertEquals(1, commentRepo.count());
+        assertEquals(2, jdbc.queryForObject("SELECT COUNT(*) FROM case_post_liked_user_ids", Integer.class));
+        try (var files = Files.list(uploads)) {
+            assertEquals(List.of(uploads.resolve("new.pdf")), files.filter(Files::isRegularFile).toList());
+        }
+    }
+
+    @Test
+    void sharedAttachmentsAreDeletedWithTheirLastPost() throws IOException {
+        byte[] scan = new byte[250];
+        List<Long> ids = new ArrayList<>();
+        for (LocalDateTime createdAt : List.of(cutoff.minusHours(2), cutoff.minusHours(1), cutoff.plusHours(1))) {
+            UploadStore.Blob blob = store.store(new ByteArrayInputStream(scan));
+            CasePost post = new CasePost();
+            post.setCreatedAt(createdAt);
+            post.setFileHash(blob.hash());
+            post.setFileUrl("/case-posts/file/" + blob.hash() + "/scan.png");
+            ids.add(postRepo.save(post).getId());
+        }
+        String hash = postRepo.findById(ids.get(0)).orElseThrow().getFileHash();
+
+        CasePurgeService.Report first = purger(10, 60_000).purgeBefore(cutoff, chunk -> { });
+        assertEquals(2, first.posts());
+        assertEquals(0, first.files());
+        assertTrue(store.locate(hash).isPresent());
+
+        CasePurgeService.Report second = purger(10, 60_000).purgeBefore(cutoff.plusHours(2), chunk -> { });
+        assertEquals(1, second.files());
+        assertEquals(250, second.bytes());
+        assertTrue(store.locate(hash).isEmpty());
+    }
+
+    @Test
+    void stopsAtTheTimeBudgetAndFinishesOnTheNextRun() throws IOException {
+        for (int i = 0; i < 5; i++) post(cutoff.minusHours(1 + i), null, 0);
+
+        CasePurgeService.Report first = purger(2, 0).purgeBefore(cutoff, ids -> { });
+        assertFalse(first.complete());
+        assertEquals(1, first.chunks());
+        assertEquals(3, postRepo.count());
+
+        CasePurgeService.Report second = purger(2, 60_000).purgeBefore(cutoff, ids -> { });
+        assertTrue(second.complete());
+        assertEquals(3, second.posts());
+        assertEquals(0, postRepo.count());
+    }
+
+    @Test
+    void missingFilesAndPathsOutsideTheUploadDirAreSkipped() throws IOException {
+        Path outside = Files.write(uploads.resolveSibling(uploads.getFileName() + "-secret"), new byte[10]);
+        try {
+            long a = post(cutoff.minusHours(1), null, 0);
+            long b = post(cutoff.minusHours(2), null, 0);
+            jdbc.update("UPDATE case_post SET file_url = ? WHERE id = ?", "/case-posts/file/gone.pdf", a);
+            jdbc.update("UPDATE case_post SET file_url = ? WHERE id = ?", "/case-posts/file/../" + outside.getFileName(), b);
+
+            CasePurgeService.Report report = purger(10, 60_000).purgeBefore(cutoff, ids -> { });
+
+            assertEquals(2, report.posts());
+            assertEquals(0, report.files());
+            assertTrue(Files.exists(outside));
+        } finally {
+            Files.deleteIfExists(outside);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.demo.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * BM25 ranking, specialization filters and incremental changes on the search index.
+ */
+class CaseSearchIndexTest {
+
+    private static List<Long> ids(List<CaseSearchIndex.Hit> hits) {
+        return hits.stream().map(CaseSearchIndex.Hit::postId).toList();
+    }
+
+    private static CaseSearchIndex sample() {
+        CaseSearchIndex index = new CaseSearchIndex();
+        index.add(1, "Kidney stone on ultrasound", "Colicky flank pain, ultrasound shows a 6mm stone",
+                "flank pain, hematuria", "Nephrology");
+        index.add(2, "Renal colic", "Young male with flank pain, CT confirms kidney stone", "flank pain", "Urology");
+        index.add(3, "Gallstones", "Ultrasound of the abdomen shows multiple gallstones", "RUQ pain", "Gastroenterology");
+        index.add(4, "Chest pain in a smoker", "ECG changes, troponin raised", "chest pain, sweating", "Cardiology");
+        index.add(5, "Polycystic disease", "Incidental kidney finding on ultrasound", "none", "Nephrology");
+        return index;
+    }
+
+    @Test
+    void postsMatchingMoreQueryTermsRankFirst() {
+        List<CaseSearchIndex.Hit> hits = sample().search("ultrasound kidney stone", null, 10);
+
+        assertEquals(1L, hits.get(0).postId());
+        assertEquals(List.of(1L, 2L, 5L, 3L), ids(hits));
+        for (int i = 1; i < hits.size(); i++) {
+            assertTrue(hits.get(i - 1).score() >= hits.get(i).score());
+        }
+    }
+
+    @Test
+    void limitKeepsTheBestHits() {
+        assertEquals(List.of(1L, 2L), ids(sample().search("ultrasound kidney stone", null, 2)));
+    }
+
+    @Test
+    void specializationFilterIsCaseInsensitiveAndAcceptsSeveral() {
+        CaseSearchIndex index = sample();
+        assertEquals(List.of(1L, 5L), ids(index.search("ultrasound kidney stone", List.of("nephrology"), 10)));
+        assertEquals(List.of(1L, 2L, 5L),
+                ids(index.search("ultrasound kidney stone", List.of("Nephrology", "UROLOGY"), 10)));
+        assertTrue(index.search("ultrasound kidney stone", List.of("Dermatology"), 10).isEmpty());
+    }
+
+    @Test
+    void queriesWithNoKnownTermsFindNothing() {
+        CaseSearchIndex index = sample();
+        assertTrue(index.search("xylophone", null, 10).isEmpty());
+        assertTrue(index.search("  ", null, 10).isEmpty());
+        assertTrue(new CaseSearchIndex().search("kidney", null, 10).isEmpty());
+    }
+
+    @Test
+    void removedAndReplacedPostsAreSearchedAsTheyAreNow() {
+        CaseSearchIndex index = sample();
+        index.remove(1);
+        // one mention each, so the shorter post wins on length normalization
+        assertEquals(List.of(5L, 2L), ids(index.search("kidney", null, 10)));
+
+        index.add(4, "Kidney injury after contrast", "Creatinine doubled", "oliguria", "Nephrology");
+        assertEquals(4, index.size());
+        assertTrue(index.search("troponin", null, 10).isEmpty());
+        assertTrue(ids(index.search("kidney", List.of("Nephrology"), 10)).contains(4L));
+    }
+
+    @Test
+    void compactionKeepsResultsIntact() {
+        CaseSearchIndex index = new CaseSearchIndex();
+        for (long id = 1; id <= 30_000; id++) {
+            index.add(id, "case " + id, id % 2 == 0 ? "kidney stone" : "chest pain", null, "General");
+        }
+        // enough removals to trigger a compaction pass
+        for (long id = 1; id <= 20_000; id++) index.remove(id);
+
+        assertEquals(10_000, index.size());
+        List<CaseSearchIndex.Hit> hits = index.search("kidney", null, 10_000);
+        assertEquals(5_000, hits.size());
+        assertTrue(hits.stream().allMatch(h -> h.postId() > 20_000 && h.postId() % 2 == 0));
+    }
+
+    @Test
+    void replacingPostsOverAndOverKeepsTheIndexTheSizeOfTheLivePosts() {
+        CaseSearchIndex index = new CaseSearchIndex();
+        for (int round = 0; round < 500; round++) {
+            for (long id = 1; id <= 200; id++) {
+                index.add(id, "case " + id, id == 7 ? "kidney stone round " + round : "chest pain", null, "General");
+            }
+        }
+
+        assertEquals(200, index.size());
+        assertTrue(index.docCapacity() < 50_000, "doc numbers are reused after compaction: " + index.docCapacity());
+        assertEquals(List.of(7L), ids(index.search("kidney", List.of("general"), 10)));
+        assertEquals(199, index.search("chest", null, 1_000).size());
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.demo.service;
+
+import com.example.demo.model.CasePost;
+import com.example.demo.model.CaseSearchHit;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Search against H2: the startup scan fills the index, and hits come back as feed summaries.
+ */
+@DataJpaTest
+@Import({CaseSearchService.class, LikeService.class, SimpleMeterRegistry.class})
+class CaseSearchServiceTest {
+
+    @Autowired
+    private CaseSearchService search;
+
+    @Autowired
+    private EntityManager em;
+
+    private CasePost post(String title, String description, String specialization) {
+        CasePost post = new CasePost();
+        post.setTitle(title);
+        post.setDescription(description);
+        post.setSpecialization(specialization);
+        post.setCreatedAt(LocalDateTime.now());
+        em.persist(post);
+        return post;
+    }
+
+    @Test
+    void startupScanIndexesExistingPostsAndNewOnesAreAdded() {
+        CasePost stone = post("Kidney stone", "Seen on ultrasound", "Urology");
+        post("Asthma flare", "Wheeze after a cold", "Pulmonology");
+        em.flush();
+        em.clear();
+
+        search.build();
+        assertEquals(2, search.size());
+
+        List<CaseSearchHit> hits = search.search("ultrasound kidney stone", null, 10);
+        assertEquals(1, hits.size());
+        assertEquals(stone.getId(), hits.get(0).getPost().getId());
+        assertEquals("Kidney stone", hits.get(0).getPost().getTitle());
+        assertTrue(hits.get(0).getScore() > 0);
+
+        CasePost later = post("Staghorn kidney stone", "Needs PCNL", "Urology");
+        em.flush();
+        search.postCreated(later);
+        assertEquals(2, search.search("kidney", List.of("urology"), 10).size());
+
+        search.postsDeleted(List.of(stone.getId(), later.getId()));
+        assertTrue(search.search("kidney", null, 10).isEmpty());
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.demo.service;
+
+import com.example.demo.model.CasePost;
+import com.example.demo.model.Comment;
+import com.example.demo.model.CommentPage;
+import com.example.demo.model.CommentView;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Comments against H2: adding one is a single insert whatever the thread length, and a thread
+ * pages out in order without loading the post.
+ */
+@DataJpaTest
+@Import(CommentService.class)
+@TestPropertySource(properties = {
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "spring.jpa.show-sql=false"
+})
+class CommentServiceTest {
+
+    @Autowired
+    private CommentService comments;
+
+    @Autowired
+    private EntityManager em;
+
+    @Autowired
+    private EntityManagerFactory emf;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    private Statistics statistics;
+    private long postId;
+
+    @BeforeEach
+    void seed() {
+        CasePost post = new CasePost();
+        post.setTitle("Long thread");
+        em.persist(post);
+        postId = post.getId();
+        em.flush();
+        em.clear();
+
+        statistics = emf.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    private Comment comment(String content) {
+        Comment comment = new Comment();
+        comment.setDoctorId("d1");
+        comment.setDoctorName("Dr. Rao");
+        comment.setContent(content);
+        return comment;
+    }
+
+    @Test
+    void addingACommentIsOneInsert() {
+        for (int i = 0; i < 50; i++) comments.add(postId, comment("c" + i));
+
+        statistics.clear();
+        CommentView added = comments.add(postId, comment("one more"));
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(postId, added.getPostId());
+        assertEquals("one more", added.getContent());
+        assertNotNull(added.getCreatedAt());
+    }
+
+    @Test
+    void commentOnMissingPostIsNotFound() {
+        ResponseStatusException e = assertThrows(ResponseStatusException.class,
+                () -> comments.add(postId + 1_000, comment("lost")));
+        assertEquals(HttpStatus.NOT_FOUND, e.getStatusCode());
+    }
+
+    @Test
+    void otherConstraintViolationsAreNotReportedAsAMissingPost() {
+        // longer than the content column
+        assertThrows(DataIntegrityViolationException.class, () -> comments.add(postId, comment("x".repeat(300))));
+    }
+
+    @Test
+    void pagesWalkTheThreadOldestFirst() {
+        for (int i = 0; i < 25; i++) comments.add(postId, comment("c" + i));
+
+        List<String> seen = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            statistics.clear();
+            CommentPage page = comments.page(postId, cursor, 10);
+            assertEquals(1, statistics.getPrepareStatementCount());
+            page.getItems().forEach(c -> seen.add(c.getContent()));
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(3, pages);
+        assertEquals(25, seen.size());
+        for (int i = 0; i < 25; i++) assertEquals("c" + i, seen.get(i));
+    }
+
+    @Test
+    void pagingAnUnknownPostOrBadCursorFails() {
+        assertThrows(ResponseStatusException.class, () -> comments.page(postId + 1_000, null, 10));
+        assertThrows(ResponseStatusException.class, () -> comments.page(postId, "not-a-cursor", 10));
+        assertTrue(comments.page(postId, null, 10).getItems().isEmpty());
+    }
+
+    @Test
+    void linksInTheOldJoinTableMoveOntoTheComment() {
+        jdbc.update("INSERT INTO comment (content) VALUES ('legacy')");
+        Long commentId = jdbc.queryForObject("SELECT id FROM comment WHERE content = 'legacy'", Long.class);
+        jdbc.execute("CREATE TABLE case_post_comments (case_post_id BIGINT NOT NULL, comments_id BIGINT NOT NULL)");
+        jdbc.update("INSERT INTO case_post_comments VALUES (?, ?)", postId, commentId);
+
+        comments.migrateJoinTable();
+
+        List<CommentView> items = comments.page(postId, null, 10).getItems();
+        assertEquals(1, items.size());
+        assertEquals("legacy", items.get(0).getContent());
+        assertEquals(0, jdbc.queryForObject("SELECT COUNT(*) FROM information_schema.tables " +
+                "WHERE LOWER(table_name) = 'case_post_comments'", Integer.class));
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.demo.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Cache keys: word order and filler don't matter, but a negation only covers its own clause.
+ */
+class DiagnosisCacheTest {
+
+    @Test
+    void orderAndFillerWordsShareAKey() {
+        assertEquals(DiagnosisCache.normalize("fever, headache"),
+                DiagnosisCache.normalize("I have a Headache and fever"));
+        assertEquals("cough fever", DiagnosisCache.normalize("coughs, fever"));
+    }
+
+    @Test
+    void negationStaysInsideItsClause() {
+        assertEquals("cough no_fever", DiagnosisCache.normalize("no fever, cough"));
+        assertEquals("fever no_cough", DiagnosisCache.normalize("fever, no cough"));
+        assertNotEquals(DiagnosisCache.normalize("no fever, cough"), DiagnosisCache.normalize("fever, no cough"));
+    }
+
+    @Test
+    void aNegatedFindingIsNotTheFinding() {
+        assertEquals("no_chest no_pain", DiagnosisCache.normalize("no chest pain"));
+        assertNotEquals(DiagnosisCache.normalize("chest pain"), DiagnosisCache.normalize("no chest pain"));
+        assertEquals(DiagnosisCache.normalize("without chest pain"), DiagnosisCache.normalize("No chest pains"));
+        assertEquals("headache no_nausea", DiagnosisCache.normalize("don't have nausea but headache"));
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.demo.service;
+
+import com.example.demo.model.AIDiagnosis;
+import com.example.demo.model.DiagnosisJob;
+import com.example.demo.model.DiagnosisJobItem;
+import com.example.demo.repository.DiagnosisJobItemRepo;
+import com.example.demo.repository.DiagnosisJobRepo;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Job submission and the dispatcher, with the repositories and AiService mocked.
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class DiagnosisJobServiceTest {
+
+    @Mock
+    private DiagnosisJobRepo jobRepo;
+
+    @Mock
+    private DiagnosisJobItemRepo itemRepo;
+
+    @Mock
+    private AiService aiService;
+
+    @InjectMocks
+    private DiagnosisJobService service;
+
+    private final List<DiagnosisJobItem> queued = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(service, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(service, "parallelism", 2);
+        ReflectionTestUtils.setField(service, "maxItems", 3);
+
+        when(jobRepo.save(any())).thenAnswer(inv -> {
+            DiagnosisJob job = inv.getArgument(0);
+            job.setId(7L);
+            return job;
+        });
+        when(itemRepo.findByStatusOrderById(eq("queued"), any(Pageable.class))).thenAnswer(inv -> {
+            int limit = inv.<Pageable>getArgument(1).getPageSize();
+            List<DiagnosisJobItem> batch = new ArrayList<>(queued.subList(0, Math.min(limit, queued.size())));
+            queued.removeAll(batch);
+            return batch;
+        });
+        when(itemRepo.claim(anyLong())).thenReturn(1);
+    }
+
+    private DiagnosisJobItem item(long id, String symptoms) {
+        DiagnosisJobItem item = new DiagnosisJobItem();
+        item.setId(id);
+        item.setJobId(7L);
+        item.setSymptoms(symptoms);
+        item.setStatus("running");
+        return item;
+    }
+
+    @Test
+    void submitStoresOneItemPerSymptomSetInOrder() {
+        DiagnosisJob job = service.submit(1L, List.of("fever", "cough", "rash"));
+
+        assertEquals(3, job.getTotal());
+        assertEquals(1L, job.getOwnerId());
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<DiagnosisJobItem>> items = ArgumentCaptor.forClass(List.class);
+        verify(itemRepo).saveAll(items.capture());
+        assertEquals(List.of(0, 1, 2), items.getValue().stream().map(DiagnosisJobItem::getPosition).toList());
+        assertTrue(items.getValue().stream().allMatch(i -> i.getJobId() == 7L && "queued".equals(i.getStatus())));
+    }
+
+    @Test
+    void submitRejectsEmptyOrOversizedBatches() {
+        assertThrows(IllegalArgumentException.class, () -> service.submit(1L, List.of()));
+        assertThrows(IllegalArgumentException.class, () -> service.submit(1L, List.of("a", "b", "c", "d")));
+        assertThrows(IllegalArgumentException.class, () -> service.submit(1L, List.of("fever", " ")));
+    }
+
+    @Test
+    void dispatchKeepsAtMostParallelismItemsInFlight() {
+        Sinks.One<ResponseEntity<AIDiagnosis>> pending = Sinks.one();
+        when(aiService.diagnose(anyString())).thenReturn(pending.asMono());
+        for (long id = 1; id <= 5; id++) queued.add(item(id, "s" + id));
+
+        service.dispatch();
+        service.dispatch();
+
+        verify(aiService, times(2)).diagnose(anyString());
+        assertEquals(3, queued.size());
+    }
+
+    @Test
+    void finishedItemsStoreTheDiagnosisAndUpdateTheJob() {
+        AIDiagnosis diagnosis = new AIDiagnosis();
+        diagnosis.setPossibleConditions(List.of());
+        diagnosis.setRecommendedTests(List.of("CBC"));
+        when(aiService.diagnose("fever")).thenReturn(Mono.just(
+                ResponseEntity.ok().header(AiService.SOURCE_HEADER, "cache").body(diagnosis)));
+        when(aiService.diagnose("broken")).thenReturn(Mono.error(new IllegalStateException("upstream said: key sk-123 revoked")));
+        when(aiService.diagnose("nothing")).thenReturn(Mono.empty());
+        DiagnosisJobItem ok = item(1, "fever");
+        DiagnosisJobItem bad = item(2, "broken");
+        DiagnosisJobItem empty = item(3, "nothing");
+        queued.add(ok);
+        queued.add(bad);
+        queued.add(empty);
+
+        service.dispatch();
+
+        verify(jobRepo, timeout(2000)).incrementCompleted(7L);
+        verify(jobRepo, timeout(2000).times(2)).incrementFailed(7L);
+        verify(jobRepo, timeout(2000).times(3)).completeIfFinished(eq(7L), any());
+        assertEquals("done", ok.getStatus());
+        assertEquals("cache", ok.getSource());
+        assertTrue(ok.getResult().contains("CBC"));
+        assertEquals("failed", bad.getStatus());
+        assertEquals("AI provider error, please try again.", bad.getError());
+        assertEquals("failed", empty.getStatus());
+        assertEquals("No diagnosis could be produced.", empty.getError());
+
+        Map<String, Object> view = DiagnosisJobService.view(ok);
+        assertEquals(List.of("CBC"), ((AIDiagnosis) view.get("diagnosis")).getRecommendedTests());
+    }
+}
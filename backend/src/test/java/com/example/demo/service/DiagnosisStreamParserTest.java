@@ -0,0 +1,79 @@
+package com.example.demo.service;
+
+import com.example.demo.model.AIDiagnosis;
+import com.example.demo.model.Condition;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DiagnosisStreamParserTest {
+
+    private static final String DOCUMENT = """
+            {"possibleConditions":[
+            {"condition":"Migraine","probability":0.55,"description":"Headache {often} with \\"aura\\"."},
+            {"condition":"Sinusitis","probability":0.3,"description":"Facial pain]","codes":{"icd":"J32"}}],
+            "recommendedTests":[{"name":"CRP"}]}""";
+
+    @Test
+    void conditionsArriveAsSoonAsTheyCloseWhenFedOneCharacterAtATime() {
+        DiagnosisStreamParser parser = new DiagnosisStreamParser();
+        List<Condition> seen = new ArrayList<>();
+        List<Integer> at = new ArrayList<>();
+        for (int i = 0; i < DOCUMENT.length(); i++) {
+            List<Condition> completed = parser.feed(String.valueOf(DOCUMENT.charAt(i)));
+            seen.addAll(completed);
+            for (int k = 0; k < completed.size(); k++) at.add(i);
+        }
+
+        assertEquals(List.of("Migraine", "Sinusitis"), seen.stream().map(Condition::getCondition).toList());
+        assertEquals("Headache {often} with \"aura\".", seen.get(0).getDescription());
+        // each one on its own closing brace, before the rest of the document
+        assertEquals(DOCUMENT.indexOf("}", DOCUMENT.indexOf("aura")), at.get(0));
+        assertTrue(at.get(1) < DOCUMENT.indexOf("recommendedTests"));
+        assertEquals(2, parser.finish().getPossibleConditions().size());
+    }
+
+    @Test
+    void aKeySplitAcrossChunksIsStillFound() {
+        DiagnosisStreamParser parser = new DiagnosisStreamParser();
+        assertTrue(parser.feed("Sure! ```json\n{\"possible").isEmpty());
+        assertTrue(parser.feed("Condi").isEmpty());
+        List<Condition> completed = parser.feed("tions\": [{\"condition\":\"Flu\",\"probability\":0.9}");
+        assertEquals("Flu", completed.get(0).getCondition());
+    }
+
+    @Test
+    void aMalformedConditionIsSkippedAndTheNextOneStillArrives() {
+        DiagnosisStreamParser parser = new DiagnosisStreamParser();
+        List<Condition> completed = new ArrayList<>();
+        completed.addAll(parser.feed("{\"possibleConditions\":[{\"condition\":\"Bad\",\"probability\":oops},"));
+        completed.addAll(parser.feed("{\"condition\":\"Good\",\"probability\":0.4}"));
+        assertEquals(List.of("Good"), completed.stream().map(Condition::getCondition).toList());
+    }
+
+    @Test
+    void textAfterTheArrayIsIgnored() {
+        DiagnosisStreamParser parser = new DiagnosisStreamParser();
+        parser.feed("{\"possibleConditions\":[{\"condition\":\"Flu\",\"probability\":0.9}],");
+        // a stray end-of-stream sentinel or later keys never produce conditions
+        assertTrue(parser.feed("\"recommendedTests\":[\"CBC\"]}\n[DONE]").isEmpty());
+        assertTrue(parser.feed("{\"condition\":\"Ghost\"}").isEmpty());
+
+        AIDiagnosis diagnosis = parser.finish();
+        assertEquals(List.of("Flu"), diagnosis.getPossibleConditions().stream().map(Condition::getCondition).toList());
+    }
+
+    @Test
+    void aTruncatedStreamKeepsTheConditionsThatClosed() {
+        DiagnosisStreamParser parser = new DiagnosisStreamParser();
+        parser.feed("{\"possibleConditions\":[{\"condition\":\"Flu\",\"probability\":0.9},{\"condition\":\"Co");
+
+        AIDiagnosis salvaged = parser.finish();
+        assertEquals(1, salvaged.getPossibleConditions().size());
+        assertTrue(salvaged.getRecommendedTests().isEmpty());
+        assertNull(new DiagnosisStreamParser().finish());
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.demo.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * The facts pool with a mocked AiService: cold starts sharing one refresh, stale-while-revalidate,
+ * persistence across restarts, and failed refreshes keeping the last good pool.
+ */
+class HealthFactsServiceTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @TempDir
+    Path dir;
+
+    private AiService aiService;
+    private AtomicInteger batch;
+
+    @BeforeEach
+    void setUp() {
+        aiService = mock(AiService.class);
+        batch = new AtomicInteger();
+    }
+
+    @Test
+    void concurrentColdRequestsShareOneRefresh() throws Exception {
+        Sinks.One<String> upstream = Sinks.one();
+        AtomicInteger calls = new AtomicInteger();
+        when(aiService.getFacts()).thenAnswer(inv -> {
+            calls.incrementAndGet();
+            return upstream.asMono();
+        });
+        HealthFactsService facts = service(1);
+
+        List<Mono<String>> answers = new ArrayList<>();
+        for (int i = 0; i < 20; i++) answers.add(facts.nextFacts().cache());
+        answers.forEach(Mono::subscribe);
+        upstream.tryEmitValue(batchJson(1));
+
+        for (Mono<String> answer : answers) {
+            assertEquals(5, MAPPER.readTree(answer.block(Duration.ofSeconds(5))).size());
+        }
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void aStalePoolIsServedWhileItRefreshesAndTheResultIsPersisted() throws Exception {
+        Path file = dir.resolve("facts-pool.json");
+        Files.writeString(file, "{\"generatedAt\":1,\"facts\":" + batchJson(100) + "}");
+        when(aiService.getFacts()).thenAnswer(inv -> Mono.just(batchJson(batch.incrementAndGet())));
+
+        HealthFactsService facts = service(2);
+        // the old pool answers straight away, and the refresh it triggers replaces it
+        assertTrue(facts.nextFacts().block().contains("Fact 100"));
+        verify(aiService, times(2)).getFacts();
+        assertFalse(facts.nextFacts().block().contains("Fact 100"));
+
+        JsonNode persisted = MAPPER.readTree(file.toFile());
+        assertEquals(10, persisted.path("facts").size());
+        assertTrue(persisted.path("generatedAt").asLong() > 1);
+
+        // a restart serves the persisted pool without calling the provider
+        HealthFactsService restarted = service(2);
+        assertFalse(restarted.nextFacts().block().contains("Fact 100"));
+        verifyNoMoreInteractions(aiService);
+    }
+
+    @Test
+    void aFailedRefreshKeepsTheLastPoolAndBacksOff() throws Exception {
+        Path file = dir.resolve("facts-pool.json");
+        Files.writeString(file, "{\"generatedAt\":1,\"facts\":" + batchJson(100) + "}");
+        when(aiService.getFacts()).thenReturn(Mono.error(new IllegalStateException("provider down")))
+                .thenReturn(Mono.just("not json"));
+
+        HealthFactsService facts = service(2);
+        assertTrue(facts.nextFacts().block().contains("Fact 100"));
+        assertTrue(facts.nextFacts().block().contains("Fact 101"));
+        // both batches were tried once; the stale pool does not retrigger inside the backoff
+        verify(aiService, times(2)).getFacts();
+        assertTrue(Files.readString(file).contains("\"generatedAt\":1"));
+    }
+
+    private HealthFactsService service(int batches) {
+        HealthFactsService facts = new HealthFactsService();
+        ReflectionTestUtils.setField(facts, "aiService", aiService);
+        ReflectionTestUtils.setField(facts, "batches", batches);
+        ReflectionTestUtils.setField(facts, "staleAfterMs", 60_000L);
+        ReflectionTestUtils.setField(facts, "retryBackoffMs", 60_000L);
+        ReflectionTestUtils.setField(facts, "poolFile", dir.resolve("facts-pool.json").toString());
+        facts.loadPersisted();
+        return facts;
+    }
+
+    // five facts numbered from 5 * (n - 1) + 1, or from n itself when n is 100
+    private static String batchJson(int n) {
+        int first = n == 100 ? 100 : 5 * (n - 1) + 1;
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 5; i++) {
+            if (i > 0) json.append(',');
+            json.append("{\"title\":\"Fact ").append(first + i).append("\",\"description\":\"d\"}");
+        }
+        return json.append(']').toString();
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.demo.service;
+
+import com.example.demo.model.CasePost;
+import com.example.demo.repository.CasePostRepo;
+import com.example.demo.repository.UploadBlobRepo;
+import com.example.demo.storage.ContentAddressedUploadStore;
+import com.example.demo.storage.UploadStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Image derivatives against H2 and a temp upload directory: sizes, stripped metadata, the URLs
+ * recorded on every post sharing the upload, and uploads that are not images.
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ImageDerivativeServiceTest {
+
+    @Autowired
+    private CasePostRepo postRepo;
+
+    @Autowired
+    private UploadBlobRepo blobRepo;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @TempDir
+    Path root;
+
+    private UploadStore store;
+    private CaseFeedCache feedCache;
+    private SimpleMeterRegistry registry;
+    private ImageDerivativeService images;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        registry = new SimpleMeterRegistry();
+        store = new ContentAddressedUploadStore(blobRepo, transactionManager, registry, root.toString());
+        feedCache = mock(CaseFeedCache.class);
+        images = new ImageDerivativeService(jdbc, store, feedCache, registry, 1, 10, 50_000_000);
+    }
+
+    @AfterEach
+    void cleanUp() {
+        images.shutdown();
+        postRepo.deleteAll();
+        blobRepo.deleteAll();
+    }
+
+    // an opaque PNG carrying a text chunk that must not survive into the derivatives
+    private static byte[] png(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y += 7) {
+            for (int x = 0; x < width; x += 7) image.setRGB(x, y, (x * 31 + y) & 0xFFFFFF);
+        }
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("png").next();
+        IIOMetadata metadata = writer.getDefaultImageMetadata(ImageTypeSpecifier.createFromRenderedImage(image), null);
+        IIOMetadataNode entry = new IIOMetadataNode("tEXtEntry");
+        entry.setAttribute("keyword", "Author");
+        entry.setAttribute("value", "Jane Patient");
+        IIOMetadataNode text = new IIOMetadataNode("tEXt");
+        text.appendChild(entry);
+        IIOMetadataNode tree = new IIOMetadataNode("javax_imageio_png_1.0");
+        tree.appendChild(text);
+        metadata.mergeTree("javax_imageio_png_1.0", tree);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(bytes)) {
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, metadata), null);
+        } finally {
+            writer.dispose();
+        }
+        return bytes.toByteArray();
+    }
+
+    private CasePost post(byte[] content, String fileName) throws IOException {
+        UploadStore.Blob blob = store.store(new ByteArrayInputStream(content));
+        CasePost post = new CasePost();
+        post.setFileName(fileName);
+        post.setFileHash(blob.hash());
+        post.setFileUrl("/case-posts/file/" + blob.hash() + "/" + fileName);
+        return postRepo.save(post);
+    }
+
+    @Test
+    void makesEachSizeWithoutMetadataAndRecordsTheUrlsOnEveryPost() throws IOException {
+        byte[] original = png(3000, 2000);
+        assertTrue(new String(original, StandardCharsets.ISO_8859_1).contains("Jane Patient"));
+        CasePost first = post(original, "scan.png");
+        CasePost second = post(original, "same scan.png");
+
+        images.process(first.getFileHash());
+
+        Path preview = images.locate(first.getFileHash(), ImageDerivativeService.Size.PREVIEW).orElseThrow();
+        Path thumb = images.locate(first.getFileHash(), ImageDerivativeService.Size.THUMB).orElseThrow();
+        BufferedImage previewImage = ImageIO.read(preview.toFile());
+        BufferedImage thumbImage = ImageIO.read(thumb.toFile());
+        assertEquals(1024, previewImage.getWidth());
+        assertEquals(683, previewImage.getHeight());
+        assertEquals(240, thumbImage.getWidth());
+        assertEquals(160, thumbImage.getHeight());
+        assertTrue(thumb.getFileName().toString().endsWith(".jpg"));
+        assertFalse(new String(Files.readAllBytes(preview), StandardCharsets.ISO_8859_1).contains("Jane Patient"));
+
+        CasePost updated = postRepo.findById(second.getId()).orElseThrow();
+        assertEquals(second.getFileUrl() + "?size=thumb", updated.getThumbnailUrl());
+        assertEquals(second.getFileUrl() + "?size=preview", updated.getPreviewUrl());
+        assertEquals(first.getFileUrl() + "?size=thumb", postRepo.findById(first.getId()).orElseThrow().getThumbnailUrl());
+        verify(feedCache).invalidate();
+        assertEquals(1, registry.get("cases.images.processed").tag("result", "done").counter().count());
+
+        assertEquals("scan.jpg", ImageDerivativeService.derivativeName("scan.png", thumb));
+    }
+
+    @Test
+    void smallImagesAreNotUpscaled() {
+        BufferedImage small = new BufferedImage(100, 50, BufferedImage.TYPE_INT_RGB);
+        BufferedImage scaled = ImageDerivativeService.scale(small, 240, false);
+        assertEquals(100, scaled.getWidth());
+        assertEquals(50, scaled.getHeight());
+    }
+
+    @Test
+    void nonImagesAreLeftAlone() throws IOException {
+        CasePost pdf = post("%PDF-1.4".getBytes(StandardCharsets.UTF_8), "report.pdf");
+        CasePost broken = post("not really a png".getBytes(StandardCharsets.UTF_8), "broken.png");
+
+        images.postCreated(pdf);
+        images.process(broken.getFileHash());
+
+        assertNull(postRepo.findById(pdf.getId()).orElseThrow().getThumbnailUrl());
+        assertNull(postRepo.findById(broken.getId()).orElseThrow().getThumbnailUrl());
+        assertTrue(images.locate(broken.getFileHash(), ImageDerivativeService.Size.THUMB).isEmpty());
+        assertEquals(1, registry.get("cases.images.processed").tag("result", "skipped").counter().count());
+        verifyNoInteractions(feedCache);
+    }
+
+    @Test
+    void newUploadsAreProcessedInTheBackgroundAndGoWithTheirBlob() throws Exception {
+        CasePost post = post(png(800, 600), "xray.png");
+        images.postCreated(post);
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (postRepo.findById(post.getId()).orElseThrow().getThumbnailUrl() == null) {
+            assertTrue(System.currentTimeMillis() < deadline, "derivatives not made in time");
+            Thread.sleep(20);
+        }
+        Path thumb = images.locate(post.getFileHash(), ImageDerivativeService.Size.THUMB).orElseThrow();
+        assertEquals(0.0, registry.get("cases.images.backlog").gauge().value(), 1.0);
+
+        assertTrue(store.release(post.getFileHash()) > 0);
+        assertFalse(Files.exists(thumb));
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.demo.service;
+
+import com.example.demo.model.CasePost;
+import com.example.demo.repository.CasePostRepo;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Likes against H2: idempotence, concurrent likers on one post, and what a flush writes.
+ * Runs outside a test transaction so the flush commits like it does in production.
+ */
+@DataJpaTest
+@Import({LikeService.class, SimpleMeterRegistry.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class LikeServiceTest {
+
+    @Autowired
+    private LikeService likes;
+
+    @Autowired
+    private CasePostRepo postRepo;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    private long postId;
+
+    @BeforeEach
+    void seed() {
+        CasePost post = new CasePost();
+        post.setTitle("Hot case");
+        post.setLikes(2);
+        post.getLikedUserIds().add(100L);
+        post.getLikedUserIds().add(101L);
+        postId = postRepo.save(post).getId();
+    }
+
+    @AfterEach
+    void cleanUp() {
+        likes.flush();
+        postRepo.deleteAll();
+    }
+
+    private long dbLikes() {
+        return jdbc.queryForObject("SELECT likes FROM case_post WHERE id = ?", Long.class, postId);
+    }
+
+    private List<Long> dbLikers() {
+        return jdbc.queryForList("SELECT liked_user_ids FROM case_post_liked_user_ids WHERE case_post_id = ? " +
+                "ORDER BY liked_user_ids", Long.class, postId);
+    }
+
+    @Test
+    void likeAndUnlikeAreIdempotent() {
+        assertEquals(LikeService.Change.LIKED, likes.like(postId, 1).change());
+        LikeService.Result again = likes.like(postId, 1);
+        assertEquals(LikeService.Change.UNCHANGED, again.change());
+        assertEquals(3, again.likes());
+        assertTrue(again.liked());
+
+        assertEquals(LikeService.Change.UNCHANGED, likes.like(postId, 100).change());
+        assertEquals(LikeService.Change.UNLIKED, likes.unlike(postId, 100).change());
+        LikeService.Result gone = likes.unlike(postId, 100);
+        assertEquals(LikeService.Change.UNCHANGED, gone.change());
+        assertEquals(2, gone.likes());
+        assertFalse(gone.liked());
+    }
+
+    @Test
+    void toggleFlipsAndUnlikeRemovesTheLiker() {
+        assertFalse(likes.toggle(postId, 101).liked());
+        assertTrue(likes.toggle(postId, 7).liked());
+
+        likes.flush();
+
+        assertEquals(2, dbLikes());
+        assertEquals(List.of(7L, 100L), dbLikers());
+    }
+
+    @Test
+    void nothingReachesTheDatabaseUntilFlush() {
+        likes.like(postId, 1);
+        assertEquals(2, dbLikes());
+        assertEquals(3, likes.currentLikes(postId, dbLikes()));
+
+        likes.flush();
+        assertEquals(3, dbLikes());
+        assertEquals(3, likes.currentLikes(postId, dbLikes()));
+    }
+
+    @Test
+    void likeThenUnlikeBeforeFlushWritesNothing() {
+        likes.like(postId, 1);
+        likes.unlike(postId, 1);
+        likes.flush();
+        assertEquals(2, dbLikes());
+        assertEquals(List.of(100L, 101L), dbLikers());
+    }
+
+    @Test
+    void concurrentLikersAreAllCountedOnce() throws Exception {
+        int users = 2_000;
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 16; t++) {
+                futures.add(pool.submit(() -> {
+                    // every thread likes every user, so most calls are repeats
+                    for (long user = 1; user <= users; user++) {
+                        likes.like(postId, user);
+                    }
+                }));
+                if (t == 8) futures.add(pool.submit(likes::flush));
+            }
+            for (Future<?> f : futures) f.get();
+        } finally {
+            pool.shutdown();
+        }
+
+        // users 100 and 101 had already liked the post
+        assertEquals(users, likes.currentLikes(postId, -1));
+        likes.flush();
+        assertEquals(users, dbLikes());
+        assertEquals(users, dbLikers().size());
+    }
+
+    @Test
+    void unknownPostIsNotFound() {
+        assertThrows(ResponseStatusException.class, () -> likes.like(postId + 1_000, 1));
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.demo.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Routing decisions from recorded latencies and outcomes, with exploration turned off.
+ */
+class ModelRouterTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private ModelRouter router(String... models) {
+        AiRoutingProperties properties = new AiRoutingProperties();
+        for (String model : models) {
+            AiRoutingProperties.Endpoint endpoint = new AiRoutingProperties.Endpoint();
+            endpoint.setModel(model);
+            properties.getEndpoints().add(endpoint);
+        }
+        properties.setExploreRatio(0);
+        properties.setAlpha(0.5);
+        return new ModelRouter(properties, registry, "http://localhost/chat", "key");
+    }
+
+    private static ModelRouter.Route route(ModelRouter router, String model) {
+        return router.routes().stream().filter(r -> r.model().equals(model)).findFirst().orElseThrow();
+    }
+
+    @Test
+    void defaultsToTheOpenRouterModelWhenNothingIsConfigured() {
+        ModelRouter router = router();
+        ModelRouter.Route route = router.select();
+        assertEquals(ModelRouter.DEFAULT_MODEL, route.model());
+        assertEquals("http://localhost/chat", route.url());
+        assertEquals("key", route.apiKey());
+    }
+
+    @Test
+    void sendsTrafficToTheFastestEndpointAndFollowsChanges() {
+        ModelRouter router = router("a", "b");
+        ModelRouter.Route a = route(router, "a");
+        ModelRouter.Route b = route(router, "b");
+
+        for (int i = 0; i < 5; i++) {
+            router.record(a, Duration.ofMillis(900).toNanos(), true);
+            router.record(b, Duration.ofMillis(300).toNanos(), true);
+        }
+        assertSame(b, router.select());
+
+        // b slows down
+        for (int i = 0; i < 5; i++) {
+            router.record(b, Duration.ofMillis(3000).toNanos(), true);
+        }
+        assertSame(a, router.select());
+    }
+
+    @Test
+    void failingEndpointCoolsDownAndOthersTakeOver() {
+        ModelRouter router = router("a", "b");
+        ModelRouter.Route a = route(router, "a");
+        ModelRouter.Route b = route(router, "b");
+        router.record(a, Duration.ofMillis(200).toNanos(), true);
+        router.record(b, Duration.ofMillis(800).toNanos(), true);
+        assertSame(a, router.select());
+
+        router.record(a, Duration.ofMillis(200).toNanos(), false);
+        router.record(a, Duration.ofMillis(200).toNanos(), false);
+
+        assertFalse(a.available(System.currentTimeMillis()));
+        assertSame(b, router.select());
+    }
+
+    @Test
+    void allEndpointsCoolingDownStillPicksOne() {
+        ModelRouter router = router("a", "b");
+        for (ModelRouter.Route route : router.routes()) {
+            router.record(route, 1_000_000, false);
+            router.record(route, 1_000_000, false);
+        }
+        assertNotNull(router.select());
+    }
+
+    @Test
+    void observeRecordsOutcomeAndInFlight() {
+        ModelRouter router = router("a", "b");
+        ModelRouter.Route a = route(router, "a");
+
+        Mono<String> call = router.observe(a, Mono.delay(Duration.ofMillis(50)).map(x -> "ok"));
+        assertEquals("ok", call.block());
+        assertTrue(a.latencyMs() < 2000, "latency moved towards the sample");
+
+        assertThrows(RuntimeException.class,
+                () -> router.observe(a, Mono.error(new IllegalStateException("boom"))).block());
+        assertTrue(a.errorRate() > 0);
+        assertEquals(0, registry.get("ai.route.in-flight").tag("endpoint", "a").gauge().value());
+        assertEquals(1, registry.get("ai.route.calls").tag("endpoint", "a").tag("outcome", "error").timer().count());
+    }
+
+    @Test
+    void streamEndingAtItsMarkerCountsAsSuccess() {
+        ModelRouter router = router("a", "b");
+        ModelRouter.Route a = route(router, "a");
+        router.record(a, 1_000_000, false);
+        double failed = a.errorRate();
+
+        AtomicBoolean upstreamCancelled = new AtomicBoolean();
+        Flux<String> upstream = Flux.just("one", "two", "[DONE]", "after")
+                .concatWith(Flux.never())
+                .doOnCancel(() -> upstreamCancelled.set(true));
+
+        assertEquals(List.of("one", "two"), router.observe(a, upstream, "[DONE]"::equals).collectList().block());
+        assertTrue(upstreamCancelled.get());
+        assertTrue(a.errorRate() < failed, "completion at [DONE] recorded as a success");
+        assertEquals(0, registry.get("ai.route.in-flight").tag("endpoint", "a").gauge().value());
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.demo.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PasswordHashingServiceTest {
+
+    private PasswordHashingService hashing;
+
+    @AfterEach
+    void shutdown() {
+        hashing.shutdown();
+    }
+
+    @Test
+    void workChainedOnAResultRunsOffTheHashingPool() throws Exception {
+        hashing = new PasswordHashingService(new BCryptPasswordEncoder(4), new SimpleMeterRegistry(), 1, 4, 1);
+        // a slow hash, so the continuation is attached before the result is in
+        String encoded = new BCryptPasswordEncoder(12).encode("secret");
+
+        String thread = hashing.matches("secret", encoded)
+                .thenApply(ok -> Thread.currentThread().getName())
+                .get(10, TimeUnit.SECONDS);
+        assertTrue(thread.startsWith("bcrypt-done-"), thread);
+    }
+
+    @Test
+    void aFullQueueRejectsStraightAway() {
+        hashing = new PasswordHashingService(new BCryptPasswordEncoder(12), new SimpleMeterRegistry(), 1, 1, 1);
+        assertThrows(RejectedExecutionException.class, () -> {
+            for (int i = 0; i < 5; i++) hashing.encode("secret");
+        });
+    }
+}
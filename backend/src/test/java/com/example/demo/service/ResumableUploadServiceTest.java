@@ -0,0 +1,348 @@
+package com.example.demo.service;
+
+import com.example.demo.model.UploadSession;
+import com.example.demo.repository.UploadBlobRepo;
+import com.example.demo.repository.UploadSessionRepo;
+import com.example.demo.storage.ContentAddressedUploadStore;
+import com.example.demo.storage.UploadStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Resumable uploads against H2 and a temp upload directory: chunks out of order and across a
+ * restart, resuming from the received ranges, rejected chunks, checksums, chunks racing a commit
+ * or each other, attach and expiry.
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ResumableUploadServiceTest {
+
+    private static final long OWNER = 7L;
+    private static final int CHUNK = 100_000;
+
+    @Autowired
+    private UploadSessionRepo sessionRepo;
+
+    @Autowired
+    private UploadBlobRepo blobRepo;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @TempDir
+    Path root;
+
+    private UploadStore store;
+    private ResumableUploadService uploads;
+    private byte[] data;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        store = new ContentAddressedUploadStore(blobRepo, transactionManager, registry, root.toString());
+        uploads = newService();
+        // three full chunks and a short last one
+        data = new byte[3 * CHUNK + 50_000];
+        new Random(5).nextBytes(data);
+    }
+
+    @AfterEach
+    void cleanUp() {
+        jdbc.update("DELETE FROM upload_session_chunk");
+        sessionRepo.deleteAll();
+        blobRepo.deleteAll();
+    }
+
+    @Test
+    void chunksInAnyOrderAndAcrossARestartCommitToTheFileHash() throws Exception {
+        UploadSession session = open();
+        assertEquals(4, session.getChunkCount());
+        put(session, 2);
+        put(session, 0);
+        put(session, 3);
+
+        Map<String, Object> view = uploads.view(uploads.find(session.getId(), OWNER));
+        assertEquals(List.of("0-0", "2-3"), view.get("receivedChunks"));
+        assertEquals((long) 2 * CHUNK + 50_000, view.get("receivedBytes"));
+
+        ResponseStatusException missing = assertThrows(ResponseStatusException.class,
+                () -> uploads.commit(session.getId(), OWNER, null));
+        assertEquals(HttpStatus.CONFLICT, missing.getStatusCode());
+        assertTrue(missing.getReason().contains("1-1"));
+        assertEquals("open", uploads.find(session.getId(), OWNER).getStatus());
+
+        // a restarted server has no running hash and rebuilds it from the part file
+        uploads = newService();
+        put(session, 1);
+        UploadSession committed = uploads.commit(session.getId(), OWNER, sha256(data));
+
+        assertEquals("committed", committed.getStatus());
+        assertEquals(sha256(data), committed.getFileHash());
+        assertArrayEquals(data, Files.readAllBytes(store.locate(committed.getFileHash()).orElseThrow()));
+        assertFalse(Files.exists(uploads.partFile(session.getId())));
+        assertEquals(1, blobRepo.findById(committed.getFileHash()).orElseThrow().getRefCount());
+    }
+
+    @Test
+    void rejectedChunksAreNotRecorded() throws Exception {
+        UploadSession session = open();
+        String id = session.getId();
+
+        assertBadRequest(() -> uploads.writeChunk(id, OWNER, 0, stream(0, CHUNK), CHUNK - 1, null));
+        assertBadRequest(() -> uploads.writeChunk(id, OWNER, 0, stream(0, CHUNK - 1), -1, null));
+        assertBadRequest(() -> uploads.writeChunk(id, OWNER, 3, stream(0, 60_000), -1, null));
+        assertBadRequest(() -> uploads.writeChunk(id, OWNER, 0, stream(0, CHUNK), CHUNK, sha256(new byte[1])));
+        assertBadRequest(() -> uploads.writeChunk(id, OWNER, 4, stream(0, 1), 1, null));
+        assertTrue(uploads.receivedChunks(id).isEmpty());
+
+        byte[] chunk = Arrays.copyOfRange(data, 0, CHUNK);
+        uploads.writeChunk(id, OWNER, 0, new ByteArrayInputStream(chunk), CHUNK, sha256(chunk));
+        assertEquals(List.of(0), uploads.receivedChunks(id));
+
+        // a rewrite that breaks off has overwritten part of the chunk, so it no longer counts
+        assertBadRequest(() -> uploads.writeChunk(id, OWNER, 0, stream(0, 10), -1, null));
+        assertTrue(uploads.receivedChunks(id).isEmpty());
+
+        ResponseStatusException notYours = assertThrows(ResponseStatusException.class,
+                () -> uploads.writeChunk(id, OWNER + 1, 0, stream(0, CHUNK), CHUNK, null));
+        assertEquals(HttpStatus.NOT_FOUND, notYours.getStatusCode());
+    }
+
+    @Test
+    void aChangedChunkIsHashedAgainAndAWrongChecksumKeepsTheUploadOpen() throws Exception {
+        UploadSession session = open();
+        for (int i = 0; i < 4; i++) put(session, i);
+
+        ResponseStatusException mismatch = assertThrows(ResponseStatusException.class,
+                () -> uploads.commit(session.getId(), OWNER, sha256(new byte[1])));
+        assertEquals(HttpStatus.BAD_REQUEST, mismatch.getStatusCode());
+        assertEquals("open", uploads.find(session.getId(), OWNER).getStatus());
+
+        data[5] ^= 1;
+        put(session, 0);
+        assertEquals(sha256(data), uploads.commit(session.getId(), OWNER, null).getFileHash());
+    }
+
+    @Test
+    void attachTakesTheReferenceOnceAndExpiryReleasesUnattachedUploads() throws Exception {
+        UploadSession attached = commitAll(open());
+        assertEquals("attached", uploads.attach(attached.getId(), OWNER).getStatus());
+        ResponseStatusException twice = assertThrows(ResponseStatusException.class,
+                () -> uploads.attach(attached.getId(), OWNER));
+        assertEquals(HttpStatus.CONFLICT, twice.getStatusCode());
+
+        data[0] ^= 1;
+        UploadSession committed = commitAll(open());
+        UploadSession partial = open();
+        put(partial, 1);
+
+        jdbc.update("UPDATE upload_session SET updated_at = ?", LocalDateTime.now().minusDays(2));
+        assertEquals(3, uploads.expire());
+
+        assertTrue(sessionRepo.findAll().isEmpty());
+        assertFalse(Files.exists(uploads.partFile(partial.getId())));
+        assertTrue(store.locate(committed.getFileHash()).isEmpty());
+        // the attached upload's reference now belongs to whatever it was attached to
+        assertTrue(store.locate(attached.getFileHash()).isPresent());
+    }
+
+    @Test
+    void aChunkAfterCommitIsRefusedAndLeavesNoPartFile() throws Exception {
+        UploadSession committed = commitAll(open());
+
+        ResponseStatusException late = assertThrows(ResponseStatusException.class, () -> put(committed, 0));
+        assertEquals(HttpStatus.CONFLICT, late.getStatusCode());
+        assertFalse(Files.exists(uploads.partFile(committed.getId())));
+    }
+
+    @Test
+    void commitWaitsForAChunkBeingWritten() throws Exception {
+        UploadSession session = open();
+        for (int i = 0; i < 4; i++) put(session, i);
+
+        // resend chunk 0 with new bytes, stalling halfway through
+        data[5] ^= 1;
+        CountDownLatch halfway = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        InputStream stalling = stalling(0, halfway, resume);
+
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> chunk = pool.submit(() -> {
+                uploads.writeChunk(session.getId(), OWNER, 0, stalling, CHUNK, null);
+                return null;
+            });
+            assertTrue(halfway.await(5, TimeUnit.SECONDS));
+            Future<UploadSession> commit = pool.submit(() -> uploads.commit(session.getId(), OWNER, null));
+
+            Thread.sleep(200);
+            assertFalse(commit.isDone());
+            resume.countDown();
+            chunk.get(5, TimeUnit.SECONDS);
+
+            UploadSession committed = commit.get(5, TimeUnit.SECONDS);
+            assertEquals(sha256(data), committed.getFileHash());
+            assertArrayEquals(data, Files.readAllBytes(store.locate(committed.getFileHash()).orElseThrow()));
+        } finally {
+            resume.countDown();
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void aSecondBodyForAChunkBeingWrittenIsRefused() throws Exception {
+        UploadSession session = open();
+        for (int i = 1; i < 4; i++) put(session, i);
+
+        // chunk 0 stalls halfway with the prefix claimed while a different body for it arrives
+        CountDownLatch halfway = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        InputStream stalling = stalling(0, halfway, resume);
+        byte[] other = Arrays.copyOf(data, CHUNK);
+        other[5] ^= 1;
+
+        ExecutorService pool = Executors.newFixedThreadPool(1);
+        try {
+            Future<?> chunk = pool.submit(() -> {
+                uploads.writeChunk(session.getId(), OWNER, 0, stalling, CHUNK, null);
+                return null;
+            });
+            assertTrue(halfway.await(5, TimeUnit.SECONDS));
+
+            ResponseStatusException busy = assertThrows(ResponseStatusException.class,
+                    () -> uploads.writeChunk(session.getId(), OWNER, 0, new ByteArrayInputStream(other), CHUNK, null));
+            assertEquals(HttpStatus.CONFLICT, busy.getStatusCode());
+
+            resume.countDown();
+            chunk.get(5, TimeUnit.SECONDS);
+        } finally {
+            resume.countDown();
+            pool.shutdownNow();
+        }
+
+        UploadSession committed = uploads.commit(session.getId(), OWNER, null);
+        assertEquals(sha256(data), committed.getFileHash());
+        assertArrayEquals(data, Files.readAllBytes(store.locate(committed.getFileHash()).orElseThrow()));
+    }
+
+    @Test
+    void aRewrittenChunkThatChangedOnDiskFailsTheCommit() throws Exception {
+        UploadSession session = open();
+        for (int i = 0; i < 4; i++) put(session, i);
+        put(session, 1);
+
+        Path part = uploads.partFile(session.getId());
+        byte[] onDisk = Files.readAllBytes(part);
+        onDisk[CHUNK + 5] ^= 1;
+        Files.write(part, onDisk);
+
+        ResponseStatusException changed = assertThrows(ResponseStatusException.class,
+                () -> uploads.commit(session.getId(), OWNER, null));
+        assertEquals(HttpStatus.CONFLICT, changed.getStatusCode());
+        assertEquals("open", uploads.find(session.getId(), OWNER).getStatus());
+        assertEquals(List.of(0, 2, 3), uploads.receivedChunks(session.getId()));
+
+        put(session, 1);
+        assertEquals(sha256(data), uploads.commit(session.getId(), OWNER, null).getFileHash());
+    }
+
+    private ResumableUploadService newService() throws IOException {
+        return new ResumableUploadService(sessionRepo, store, jdbc, transactionManager, new SimpleMeterRegistry(),
+                10_000_000, CHUNK, 1024, 1_000_000, 24);
+    }
+
+    private UploadSession open() {
+        return uploads.initiate(OWNER, "scan.dcm", "application/dicom", (long) data.length, CHUNK);
+    }
+
+    private UploadSession commitAll(UploadSession session) throws IOException {
+        for (int i = 0; i < session.getChunkCount(); i++) put(session, i);
+        return uploads.commit(session.getId(), OWNER, null);
+    }
+
+    private void put(UploadSession session, int index) throws IOException {
+        int offset = index * CHUNK;
+        int length = Math.min(CHUNK, data.length - offset);
+        uploads.writeChunk(session.getId(), OWNER, index, stream(offset, length), length, null);
+    }
+
+    private InputStream stream(int offset, int length) {
+        return new ByteArrayInputStream(data, offset, length);
+    }
+
+    // chunk index as it is in data, pausing at its midpoint until resume
+    private InputStream stalling(int index, CountDownLatch halfway, CountDownLatch resume) {
+        int offset = index * CHUNK;
+        return new SequenceInputStream(stream(offset, CHUNK / 2), new InputStream() {
+            private final InputStream rest = stream(offset + CHUNK / 2, CHUNK - CHUNK / 2);
+
+            @Override
+            public int read() throws IOException {
+                halfway.countDown();
+                try {
+                    resume.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return rest.read();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int first = read();
+                if (first < 0) return -1;
+                b[off] = (byte) first;
+                int more = rest.read(b, off + 1, len - 1);
+                return 1 + Math.max(more, 0);
+            }
+        });
+    }
+
+    private static void assertBadRequest(ThrowingRunnable call) {
+        ResponseStatusException e = assertThrows(ResponseStatusException.class, call::run);
+        assertEquals(HttpStatus.BAD_REQUEST, e.getStatusCode());
+    }
+
+    private interface ThrowingRunnable {
+        void run() throws Exception;
+    }
+
+    private static String sha256(byte[] bytes) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.demo.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MinHash/LSH neighbors: near-duplicates are found, unrelated posts are not, and the signature
+ * agreement tracks exact Jaccard.
+ */
+class SimilarCaseIndexTest {
+
+    private static List<Long> ids(List<SimilarCaseIndex.Neighbor> neighbors) {
+        return neighbors.stream().map(SimilarCaseIndex.Neighbor::postId).toList();
+    }
+
+    private static SimilarCaseIndex sample() {
+        SimilarCaseIndex index = new SimilarCaseIndex(500);
+        index.add(1, "fever, cough, chest pain, shortness of breath",
+                "Crackles at the right base, chest x-ray shows consolidation");
+        index.add(2, "fever, cough, chest pain, shortness of breath",
+                "Crackles at the right base, chest x-ray shows lobar consolidation");
+        index.add(3, "fever, productive cough, shortness of breath",
+                "Crackles at the right base, x-ray shows consolidation");
+        index.add(4, "itchy rash on elbows", "Silvery plaques, nail pitting, family history of psoriasis");
+        index.add(5, "", "");
+        return index;
+    }
+
+    @Test
+    void nearDuplicatesAreNeighborsAndUnrelatedPostsAreNot() {
+        List<SimilarCaseIndex.Neighbor> neighbors = sample().similarTo(1, 5);
+
+        assertEquals(List.of(2L, 3L), ids(neighbors));
+        assertTrue(neighbors.get(0).similarity() > neighbors.get(1).similarity());
+        assertTrue(sample().similarTo(4, 5).isEmpty());
+    }
+
+    @Test
+    void postsWithoutTextAreNotIndexed() {
+        SimilarCaseIndex index = sample();
+        assertEquals(4, index.size());
+        assertTrue(index.similarTo(5, 5).isEmpty());
+    }
+
+    @Test
+    void removedAndReplacedPostsDropOut() {
+        SimilarCaseIndex index = sample();
+        index.remove(2);
+        assertEquals(List.of(3L), ids(index.similarTo(1, 5)));
+
+        index.add(3, "itchy rash on knees", "Silvery plaques and nail pitting, psoriasis suspected");
+        assertTrue(index.similarTo(1, 5).isEmpty());
+        assertEquals(List.of(3L), ids(index.similarTo(4, 5)));
+    }
+
+    @Test
+    void freeTextFindsIndexedPosts() {
+        List<SimilarCaseIndex.Neighbor> neighbors = sample().similarTo(
+                "fever, cough, chest pain, shortness of breath", "Crackles at the right base, consolidation on x-ray", 3);
+        assertEquals(3, neighbors.size());
+        assertFalse(ids(neighbors).contains(4L));
+    }
+
+    @Test
+    void signatureAgreementEstimatesJaccard() {
+        StringBuilder a = new StringBuilder();
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            a.append("word").append(i).append(' ');
+            // 60 shared, 40 different: Jaccard 60/140
+            b.append(i < 60 ? "word" + i : "other" + i).append(' ');
+        }
+        int[] sa = SimilarCaseIndex.shingles(a.toString(), null);
+        int[] sb = SimilarCaseIndex.shingles(b.toString(), null);
+        double exact = SimilarCaseIndex.jaccard(sa, sb);
+        assertEquals(60.0 / 140, exact, 1e-9);
+
+        int[] siga = SimilarCaseIndex.signature(sa);
+        int[] sigb = SimilarCaseIndex.signature(sb);
+        int same = 0;
+        for (int i = 0; i < SimilarCaseIndex.HASHES; i++) if (siga[i] == sigb[i]) same++;
+        assertEquals(exact, (double) same / SimilarCaseIndex.HASHES, 0.15);
+    }
+}
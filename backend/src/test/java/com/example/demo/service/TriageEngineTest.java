@@ -0,0 +1,91 @@
+package com.example.demo.service;
+
+import com.example.demo.model.AIDiagnosis;
+import com.example.demo.model.Condition;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.ByteArrayResource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Triage against the bundled knowledge table and a small inline one.
+ */
+class TriageEngineTest {
+
+    private final TriageEngine engine = new TriageEngine(new ClassPathResource("triage/knowledge.json"), 5);
+
+    private static List<String> names(AIDiagnosis diagnosis) {
+        return diagnosis.getPossibleConditions().stream().map(Condition::getCondition).toList();
+    }
+
+    @Test
+    void loadsTheBundledTable() {
+        assertTrue(engine.size() > 20);
+    }
+
+    @Test
+    void ranksTheBestExplainedConditionFirst() {
+        AIDiagnosis diagnosis = engine.triage("Throbbing headache, nausea and sensitivity to light");
+        assertEquals("Migraine", names(diagnosis).get(0));
+        assertTrue(diagnosis.getRecommendedTests().contains("Clinical diagnosis"));
+    }
+
+    @Test
+    void matchesPhrasesWithinAClauseInAnyOrder() {
+        AIDiagnosis diagnosis = engine.triage("I have burning when passing urine, pain on urination and frequent urination");
+        assertEquals("Urinary tract infection", names(diagnosis).get(0));
+
+        // "back pain and chest tightness" must not be read as chest pain
+        AIDiagnosis split = engine.triage("back pain and chest tightness");
+        assertFalse(names(split).contains("Acute coronary syndrome"));
+    }
+
+    @Test
+    void negatedSymptomsDoNotCount() {
+        assertTrue(names(engine.triage("chest pain")).contains("Acute coronary syndrome"));
+        assertFalse(names(engine.triage("no chest pain")).contains("Acute coronary syndrome"));
+        assertFalse(names(engine.triage("cough, denies chest pain")).contains("Acute coronary syndrome"));
+
+        // the negation ends with its clause
+        assertTrue(names(engine.triage("no fever, chest pain")).contains("Acute coronary syndrome"));
+    }
+
+    @Test
+    void probabilitiesAreDescendingAndBelowOne() {
+        AIDiagnosis diagnosis = engine.triage("fever, cough, body aches, chills");
+        List<Condition> conditions = diagnosis.getPossibleConditions();
+        assertFalse(conditions.isEmpty());
+        assertTrue(conditions.size() <= 5);
+        double sum = 0;
+        for (int i = 0; i < conditions.size(); i++) {
+            if (i > 0) assertTrue(conditions.get(i - 1).getProbability() >= conditions.get(i).getProbability());
+            sum += conditions.get(i).getProbability();
+        }
+        assertTrue(sum < 1.0);
+    }
+
+    @Test
+    void unknownSymptomsGiveAnEmptyDiagnosis() {
+        AIDiagnosis diagnosis = engine.triage("purple elbows");
+        assertTrue(diagnosis.getPossibleConditions().isEmpty());
+        assertTrue(diagnosis.getRecommendedTests().isEmpty());
+        assertTrue(engine.triage(null).getPossibleConditions().isEmpty());
+    }
+
+    @Test
+    void readsAlternativesAndWeightsFromTheTable() {
+        String table = """
+                {"conditions":[
+                  {"name":"A","description":"a","tests":["t1"],"symptoms":{"red eye|pink eye":3,"itch":1}},
+                  {"name":"B","description":"b","tests":["t2","t1"],"symptoms":{"pink eye":1,"fever":3}}
+                ]}""";
+        TriageEngine small = new TriageEngine(new ByteArrayResource(table.getBytes(StandardCharsets.UTF_8)), 5);
+        AIDiagnosis diagnosis = small.triage("pink eyes");
+        assertEquals(List.of("A", "B"), names(diagnosis));
+        assertEquals(List.of("t1", "t2"), diagnosis.getRecommendedTests());
+    }
+}
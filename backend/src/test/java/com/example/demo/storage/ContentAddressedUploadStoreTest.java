@@ -0,0 +1,119 @@
+package com.example.demo.storage;
+
+import com.example.demo.model.UploadBlob;
+import com.example.demo.repository.UploadBlobRepo;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The upload store against H2 and a temp directory: identical content is kept once with a
+ * reference per upload, and the file goes with the last reference.
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ContentAddressedUploadStoreTest {
+
+    private static final byte[] XRAY = "chest x-ray".getBytes(StandardCharsets.UTF_8);
+
+    @Autowired
+    private UploadBlobRepo blobRepo;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @TempDir
+    Path root;
+
+    private ContentAddressedUploadStore store;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        blobRepo.deleteAll();
+        store = new ContentAddressedUploadStore(blobRepo, transactionManager, new SimpleMeterRegistry(), root.toString());
+    }
+
+    private UploadStore.Blob store(byte[] content) throws IOException {
+        return store.store(new ByteArrayInputStream(content));
+    }
+
+    private long blobFiles() throws IOException {
+        try (var files = Files.walk(root.resolve("blobs"))) {
+            return files.filter(Files::isRegularFile).count();
+        }
+    }
+
+    @Test
+    void identicalUploadsShareOneShardedFile() throws IOException {
+        UploadStore.Blob first = store(XRAY);
+        UploadStore.Blob second = store(XRAY);
+
+        assertEquals(first.hash(), second.hash());
+        assertEquals(64, first.hash().length());
+        assertFalse(first.deduplicated());
+        assertTrue(second.deduplicated());
+        assertEquals(XRAY.length, second.size());
+
+        Path path = store.locate(first.hash()).orElseThrow();
+        assertEquals(root.resolve("blobs").resolve(first.hash().substring(0, 2))
+                .resolve(first.hash().substring(2, 4)).resolve(first.hash()), path);
+        assertArrayEquals(XRAY, Files.readAllBytes(path));
+        assertEquals(1, blobFiles());
+        assertEquals(2, blobRepo.findById(first.hash()).map(UploadBlob::getRefCount).orElseThrow());
+        try (var tmp = Files.list(root.resolve("tmp"))) {
+            assertEquals(0, tmp.count());
+        }
+    }
+
+    @Test
+    void theFileGoesWithTheLastReference() throws IOException {
+        String hash = store(XRAY).hash();
+        store(XRAY);
+        String other = store("ecg strip".getBytes(StandardCharsets.UTF_8)).hash();
+
+        assertEquals(0, store.release(hash));
+        assertTrue(store.locate(hash).isPresent());
+
+        assertEquals(XRAY.length, store.release(hash));
+        assertTrue(store.locate(hash).isEmpty());
+        assertFalse(blobRepo.existsById(hash));
+        assertEquals(0, store.release(hash));
+
+        assertTrue(store.locate(other).isPresent());
+        assertEquals(0, store.release("../../etc/passwd"));
+    }
+
+    @Test
+    void concurrentUploadsOfTheSameContentCountEveryReference() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<UploadStore.Blob>> futures = new ArrayList<>();
+            for (int i = 0; i < 20; i++) futures.add(pool.submit(() -> store(XRAY)));
+            for (Future<UploadStore.Blob> f : futures) f.get();
+        } finally {
+            pool.shutdown();
+        }
+        String hash = store(XRAY).hash();
+        assertEquals(21, blobRepo.findById(hash).map(UploadBlob::getRefCount).orElseThrow());
+        assertEquals(1, blobFiles());
+    }
+}
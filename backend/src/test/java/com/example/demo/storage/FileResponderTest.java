@@ -0,0 +1,144 @@
+package com.example.demo.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Ranges, validators, cache headers and content types for served files, plus the hand-off to
+ * Tomcat's sendfile when the connector supports it.
+ */
+class FileResponderTest {
+
+    private static final String ETAG = "\"abc123\"";
+    private static final Instant MODIFIED = Instant.parse("2024-03-01T10:00:00Z");
+
+    private final FileResponder responder = new FileResponder();
+
+    @TempDir
+    Path dir;
+
+    private Path file;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        file = dir.resolve("blob");
+        Files.writeString(file, "0123456789");
+        Files.setLastModifiedTime(file, FileTime.from(MODIFIED));
+    }
+
+    private MockHttpServletResponse get(String name, boolean immutable, String... headers) throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/case-posts/file/x");
+        for (int i = 0; i < headers.length; i += 2) request.addHeader(headers[i], headers[i + 1]);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        responder.serve(file, immutable ? ETAG : null, name, immutable, request, response);
+        return response;
+    }
+
+    @Test
+    void wholeFileWithValidatorsAndImmutableCaching() throws IOException {
+        MockHttpServletResponse response = get("scan.png", true);
+
+        assertEquals(200, response.getStatus());
+        assertEquals("0123456789", response.getContentAsString());
+        assertEquals(10, response.getContentLengthLong());
+        assertEquals(ETAG, response.getHeader(HttpHeaders.ETAG));
+        assertEquals(MODIFIED.toEpochMilli(), response.getDateHeader(HttpHeaders.LAST_MODIFIED));
+        assertEquals(FileResponder.IMMUTABLE, response.getHeader(HttpHeaders.CACHE_CONTROL));
+        assertEquals("bytes", response.getHeader(HttpHeaders.ACCEPT_RANGES));
+        assertEquals("image/png", response.getContentType());
+        assertTrue(response.getHeader(HttpHeaders.CONTENT_DISPOSITION).startsWith("inline"));
+    }
+
+    @Test
+    void contentTypeComesFromTheName() throws IOException {
+        assertEquals("application/pdf", get("report.pdf", true).getContentType());
+        MockHttpServletResponse html = get("notes.html", true);
+        assertEquals("text/html", html.getContentType());
+        assertTrue(html.getHeader(HttpHeaders.CONTENT_DISPOSITION).startsWith("attachment"));
+        assertEquals("application/octet-stream", get("data.unknownext", true).getContentType());
+    }
+
+    @Test
+    void singleRangesAreServedAsPartialContent() throws IOException {
+        MockHttpServletResponse middle = get("scan.png", true, HttpHeaders.RANGE, "bytes=2-5");
+        assertEquals(206, middle.getStatus());
+        assertEquals("2345", middle.getContentAsString());
+        assertEquals("bytes 2-5/10", middle.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals(4, middle.getContentLengthLong());
+
+        assertEquals("789", get("scan.png", true, HttpHeaders.RANGE, "bytes=7-").getContentAsString());
+        assertEquals("89", get("scan.png", true, HttpHeaders.RANGE, "bytes=-2").getContentAsString());
+        assertEquals("56789", get("scan.png", true, HttpHeaders.RANGE, "bytes=5-100").getContentAsString());
+
+        MockHttpServletResponse several = get("scan.png", true, HttpHeaders.RANGE, "bytes=0-1,4-5");
+        assertEquals(200, several.getStatus());
+        assertEquals("0123456789", several.getContentAsString());
+
+        MockHttpServletResponse beyond = get("scan.png", true, HttpHeaders.RANGE, "bytes=10-");
+        assertEquals(416, beyond.getStatus());
+        assertEquals("bytes */10", beyond.getHeader(HttpHeaders.CONTENT_RANGE));
+    }
+
+    @Test
+    void ifRangeForAnotherVersionGetsTheWholeFile() throws IOException {
+        assertEquals(206, get("scan.png", true, HttpHeaders.RANGE, "bytes=2-5", HttpHeaders.IF_RANGE, ETAG).getStatus());
+        assertEquals(200, get("scan.png", true, HttpHeaders.RANGE, "bytes=2-5", HttpHeaders.IF_RANGE, "\"old\"").getStatus());
+        // weak validators cannot vouch for byte ranges
+        assertEquals(200, get("scan.png", false, HttpHeaders.RANGE, "bytes=2-5",
+                HttpHeaders.IF_RANGE, get("scan.png", false).getHeader(HttpHeaders.ETAG)).getStatus());
+    }
+
+    @Test
+    void conditionalRequestsAnswerNotModified() throws IOException {
+        MockHttpServletResponse byEtag = get("scan.png", true, HttpHeaders.IF_NONE_MATCH, "\"other\", " + ETAG);
+        assertEquals(304, byEtag.getStatus());
+        assertEquals(0, byEtag.getContentAsByteArray().length);
+        assertEquals(ETAG, byEtag.getHeader(HttpHeaders.ETAG));
+
+        assertEquals(200, get("scan.png", true, HttpHeaders.IF_NONE_MATCH, "\"other\"").getStatus());
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+        request.addHeader(HttpHeaders.IF_MODIFIED_SINCE, MODIFIED.toEpochMilli());
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        responder.serve(file, null, "legacy.png", false, request, response);
+        assertEquals(304, response.getStatus());
+        assertEquals(FileResponder.REVALIDATE, response.getHeader(HttpHeaders.CACHE_CONTROL));
+        assertTrue(response.getHeader(HttpHeaders.ETAG).startsWith("W/"));
+    }
+
+    @Test
+    void sendfileCapableConnectorsGetTheFileInsteadOfBytes() throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+        request.setAttribute("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+        request.addHeader(HttpHeaders.RANGE, "bytes=3-");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        responder.serve(file, ETAG, "scan.png", true, request, response);
+
+        assertEquals(206, response.getStatus());
+        assertEquals(0, response.getContentAsByteArray().length);
+        assertEquals(file.toAbsolutePath().toString(), request.getAttribute("org.apache.tomcat.sendfile.filename"));
+        assertEquals(3L, request.getAttribute("org.apache.tomcat.sendfile.start"));
+        assertEquals(10L, request.getAttribute("org.apache.tomcat.sendfile.end"));
+    }
+
+    @Test
+    void headHasHeadersButNoBody() throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("HEAD", "/");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        responder.serve(file, ETAG, "scan.png", true, request, response);
+        assertEquals(10, response.getContentLengthLong());
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+}
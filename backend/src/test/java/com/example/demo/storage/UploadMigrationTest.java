@@ -0,0 +1,95 @@
+package com.example.demo.storage;
+
+import com.example.demo.model.CasePost;
+import com.example.demo.model.UploadBlob;
+import com.example.demo.repository.CasePostRepo;
+import com.example.demo.repository.UploadBlobRepo;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Moving the flat uploads/ directory into the store: duplicates collapse into one blob, posts
+ * point at it, and running again changes nothing.
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class UploadMigrationTest {
+
+    @Autowired
+    private CasePostRepo postRepo;
+
+    @Autowired
+    private UploadBlobRepo blobRepo;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @TempDir
+    Path root;
+
+    @AfterEach
+    void cleanUp() {
+        postRepo.deleteAll();
+        blobRepo.deleteAll();
+    }
+
+    private long legacyPost(String storedName, String fileName, String content) throws IOException {
+        if (content != null) Files.writeString(root.resolve(storedName), content);
+        CasePost post = new CasePost();
+        post.setTitle("Case");
+        post.setFileName(fileName);
+        post.setFileUrl("/case-posts/file/" + storedName);
+        return postRepo.save(post).getId();
+    }
+
+    @Test
+    void legacyFilesMoveIntoTheStoreOnce() throws IOException {
+        long a = legacyPost("0b8e-1_scan.png", "scan.png", "same scan");
+        long b = legacyPost("77aa-2_scan copy.png", "scan copy.png", "same scan");
+        long c = legacyPost("91cd-3_report.pdf", "report.pdf", "report");
+        long gone = legacyPost("ffff-4_lost.pdf", "lost.pdf", null);
+
+        ContentAddressedUploadStore store = new ContentAddressedUploadStore(blobRepo, transactionManager,
+                new SimpleMeterRegistry(), root.toString());
+        UploadMigration migration = new UploadMigration(jdbc, store, root.toString());
+        migration.migrate();
+
+        CasePost first = postRepo.findById(a).orElseThrow();
+        CasePost second = postRepo.findById(b).orElseThrow();
+        assertNotNull(first.getFileHash());
+        assertEquals(first.getFileHash(), second.getFileHash());
+        assertEquals("/case-posts/file/" + first.getFileHash() + "/scan.png", first.getFileUrl());
+        assertEquals("/case-posts/file/" + second.getFileHash() + "/scan%20copy.png", second.getFileUrl());
+        assertEquals(2, blobRepo.findById(first.getFileHash()).map(UploadBlob::getRefCount).orElseThrow());
+        assertEquals("same scan", Files.readString(store.locate(first.getFileHash()).orElseThrow()));
+        assertNotEquals(first.getFileHash(), postRepo.findById(c).orElseThrow().getFileHash());
+
+        CasePost missing = postRepo.findById(gone).orElseThrow();
+        assertNull(missing.getFileHash());
+        assertEquals("/case-posts/file/ffff-4_lost.pdf", missing.getFileUrl());
+        try (var files = Files.list(root)) {
+            assertEquals(0, files.filter(Files::isRegularFile).count());
+        }
+
+        migration.migrate();
+        assertEquals(2, blobRepo.count());
+        assertEquals(2, blobRepo.findById(first.getFileHash()).map(UploadBlob::getRefCount).orElseThrow());
+    }
+}
@@ -1,12 +1,39 @@
 import React, { useState } from 'react';
 import { Heart, MessageCircle, Share2, Plus, X, Image as ImageIcon, User } from 'lucide-react';
 import { useAuth } from '../../context/AuthContext';
-import { CasePost } from '../../types';
+import { CaseFeedPage, CasePost, Comment, CommentPage } from '../../types';
 import { useEffect } from 'react';
 import axios from 'axios';
 import axiosInstance from '../../context/axiosInstance';
 const BASE_URL = import.meta.env.VITE_API_BASE_URL;
 
+// Only our own attachment paths get the bearer token; any other URL in a post is not fetched
+const ATTACHMENT_PATH = /^\/case-posts\/file\/[0-9a-f]{64}\/[^/?#\\]+(\?size=[a-z]+)?$/;
+
+// File URLs need the bearer token, so images are fetched through axios and shown from a blob URL
+function AuthImage({ src, alt, onClick }: { src: string; alt: string; onClick?: () => void }) {
+  const [objectUrl, setObjectUrl] = useState<string | null>(null);
+  useEffect(() => {
+    let url: string | null = null;
+    let cancelled = false;
+    if (!ATTACHMENT_PATH.test(src)) return;
+    axiosInstance.get(src, { responseType: 'blob' })
+      .then(res => {
+        if (cancelled) return;
+        url = URL.createObjectURL(res.data);
+        setObjectUrl(url);
+      })
+      .catch(err => console.error("Error loading image", err));
+    return () => {
+      cancelled = true;
+      if (url) URL.revokeObjectURL(url);
+    };
+  }, [src]);
+  if (!objectUrl) return null;
+  return <img src={objectUrl} alt={alt} onClick={onClick}
+    style={{ maxWidth: '100%', borderRadius: '0.5rem', cursor: onClick ? 'zoom-in' : undefined }} />;
+}
+
 export function CasePosts() {
   const { user } = useAuth();
   const [showCreateModal, setShowCreateModal] = useState(false);
@@ -20,10 +47,35 @@ export function CasePosts() {
   const [commentInputs, setCommentInputs] = useState<{ [postId: string]: string }>({});
 
   const [posts, setPosts] = useState<CasePost[]>([]);
+  const [nextCursor, setNextCursor] = useState<string | null>(null);
   const [file, setFile] = useState<File | null>(null);
   const [expandedComments, setExpandedComments] = useState<{ [postId: string]: boolean }>({});
+
+  const [expandedImages, setExpandedImages] = useState<{ [postId: string]: boolean }>({});
+
+  const [commentCursors, setCommentCursors] = useState<{ [postId: string]: string | null }>({});
+
+  // Comments come a page at a time, oldest first; a cursor continues after the last one shown
+  const loadComments = async (postId: string, cursor?: string) => {
+    try {
+      const res = await axiosInstance.get<CommentPage>(`/case-posts/${postId}/comments`, {
+        params: cursor ? { cursor } : {}
+      });
+      setPosts(prev => prev.map(post => post.id === postId
+        ? { ...post, comments: cursor ? [...(post.comments ?? []), ...res.data.items] : res.data.items }
+        : post));
+      setCommentCursors(prev => ({ ...prev, [postId]: res.data.nextCursor }));
+    } catch (err) {
+      console.error("Error fetching comments", err);
+    }
+  };
+
   const toggleComments = (postId: string) => {
-    setExpandedComments(prev => ({ ...prev, [postId]: !prev[postId] }));
+    const expanding = !expandedComments[postId];
+    setExpandedComments(prev => ({ ...prev, [postId]: expanding }));
+    if (expanding && !posts.find(p => p.id === postId)?.comments) {
+      loadComments(postId);
+    }
   };
   
 
@@ -39,8 +91,15 @@ export function CasePosts() {
     };
   
     try {
-      const res = await axiosInstance.post(`/case-posts/${postId}/comments`, newComment);
-      setPosts(posts.map(post => post.id === postId ? res.data : post));
+      const res = await axiosInstance.post<Comment>(`/case-posts/${postId}/comments`, newComment);
+      // the reply is just the new comment; append it only if the thread is loaded to its end
+      setPosts(prev => prev.map(post => post.id === postId
+        ? {
+            ...post,
+            comments: post.comments && !commentCursors[postId] ? [...post.comments, res.data] : post.comments,
+            commentCount: post.commentCount + 1
+          }
+        : post));
       setCommentInputs({ ...commentInputs, [postId]: '' });
     } catch (err) {
       console.error("Error adding comment", err);
@@ -48,10 +107,17 @@ export function CasePosts() {
   };
   
 
-  useEffect(() => {
-    axiosInstance.get('/case-posts')
-      .then(res => setPosts(res.data))
+  const loadPage = (cursor: string | null) => {
+    axiosInstance.get<CaseFeedPage>('/case-posts', { params: cursor ? { cursor } : {} })
+      .then(res => {
+        setPosts(prev => cursor ? [...prev, ...res.data.items] : res.data.items);
+        setNextCursor(res.data.nextCursor);
+      })
       .catch(err => console.error("Error fetching posts:", err));
+  };
+
+  useEffect(() => {
+    loadPage(null);
   }, []);
 
 
@@ -80,7 +146,7 @@ export function CasePosts() {
       const res = await axiosInstance.post('/case-posts', formData, {
         headers: { 'Content-Type': 'multipart/form-data' }
       });
-      setPosts([res.data, ...posts]);
+      setPosts([{ ...res.data, commentCount: 0 }, ...posts]);
       setNewPost({ title: '', description: '', patientAge: '', patientGender: 'male', symptoms: '' });
       setFile(null);
       setShowCreateModal(false);
@@ -101,7 +167,7 @@ export function CasePosts() {
   
       // Update the post in state only if backend actually updated it
       setPosts(posts.map(post =>
-        post.id === postId ? res.data : post
+        post.id === postId ? { ...post, likes: res.data.likes } : post
       ));
     } catch (err: any) {
       if (err.response?.status === 409) {
@@ -186,6 +252,17 @@ export function CasePosts() {
 
   </div>
 
+  {/* Thumbnail for image attachments; click for the larger preview */}
+  {post.thumbnailUrl && (
+    <div style={{ marginTop: '0.5rem' }}>
+      <AuthImage
+        src={expandedImages[post.id] && post.previewUrl ? post.previewUrl : post.thumbnailUrl}
+        alt={post.fileName ?? 'attachment'}
+        onClick={() => setExpandedImages(prev => ({ ...prev, [post.id]: !prev[post.id] }))}
+      />
+    </div>
+  )}
+
   {/* File download link */}
 
 {post.fileUrl && (
@@ -259,14 +336,14 @@ export function CasePosts() {
 
 
 
-{post.comments.length > 0 && (
+{post.commentCount > 0 && (
   <div style={{ marginTop: '1rem' }}>
     <button
       onClick={() => toggleComments(post.id)}
       className="btn btn-sm btn-outline"
       style={{ marginBottom: '0.75rem' }}
     >
-      {expandedComments[post.id] ? 'Hide Comments' : `View Comments (${post.comments.length})`}
+      {expandedComments[post.id] ? 'Hide Comments' : `View Comments (${post.commentCount})`}
     </button>
 
     {expandedComments[post.id] && (
@@ -278,7 +355,7 @@ export function CasePosts() {
           borderTop: '1px solid var(--neutral-200)',
         }}
       >
-        {post.comments.map(comment => (
+        {(post.comments ?? []).map(comment => (
           <div key={comment.id} style={{ marginBottom: '1rem' }}>
             <div style={{ display: 'flex', alignItems: 'center', gap: '0.5rem', marginBottom: '0.5rem' }}>
               <div style={{
@@ -309,12 +386,28 @@ export function CasePosts() {
             </p>
           </div>
         ))}
+        {commentCursors[post.id] && (
+          <button
+            onClick={() => loadComments(post.id, commentCursors[post.id] ?? undefined)}
+            className="btn btn-sm btn-outline"
+          >
+            Load more comments
+          </button>
+        )}
       </div>
     )}
   </div>
 )}
             </div>
           ))}
+
+          {nextCursor && (
+            <div style={{ display: 'flex', justifyContent: 'center', margin: '1.5rem 0' }}>
+              <button className="btn btn-outline" onClick={() => loadPage(nextCursor)}>
+                Load more cases
+              </button>
+            </div>
+          )}
         </div>
 
         {showCreateModal && (
@@ -32,19 +32,33 @@ export interface CasePost {
   specialization: string;
   createdAt: string | Date;
   likes: number;
-  comments: Comment[];
+  commentCount: number;
+  comments?: Comment[]; // loaded on demand
   fileUrl?: string;
   fileName?: string;
+  thumbnailUrl?: string; // set once the server has downscaled an image attachment
+  previewUrl?: string;
+}
+
+export interface CaseFeedPage {
+  items: CasePost[];
+  nextCursor: string | null;
 }
 
 export interface Comment {
   id: string;
+  postId?: string;
   content: string;
   doctorId: string;
   doctorName: string;
   createdAt: Date;
 }
 
+export interface CommentPage {
+  items: Comment[];
+  nextCursor: string | null;
+}
+
 export interface DonationRequest {
   id: string;
   type: 'blood' | 'organ';